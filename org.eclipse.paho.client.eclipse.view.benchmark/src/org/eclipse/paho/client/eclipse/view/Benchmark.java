@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A benchmark of one of the view's code paths, run by {@link BenchmarkRunner}.  The runner calls
+ * {@link #run(int)} with batches of operations until each iteration's time is up, so the cost of the call itself
+ * is spread over the batch.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name the name results are reported and saved under, e.g. render.hex[256]
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of operations per call to {@link #run(int)}
+	 */
+	public int getBatchSize() {
+		return 1000;
+	}
+
+	/**
+	 * Prepares the benchmark before its first iteration
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Runs a number of operations
+	 *
+	 * @return a value derived from the results, which the runner consumes so the work cannot be optimized away
+	 */
+	public abstract long run(int operations) throws Exception;
+
+	/**
+	 * Releases what the benchmark holds after its last iteration
+	 */
+	public void tearDown() throws Exception {
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of the view's hot paths and compares them to a saved baseline.  Each benchmark is warmed
+ * up, then measured for a number of fixed-length iterations, reporting throughput, bytes allocated per operation
+ * and garbage collections.  A benchmark whose throughput falls more than a threshold below its baseline is
+ * reported as a regression and the runner exits with status 2, so it can gate a build.
+ *
+ * Usage: BenchmarkRunner [-f regex] [-wi warmups] [-i iterations] [-r millis] [-b baseline] [-save]
+ * [-threshold percent]
+ */
+public class BenchmarkRunner {
+
+	private static final String BASELINE_SUFFIX = ".ops";
+
+	// Written with each benchmark's result so the JIT cannot discard the work.  Package-private, so that it cannot
+	// be proved unread.
+	static volatile long sink;
+
+	private Pattern filter = Pattern.compile(".*");
+	private int warmupIterations = 5;
+	private int iterations = 10;
+	private long iterationTime = 1000;
+	private File baselineFile = new File("baseline.properties");
+	private boolean save = false;
+	private double threshold = 10;
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private Method allocatedBytes;
+
+	public static void main(String [] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		if (!runner.parse(args)) {
+			System.err.println("Usage: BenchmarkRunner [-f regex] [-wi warmups] [-i iterations] [-r millis]"
+				+ " [-b baseline] [-save] [-threshold percent]");
+			System.exit(1);
+		}
+		System.exit(runner.run(getBenchmarks()));
+	}
+
+	/**
+	 * Returns the benchmarks in the order they run
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new InboundPathBenchmark(64));
+		benchmarks.add(new InboundPathBenchmark(4096));
+		benchmarks.add(new PayloadRenderingBenchmark(PayloadRenderer.Format.HEX, 64));
+		benchmarks.add(new PayloadRenderingBenchmark(PayloadRenderer.Format.HEX, 4096));
+		benchmarks.add(new PayloadRenderingBenchmark(PayloadRenderer.Format.UTF8, 64));
+		benchmarks.add(new PayloadRenderingBenchmark(PayloadRenderer.Format.UTF8, 4096));
+		benchmarks.add(new PayloadRenderingBenchmark(PayloadRenderer.Format.AUTO, 4096));
+		benchmarks.add(new TimestampFormatBenchmark());
+		benchmarks.add(new FileLoadBenchmark(64 * 1024));
+		benchmarks.add(new FileLoadBenchmark(8 * 1024 * 1024));
+		benchmarks.add(new PublishEncodingBenchmark(0));
+		benchmarks.add(new PublishEncodingBenchmark(1024));
+		benchmarks.add(new PublishEncodingBenchmark(64 * 1024));
+		return benchmarks;
+	}
+
+	private boolean parse(String [] args) {
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-save")) {
+					save = true;
+				} else if (i + 1 >= args.length) {
+					return false;
+				} else if (arg.equals("-f")) {
+					filter = Pattern.compile(args[++i]);
+				} else if (arg.equals("-wi")) {
+					warmupIterations = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-i")) {
+					iterations = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (arg.equals("-r")) {
+					iterationTime = Math.max(1, Long.parseLong(args[++i]));
+				} else if (arg.equals("-b")) {
+					baselineFile = new File(args[++i]);
+				} else if (arg.equals("-threshold")) {
+					threshold = Double.parseDouble(args[++i]);
+				} else {
+					return false;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the benchmarks matching the filter
+	 *
+	 * @return the exit status: 0 if no benchmark regressed, 2 if one did
+	 */
+	public int run(List<Benchmark> benchmarks) throws IOException {
+		initAllocationCounter();
+		Properties baseline = loadBaseline();
+		Properties results = new Properties();
+		results.putAll(baseline);
+		int regressions = 0;
+
+		System.out.println(String.format("%-28s %14s %10s %12s %6s %10s", "Benchmark", "ops/s", "+/-",
+			"B/op", "GCs", "baseline"));
+		Iterator<Benchmark> it = benchmarks.iterator();
+		while (it.hasNext()) {
+			Benchmark benchmark = it.next();
+			if (!filter.matcher(benchmark.getName()).find()) {
+				continue;
+			}
+			Result result;
+			try {
+				result = measure(benchmark);
+			} catch (Exception e) {
+				System.out.println(String.format("%-28s failed: %s", benchmark.getName(), e));
+				regressions++;
+				continue;
+			}
+
+			String key = benchmark.getName() + BASELINE_SUFFIX;
+			String comparison = "";
+			String saved = baseline.getProperty(key);
+			if (saved != null) {
+				double expected = Double.parseDouble(saved);
+				double change = (result.mean - expected) * 100 / expected;
+				comparison = String.format("%+.1f%%", change);
+				if (change < -threshold) {
+					comparison += " REGRESSION";
+					regressions++;
+				}
+			}
+			System.out.println(String.format("%-28s %14.0f %10.0f %12s %6d %10s", benchmark.getName(),
+				result.mean, result.deviation, result.bytesPerOp < 0 ? "n/a" : String.format("%.1f",
+				result.bytesPerOp), result.collections, comparison));
+			results.setProperty(key, String.format("%.0f", result.mean));
+		}
+
+		if (save) {
+			saveBaseline(results);
+			System.out.println("Baseline saved to " + baselineFile.getAbsolutePath());
+		}
+		if (regressions > 0) {
+			System.out.println(regressions + " benchmark(s) regressed more than " + threshold + "% or failed");
+			return 2;
+		}
+		return 0;
+	}
+
+	private Result measure(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iterate(benchmark);
+			}
+			long bytesBefore = getAllocatedBytes();
+			long collectionsBefore = getCollectionCount();
+			double [] rates = new double[iterations];
+			long operations = 0;
+			for (int i = 0; i < iterations; i++) {
+				long [] iteration = iterate(benchmark);
+				operations += iteration[0];
+				rates[i] = iteration[0] * 1e9 / iteration[1];
+			}
+			long bytesAfter = getAllocatedBytes();
+
+			Result result = new Result();
+			for (int i = 0; i < rates.length; i++) {
+				result.mean += rates[i];
+			}
+			result.mean /= rates.length;
+			double variance = 0;
+			for (int i = 0; i < rates.length; i++) {
+				variance += (rates[i] - result.mean) * (rates[i] - result.mean);
+			}
+			result.deviation = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) : 0;
+			result.bytesPerOp = bytesBefore < 0 || bytesAfter < 0 ? -1 : (bytesAfter - bytesBefore)
+				/ (double) operations;
+			result.collections = getCollectionCount() - collectionsBefore;
+			return result;
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Runs batches of operations for one iteration
+	 *
+	 * @return the number of operations and the nanoseconds they took
+	 */
+	private long [] iterate(Benchmark benchmark) throws Exception {
+		int batch = benchmark.getBatchSize();
+		long operations = 0;
+		long value = 0;
+		long start = System.nanoTime();
+		long end = start + iterationTime * 1000000L;
+		long now;
+		do {
+			value += benchmark.run(batch);
+			operations += batch;
+			now = System.nanoTime();
+		} while (now < end);
+		sink += value;
+		return new long [] {operations, now - start};
+	}
+
+	/**
+	 * Looks up the HotSpot per-thread allocation counter, which not every JVM provides
+	 */
+	private void initAllocationCounter() {
+		try {
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			if (type.isInstance(threads)) {
+				allocatedBytes = type.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (Exception e) {
+			allocatedBytes = null;
+		}
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread so far, or -1 if unknown
+	 */
+	private long getAllocatedBytes() {
+		if (allocatedBytes == null) {
+			return -1;
+		}
+		try {
+			return ((Long) allocatedBytes.invoke(threads, Thread.currentThread().getId())).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private long getCollectionCount() {
+		long count = 0;
+		Iterator<GarbageCollectorMXBean> it = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+		while (it.hasNext()) {
+			count += Math.max(0, it.next().getCollectionCount());
+		}
+		return count;
+	}
+
+	private Properties loadBaseline() throws IOException {
+		Properties baseline = new Properties();
+		if (baselineFile.exists()) {
+			InputStream in = new FileInputStream(baselineFile);
+			try {
+				baseline.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return baseline;
+	}
+
+	private void saveBaseline(Properties results) throws IOException {
+		OutputStream out = new FileOutputStream(baselineFile);
+		try {
+			results.store(out, "Eclipse Paho Client View benchmark baseline (operations per second)");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The measurements of one benchmark
+	 */
+	private static class Result {
+		double mean;
+		double deviation;
+		double bytesPerOp;
+		long collections;
+	}
+}
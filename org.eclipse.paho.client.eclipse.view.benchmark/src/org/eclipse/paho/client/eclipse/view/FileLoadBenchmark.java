@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * Loading a file to publish as one message with {@link FilePublisher#readFile}, which
+ * {@link MqttClientView#getBytesFromFile} delegates to.  The file is read from the page cache after the first
+ * iteration, so this measures the cost of the read path rather than the disk.
+ */
+public class FileLoadBenchmark extends Benchmark {
+
+	private final int fileSize;
+	private File file;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileSize the size of the file in bytes
+	 */
+	public FileLoadBenchmark(int fileSize) {
+		super("file.load[" + fileSize + "]");
+		this.fileSize = fileSize;
+	}
+
+	public int getBatchSize() {
+		return Math.max(1, 1024 * 1024 / Math.max(1, fileSize));
+	}
+
+	public void setUp() throws Exception {
+		file = File.createTempFile("benchmark", ".bin");
+		file.deleteOnExit();
+		byte [] bytes = new byte[fileSize];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	public long run(int operations) throws Exception {
+		long length = 0;
+		for (int i = 0; i < operations; i++) {
+			length += FilePublisher.readFile(file).length;
+		}
+		return length;
+	}
+
+	public void tearDown() {
+		file.delete();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * The message log of {@link MqttClientView} without SWT.  As a session listener it does what the view does with
+ * arrived messages and session events: messages go through the same {@link MessageLogger} to the message store and
+ * log index, and records of both are posted to a log pipeline.  The pipeline's flushes run on whichever thread pumps the {@link HeadlessScheduler},
+ * standing in for the UI thread, and add the records to a log buffer as the view's sink does.
+ * {@link #renderRows} then renders the newest rows as the virtual log table would when following the log.
+ */
+public class HeadlessLog extends SessionAdapter {
+
+	private final HeadlessScheduler scheduler = new HeadlessScheduler();
+	private final MessageStore messageStore = new MessageStore(ClientConstants.STORE_MAX_MESSAGES,
+		ClientConstants.STORE_PAYLOAD_BYTES);
+	private final LogIndex logIndex = new LogIndex(messageStore);
+	private final LogBuffer logBuffer = new LogBuffer(ClientConstants.LOG_MAX_RECORDS, ClientConstants.LOG_MAX_BYTES);
+	private final LogPipeline logPipeline;
+	private final MessageLogger messageLogger;
+
+	// Rendering state, as held by the view (UI thread only)
+	private final MessageStore.Row row = new MessageStore.Row();
+	private final PayloadRenderer renderer = new PayloadRenderer();
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat(ClientConstants.LOG_DATE_PATTERN);
+	private final Date date = new Date();
+
+	// Records and arrived messages flushed into the log buffer, and flushes.  Written on the UI thread only.
+	private volatile long flushedRecords = 0;
+	private volatile long flushedMessages = 0;
+	private volatile long flushes = 0;
+
+	public HeadlessLog() {
+		logPipeline = new LogPipeline(scheduler, new LogPipeline.Sink() {
+			public void flush(List<LogRecord> batch) {
+				for (int i = 0; i < batch.size(); i++) {
+					LogRecord record = batch.get(i);
+					logBuffer.add(record);
+					if (record instanceof MessageRecord) {
+						flushedMessages++;
+					}
+				}
+				flushedRecords += batch.size();
+				flushes++;
+			}
+		}, ClientConstants.LOG_FLUSH_INTERVAL, ClientConstants.LOG_MAX_BATCH_SIZE);
+		messageLogger = new MessageLogger(messageStore, logPipeline);
+	}
+
+	public void sessionEvent(Session session, String event, String detail) {
+		logPipeline.post(new LogRecord(System.currentTimeMillis(), session.getName(), event, detail));
+	}
+
+	public void messageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+		messageLogger.messageArrived(session, topic, message, payload);
+	}
+
+	/**
+	 * Runs the pending flushes of the log pipeline.  Must be called on a single thread, the stand-in UI thread.
+	 *
+	 * @return the number of flushes run
+	 */
+	public int runPending() {
+		return scheduler.runPending();
+	}
+
+	/**
+	 * Renders the newest rows of the log, with the view's default payload settings.  UI thread only.
+	 *
+	 * @return the number of characters rendered
+	 */
+	public long renderRows(int rows) {
+		long length = 0;
+		int size = logBuffer.size();
+		for (int i = Math.max(0, size - rows); i < size; i++) {
+			LogRecord record = logBuffer.get(i);
+			date.setTime(record.getTime());
+			length += dateFormat.format(date).length();
+			if (record instanceof MessageRecord) {
+				length += ((MessageRecord) record).getDetail(row, renderer, PayloadRenderer.Format.AUTO,
+					ClientConstants.PAYLOAD_PREVIEW_BYTES, false).length();
+			} else if (record.getDetail() != null) {
+				length += record.getDetail().length();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the instrumentation of the log pipeline
+	 */
+	public PipelineMetrics getMetrics() {
+		return logPipeline.getMetrics();
+	}
+
+	public LogBuffer getLogBuffer() {
+		return logBuffer;
+	}
+
+	public MessageStore getMessageStore() {
+		return messageStore;
+	}
+
+	public LogIndex getLogIndex() {
+		return logIndex;
+	}
+
+	/**
+	 * Returns the number of records flushed into the log buffer
+	 */
+	public long getFlushedRecords() {
+		return flushedRecords;
+	}
+
+	/**
+	 * Returns the number of arrived messages flushed into the log buffer
+	 */
+	public long getFlushedMessages() {
+		return flushedMessages;
+	}
+
+	/**
+	 * Returns the number of flushes of the log pipeline
+	 */
+	public long getFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Stops the log pipeline
+	 */
+	public void dispose() {
+		logPipeline.dispose();
+	}
+}
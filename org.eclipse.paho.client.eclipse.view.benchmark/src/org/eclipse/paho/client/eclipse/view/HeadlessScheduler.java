@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs the flushes of a {@link LogPipeline} without a display.  Tasks are queued and run when the owner pumps
+ * the scheduler, standing in for the UI thread's event loop.  Delays are ignored, so benchmarks measure the work
+ * of a flush rather than the timer.
+ */
+public class HeadlessScheduler implements LogPipeline.Scheduler {
+
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	public void schedule(int delay, Runnable task) {
+		tasks.offer(task);
+	}
+
+	public void execute(Runnable task) {
+		tasks.offer(task);
+	}
+
+	public boolean isDisposed() {
+		return false;
+	}
+
+	/**
+	 * Runs the queued tasks, and the tasks they queue, until none are left
+	 *
+	 * @return the number of tasks run
+	 */
+	public int runPending() {
+		int count = 0;
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * The inbound path of an arrived message, from the session to a record in the log buffer: the session's topic
+ * statistics, dispatch through the registry, and what {@link MqttClientView#messageArrived} does with it (the
+ * message store, the log index and the log pipeline), with the pipeline flushed into a log buffer as the UI
+ * thread would (see {@link HeadlessLog}).  Rendering the rows that are showing is measured separately, by
+ * {@link PayloadRenderingBenchmark}.
+ */
+public class InboundPathBenchmark extends Benchmark {
+
+	private static final int TOPICS = 100;
+
+	private final int payloadSize;
+
+	private SessionRegistry registry;
+	private Session session;
+	private HeadlessLog log;
+	private String [] topics;
+	private MqttMessage message;
+	private byte [] payload;
+
+	/**
+	 * Constructor
+	 *
+	 * @param payloadSize the size of each arrived payload in bytes
+	 */
+	public InboundPathBenchmark(int payloadSize) {
+		super("inbound.path[" + payloadSize + "]");
+		this.payloadSize = payloadSize;
+	}
+
+	public void setUp() {
+		registry = new SessionRegistry();
+		session = registry.getOrCreateSession("benchmark");
+		log = new HeadlessLog();
+		registry.addListener(log);
+
+		topics = new String[TOPICS];
+		for (int i = 0; i < TOPICS; i++) {
+			topics[i] = "benchmark/sensor/" + i;
+		}
+		payload = new byte[payloadSize];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) ('a' + i % 26);
+		}
+		message = new MqttMessage(payload);
+		message.setQos(1);
+	}
+
+	public long run(int operations) {
+		SessionStats stats = session.getStats();
+		for (int i = 0; i < operations; i++) {
+			String topic = topics[i % TOPICS];
+			stats.messageIn(topic, payload.length, 1);
+			registry.fireMessageArrived(session, topic, message, payload);
+			if (i % ClientConstants.LOG_MAX_BATCH_SIZE == 0) {
+				log.runPending();
+			}
+		}
+		log.runPending();
+		return log.getLogBuffer().size();
+	}
+
+	public void tearDown() {
+		registry.shutdown();
+		log.dispose();
+	}
+}
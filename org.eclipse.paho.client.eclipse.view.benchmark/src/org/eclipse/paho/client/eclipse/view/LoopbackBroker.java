@@ -0,0 +1,576 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal MQTT 3.1 broker on the loopback interface, for soak testing the view's sessions without a real
+ * broker.  It accepts connections, keeps each client ID's subscriptions across connections unless it connects
+ * with a clean session, answers pings, and routes publishes to the matching subscribers at the lower of the
+ * published and granted QoS (QoS 2 is granted as 1).  Test drivers can also publish directly with
+ * {@link #publish}, and force every client off with {@link #dropConnections}.
+ *
+ * Anything a soak test does not need is left out: no retained messages, wills, authentication, queueing for
+ * disconnected clients or redelivery.  A message for a subscriber that is not connected is counted as offline
+ * and discarded.
+ */
+public class LoopbackBroker {
+
+	// MQTT 3.1 message types
+	private static final int CONNECT = 1;
+	private static final int CONNACK = 2;
+	private static final int PUBLISH = 3;
+	private static final int PUBACK = 4;
+	private static final int PUBREC = 5;
+	private static final int PUBREL = 6;
+	private static final int PUBCOMP = 7;
+	private static final int SUBSCRIBE = 8;
+	private static final int SUBACK = 9;
+	private static final int UNSUBSCRIBE = 10;
+	private static final int UNSUBACK = 11;
+	private static final int PINGREQ = 12;
+	private static final int PINGRESP = 13;
+	private static final int DISCONNECT = 14;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The subscriptions of a client ID and its current connection, if any
+	 */
+	private static class Client {
+		final Map<String, Subscription> filters = new HashMap<String, Subscription>();
+		volatile Connection connection;
+	}
+
+	/**
+	 * A topic filter a client has subscribed to and the QoS granted
+	 */
+	private static class Subscription {
+		final Client client;
+		final String filter;
+		volatile int qos;
+
+		Subscription(Client client, String filter, int qos) {
+			this.client = client;
+			this.filter = filter;
+			this.qos = qos;
+		}
+	}
+
+	private final ServerSocket serverSocket;
+	private final Thread acceptor;
+	private volatile boolean running = true;
+
+	// Clients by ID, and the subscribers of each topic filter.  Clients are guarded by the broker.
+	private final Map<String, Client> clients = new HashMap<String, Client>();
+	private final TopicTrie<Subscription> subscribers = new TopicTrie<Subscription>();
+	private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+	// Counters
+	private final AtomicLong connects = new AtomicLong();
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong offline = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * Starts a broker on a port of the loopback interface
+	 *
+	 * @param port the port to listen on, or 0 for any free port
+	 */
+	public LoopbackBroker(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "Loopback Broker [" + getPort() + "]");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Publishes a message to the subscribers of its topic.  The message is buffered; it is sent when the
+	 * subscriber's buffer fills or when {@link #flush} is called.  May block while a subscriber's socket is full.
+	 *
+	 * @return the number of subscribers the message was written to
+	 */
+	public int publish(String topic, byte [] payload, int qos) {
+		published.incrementAndGet();
+		List<Subscription> matches = new ArrayList<Subscription>();
+		subscribers.match(topic, matches);
+		int count = 0;
+		for (int i = 0; i < matches.size(); i++) {
+			// Each client receives the message once, at the highest QoS granted by its matching filters
+			Client client = matches.get(i).client;
+			int granted = -1;
+			for (int j = 0; j < matches.size(); j++) {
+				Subscription match = matches.get(j);
+				if (match.client == client) {
+					if (j < i) {
+						break;
+					}
+					granted = Math.max(granted, match.qos);
+				}
+			}
+			if (granted < 0) {
+				continue;
+			}
+			Connection connection = client.connection;
+			if (connection == null) {
+				offline.incrementAndGet();
+				continue;
+			}
+			try {
+				connection.sendPublish(topic, payload, Math.min(qos, granted), false);
+				delivered.incrementAndGet();
+				count++;
+			} catch (IOException e) {
+				failed.incrementAndGet();
+				connection.close();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sends the messages buffered for every connection
+	 */
+	public void flush() {
+		Iterator<Connection> it = connections.iterator();
+		while (it.hasNext()) {
+			Connection connection = it.next();
+			try {
+				connection.flush();
+			} catch (IOException e) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes every client connection without a DISCONNECT, as a broker restart or network failure would.  Clients
+	 * keep their subscriptions unless they reconnect with a clean session.
+	 *
+	 * @return the number of connections closed
+	 */
+	public int dropConnections() {
+		int count = 0;
+		Iterator<Connection> it = connections.iterator();
+		while (it.hasNext()) {
+			it.next().close();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of clients connected
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Returns the number of CONNECTs accepted
+	 */
+	public long getConnects() {
+		return connects.get();
+	}
+
+	/**
+	 * Returns the number of messages published, by clients or with {@link #publish}
+	 */
+	public long getPublished() {
+		return published.get();
+	}
+
+	/**
+	 * Returns the number of messages written to a subscriber's connection
+	 */
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	/**
+	 * Returns the number of messages discarded because their subscriber was not connected
+	 */
+	public long getOffline() {
+		return offline.get();
+	}
+
+	/**
+	 * Returns the number of messages that could not be written because their subscriber's connection failed
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Stops accepting connections and closes every connection
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+		}
+		dropConnections();
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				final Connection connection = new Connection(socket);
+				Thread reader = new Thread(new Runnable() {
+					public void run() {
+						connection.read();
+					}
+				}, "Loopback Broker Connection [" + socket.getPort() + "]");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				// The server socket has been closed
+			}
+		}
+	}
+
+	/**
+	 * A client connection.  Packets are read on the connection's own thread; writes are serialized by the
+	 * connection's lock.
+	 */
+	private class Connection {
+
+		private final Socket socket;
+		private final DataInputStream in;
+		private final OutputStream out;
+		private Client client = null;
+		private int nextMessageId = 1;
+		private volatile boolean closed = false;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+			out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		}
+
+		/**
+		 * Reads and handles packets until the connection closes
+		 */
+		void read() {
+			try {
+				while (!closed) {
+					int header = in.read();
+					if (header < 0) {
+						break;
+					}
+					byte [] body = new byte[readRemainingLength()];
+					in.readFully(body);
+					handle(header, body);
+				}
+			} catch (EOFException e) {
+			} catch (SocketException e) {
+			} catch (IOException e) {
+			} catch (RuntimeException e) {
+				// A malformed packet, e.g. an invalid topic filter
+			} finally {
+				close();
+			}
+		}
+
+		private void handle(int header, byte [] body) throws IOException {
+			int type = (header >> 4) & 0x0f;
+			Packet packet = new Packet(body);
+			if (client == null && type != CONNECT) {
+				throw new IOException("Expected CONNECT");
+			}
+			switch (type) {
+			case CONNECT:
+				connect(packet);
+				break;
+			case PUBLISH:
+				int qos = (header >> 1) & 0x03;
+				String topic = packet.readString();
+				int messageId = qos > 0 ? packet.readShort() : 0;
+				byte [] payload = packet.readRemaining();
+				if (qos == 1) {
+					send(PUBACK << 4, messageId);
+				} else if (qos == 2) {
+					send(PUBREC << 4, messageId);
+				}
+				publish(topic, payload, qos);
+				flush();
+				break;
+			case PUBREC:
+				send((PUBREL << 4) | 0x02, packet.readShort());
+				break;
+			case PUBREL:
+				send(PUBCOMP << 4, packet.readShort());
+				break;
+			case SUBSCRIBE:
+				subscribe(packet);
+				break;
+			case UNSUBSCRIBE:
+				unsubscribe(packet);
+				break;
+			case PINGREQ:
+				sendPacket(PINGRESP << 4, new byte[0], true);
+				break;
+			case DISCONNECT:
+				closed = true;
+				break;
+			default:
+				// PUBACK and PUBCOMP need nothing more, as nothing is redelivered
+			}
+		}
+
+		private void connect(Packet packet) throws IOException {
+			packet.readString();
+			packet.readByte();
+			int flags = packet.readByte();
+			packet.readShort();
+			String clientId = packet.readString();
+			boolean cleanSession = (flags & 0x02) != 0;
+
+			Connection previous = null;
+			synchronized (LoopbackBroker.this) {
+				Client existing = clients.get(clientId);
+				if (existing != null && (cleanSession || existing.connection != null)) {
+					previous = existing.connection;
+					if (cleanSession) {
+						removeSubscriptions(existing);
+						existing = null;
+					}
+				}
+				if (existing == null) {
+					existing = new Client();
+					clients.put(clientId, existing);
+				}
+				client = existing;
+				client.connection = this;
+			}
+			// A client ID may only be connected once, so the older connection is closed
+			if (previous != null && previous != this) {
+				previous.close();
+			}
+			connections.add(this);
+			connects.incrementAndGet();
+			sendPacket(CONNACK << 4, new byte [] {0, 0}, true);
+		}
+
+		private void subscribe(Packet packet) throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			body.write(packet.readByte());
+			body.write(packet.readByte());
+			synchronized (LoopbackBroker.this) {
+				while (packet.hasRemaining()) {
+					String filter = packet.readString();
+					int qos = Math.min(1, packet.readByte() & 0x03);
+					Subscription subscription = client.filters.get(filter);
+					if (subscription != null) {
+						subscription.qos = qos;
+					} else {
+						subscription = new Subscription(client, filter, qos);
+						subscribers.add(filter, subscription);
+						client.filters.put(filter, subscription);
+					}
+					body.write(qos);
+				}
+			}
+			sendPacket(SUBACK << 4, body.toByteArray(), true);
+		}
+
+		private void unsubscribe(Packet packet) throws IOException {
+			int messageId = packet.readShort();
+			synchronized (LoopbackBroker.this) {
+				while (packet.hasRemaining()) {
+					Subscription subscription = client.filters.remove(packet.readString());
+					if (subscription != null) {
+						subscribers.remove(subscription.filter, subscription);
+					}
+				}
+			}
+			send(UNSUBACK << 4, messageId);
+		}
+
+		/**
+		 * Sends a PUBLISH, buffered unless it is flushed
+		 */
+		void sendPublish(String topic, byte [] payload, int qos, boolean flush) throws IOException {
+			byte [] topicBytes = topic.getBytes("UTF-8");
+			int length = 2 + topicBytes.length + (qos > 0 ? 2 : 0) + payload.length;
+			synchronized (this) {
+				if (closed) {
+					throw new SocketException("Connection closed");
+				}
+				out.write((PUBLISH << 4) | (qos << 1));
+				writeRemainingLength(length);
+				out.write(topicBytes.length >> 8);
+				out.write(topicBytes.length);
+				out.write(topicBytes);
+				if (qos > 0) {
+					int messageId = nextMessageId;
+					nextMessageId = nextMessageId == 0xffff ? 1 : nextMessageId + 1;
+					out.write(messageId >> 8);
+					out.write(messageId);
+				}
+				out.write(payload);
+				if (flush) {
+					out.flush();
+				}
+			}
+		}
+
+		/**
+		 * Sends an acknowledgement carrying a message ID
+		 */
+		private void send(int header, int messageId) throws IOException {
+			sendPacket(header, new byte [] {(byte) (messageId >> 8), (byte) messageId}, true);
+		}
+
+		private void sendPacket(int header, byte [] body, boolean flush) throws IOException {
+			synchronized (this) {
+				out.write(header);
+				writeRemainingLength(body.length);
+				out.write(body);
+				if (flush) {
+					out.flush();
+				}
+			}
+		}
+
+		synchronized void flush() throws IOException {
+			if (!closed) {
+				out.flush();
+			}
+		}
+
+		/**
+		 * Closes the connection.  The client keeps its subscriptions for its next connection.
+		 */
+		void close() {
+			closed = true;
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+			if (connections.remove(this)) {
+				synchronized (LoopbackBroker.this) {
+					if (client != null && client.connection == this) {
+						client.connection = null;
+					}
+				}
+			}
+		}
+
+		private int readRemainingLength() throws IOException {
+			int length = 0;
+			int multiplier = 1;
+			int digit;
+			do {
+				digit = in.readUnsignedByte();
+				length += (digit & 0x7f) * multiplier;
+				multiplier *= 128;
+			} while ((digit & 0x80) != 0);
+			return length;
+		}
+
+		private void writeRemainingLength(int length) throws IOException {
+			do {
+				int digit = length % 128;
+				length /= 128;
+				out.write(length > 0 ? digit | 0x80 : digit);
+			} while (length > 0);
+		}
+	}
+
+	/**
+	 * Removes the subscriptions of a client.  Called holding the broker's lock.
+	 */
+	private void removeSubscriptions(Client client) {
+		Iterator<Subscription> it = client.filters.values().iterator();
+		while (it.hasNext()) {
+			Subscription subscription = it.next();
+			subscribers.remove(subscription.filter, subscription);
+		}
+		client.filters.clear();
+	}
+
+	/**
+	 * Reads the fields of a packet body
+	 */
+	private static class Packet {
+		private final byte [] body;
+		private int position = 0;
+
+		Packet(byte [] body) {
+			this.body = body;
+		}
+
+		boolean hasRemaining() {
+			return position < body.length;
+		}
+
+		int readByte() throws IOException {
+			if (position >= body.length) {
+				throw new EOFException("Truncated packet");
+			}
+			return body[position++] & 0xff;
+		}
+
+		int readShort() throws IOException {
+			return (readByte() << 8) | readByte();
+		}
+
+		String readString() throws IOException {
+			int length = readShort();
+			if (position + length > body.length) {
+				throw new EOFException("Truncated packet");
+			}
+			String value = new String(body, position, length, "UTF-8");
+			position += length;
+			return value;
+		}
+
+		byte [] readRemaining() {
+			byte [] remaining = new byte[body.length - position];
+			System.arraycopy(body, position, remaining, 0, remaining.length);
+			position = body.length;
+			return remaining;
+		}
+	}
+}
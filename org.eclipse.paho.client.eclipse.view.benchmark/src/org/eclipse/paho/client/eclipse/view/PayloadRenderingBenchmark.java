@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Random;
+
+/**
+ * Rendering an arrived payload for its log row.  HEX measures {@link PayloadRenderer#toHex}, which
+ * {@link MqttClientView#getHexString} delegates to; the other formats measure {@link PayloadRenderer#render}
+ * with the view's default preview length, UTF8 being the UTF-8 decoding of text payloads.
+ */
+public class PayloadRenderingBenchmark extends Benchmark {
+
+	private final PayloadRenderer.Format format;
+	private final int payloadSize;
+	private final PayloadRenderer renderer = new PayloadRenderer();
+	private byte [] payload;
+
+	/**
+	 * Constructor
+	 *
+	 * @param format the format to render in
+	 * @param payloadSize the size of the payload in bytes
+	 */
+	public PayloadRenderingBenchmark(PayloadRenderer.Format format, int payloadSize) {
+		super("render." + format.name().toLowerCase() + "[" + payloadSize + "]");
+		this.format = format;
+		this.payloadSize = payloadSize;
+	}
+
+	public void setUp() {
+		payload = new byte[payloadSize];
+		if (format == PayloadRenderer.Format.HEX) {
+			new Random(1).nextBytes(payload);
+		} else if (format == PayloadRenderer.Format.JSON) {
+			StringBuilder json = new StringBuilder("{\"readings\":[");
+			while (json.length() < payloadSize - 2) {
+				json.append(json.charAt(json.length() - 1) == '[' ? "" : ",").append("{\"t\":21.5}");
+			}
+			json.setLength(Math.min(json.length(), payloadSize - 2));
+			byte [] text = json.append("]}").toString().getBytes();
+			System.arraycopy(text, 0, payload, 0, Math.min(text.length, payloadSize));
+		} else {
+			// Mostly ASCII with some multi-byte characters, as sensor and chat payloads tend to be
+			String text = "temperature=21.5\u00b0C humidity=40% \u00e9t\u00e9 ";
+			byte [] bytes;
+			try {
+				bytes = text.getBytes("UTF-8");
+			} catch (java.io.UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			for (int i = 0; i < payloadSize; i++) {
+				payload[i] = bytes[i % bytes.length];
+			}
+		}
+	}
+
+	public long run(int operations) {
+		long length = 0;
+		for (int i = 0; i < operations; i++) {
+			if (format == PayloadRenderer.Format.HEX) {
+				length += PayloadRenderer.toHex(payload).length();
+			} else {
+				length += renderer.render(payload, payload.length, payload.length, format,
+					ClientConstants.PAYLOAD_PREVIEW_BYTES, false).length();
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * The publish side of a file published in chunks, short of the network: encoding each chunk with its header, the
+ * running CRC, wrapping it in a message and counting it in the session's topic statistics.  A chunk size of 0
+ * measures a single payload publish instead, including the preview written to the log.
+ */
+public class PublishEncodingBenchmark extends Benchmark {
+
+	private static final int SOURCE_SIZE = 4 * 1024 * 1024;
+	private static final String TOPIC = "benchmark/file";
+
+	private final int chunkSize;
+	private final CRC32 crc = new CRC32();
+	private final SessionStats stats = new SessionStats();
+	private ByteBuffer source;
+	private byte [] payload;
+	private int sequence = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param chunkSize the chunk size in bytes, or 0 to publish a 64 byte payload whole
+	 */
+	public PublishEncodingBenchmark(int chunkSize) {
+		super(chunkSize == 0 ? "publish.payload" : "publish.chunk[" + chunkSize + "]");
+		this.chunkSize = chunkSize;
+	}
+
+	public void setUp() {
+		source = ByteBuffer.allocate(SOURCE_SIZE);
+		for (int i = 0; i < SOURCE_SIZE; i++) {
+			source.put((byte) i);
+		}
+		source.flip();
+		payload = "{\"sensor\":\"benchmark\",\"temperature\":21.5,\"humidity\":40}".getBytes();
+	}
+
+	public long run(int operations) {
+		long length = 0;
+		int total = chunkSize == 0 ? 1 : SOURCE_SIZE / chunkSize;
+		for (int i = 0; i < operations; i++) {
+			byte [] encoded;
+			if (chunkSize == 0) {
+				encoded = payload;
+				length += Session.preview(encoded).length();
+			} else {
+				if (!source.hasRemaining()) {
+					source.rewind();
+					sequence = 0;
+				}
+				encoded = FilePublisher.encodeChunk(source, chunkSize, sequence++, total);
+				crc.update(encoded, FilePublisher.CHUNK_HEADER_SIZE, encoded.length - FilePublisher.CHUNK_HEADER_SIZE);
+			}
+			MqttMessage message = new MqttMessage(encoded);
+			message.setQos(1);
+			stats.messageOut(TOPIC, encoded.length, 1);
+			length += encoded.length;
+		}
+		return length + crc.getValue();
+	}
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A headless soak test of a session under sustained load.  A {@link LoopbackBroker} is started on the loopback
+ * interface and a session of a fresh {@link SessionRegistry} connects to it and subscribes, so messages arrive
+ * through the Paho client and the session's MqttCallback exactly as in the view.  A {@link HeadlessLog} does
+ * what the view does with them, and a stand-in UI thread pumps its log pipeline and renders the newest rows
+ * once per frame, as the view's event loop would.
+ *
+ * The broker publishes at each of the target rates in turn, optionally dropping the connection at an interval to
+ * exercise the session's reconnects; the session is clean, so it must also resubscribe each time.  Every report
+ * interval the test prints the rates achieved, UI-thread stall time (the time each frame spent flushing and
+ * rendering), event-loop latency (how late each frame started), the heap live after the last garbage collection
+ * and messages lost.  At the end it prints a summary and exits with status 2 if a message was lost while
+ * connected, an arrived message never reached the log, the longest stall exceeded its limit, the message store
+ * kept the topics of evicted messages, the heap grew by more than its limit or the session did not finish
+ * connected.  Run with -topics 0, so that every message has a topic of its own, to check that heap use stays flat
+ * however many distinct topics arrive.
+ *
+ * Usage: SoakTest [-rates 1000,10000,50000] [-duration seconds] [-payload bytes] [-topics n] [-qos n]
+ * [-disconnect seconds] [-persistence label] [-report seconds] [-maxStall millis] [-maxHeapGrowth MB] [-port n]
+ */
+public class SoakTest {
+
+	private static final String SESSION_NAME = "soak";
+	private static final String TOPIC_PREFIX = "soak/sensor/";
+
+	// The interval between frames of the stand-in UI thread, and the log rows a frame renders
+	private static final long FRAME_INTERVAL = ClientConstants.LOG_FLUSH_INTERVAL * 1000000L;
+	private static final int VISIBLE_ROWS = 40;
+
+	// The time allowed for the session to connect, and for messages in flight to arrive once publishing stops
+	private static final long CONNECT_TIMEOUT = 30000;
+	private static final long DRAIN_TIMEOUT = 10000;
+
+	private int [] rates = {1000, 10000, 50000};
+	private int duration = 600;
+	private int payloadSize = 64;
+	private int topicCount = 100;
+	private int qos = 0;
+	private int disconnectInterval = 0;
+	private PersistenceType persistence = PersistenceType.MEMORY;
+	private int reportInterval = 10;
+	private long maxStall = 1000;
+	private int maxHeapGrowth = 0;
+	private int port = 0;
+
+	private LoopbackBroker broker;
+	private SessionRegistry registry;
+	private Session session;
+	private final HeadlessLog log = new HeadlessLog();
+
+	// Stand-in UI thread, and the time each frame spent working and started late
+	private Thread uiThread;
+	private volatile boolean running = true;
+	private final LatencyHistogram stallTime = new LatencyHistogram();
+	private final LatencyHistogram loopLatency = new LatencyHistogram();
+
+	// Whether the publisher is still running, and the rate it is currently held to
+	private volatile boolean publishing = true;
+	private volatile int targetRate = 0;
+	private int forcedDisconnects = 0;
+
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+
+	public static void main(String [] args) throws Exception {
+		SoakTest test = new SoakTest();
+		if (!test.parse(args)) {
+			System.err.println("Usage: SoakTest [-rates 1000,10000,50000] [-duration seconds] [-payload bytes] [-topics n]"
+				+ " [-qos n] [-disconnect seconds] [-persistence label] [-report seconds] [-maxStall millis]"
+				+ " [-maxHeapGrowth MB] [-port n]");
+			System.exit(1);
+		}
+		System.exit(test.run());
+	}
+
+	private boolean parse(String [] args) {
+		try {
+			for (int i = 0; i + 1 < args.length; i += 2) {
+				String arg = args[i];
+				String value = args[i + 1];
+				if (arg.equals("-rates")) {
+					String [] values = value.split(",");
+					rates = new int[values.length];
+					for (int j = 0; j < values.length; j++) {
+						rates[j] = Math.max(1, Integer.parseInt(values[j].trim()));
+					}
+				} else if (arg.equals("-duration")) {
+					duration = Math.max(1, Integer.parseInt(value));
+				} else if (arg.equals("-payload")) {
+					payloadSize = Math.max(0, Integer.parseInt(value));
+				} else if (arg.equals("-topics")) {
+					topicCount = Math.max(0, Integer.parseInt(value));
+				} else if (arg.equals("-qos")) {
+					qos = Math.max(0, Math.min(2, Integer.parseInt(value)));
+				} else if (arg.equals("-disconnect")) {
+					disconnectInterval = Math.max(0, Integer.parseInt(value));
+				} else if (arg.equals("-persistence")) {
+					persistence = PersistenceType.fromLabel(value);
+				} else if (arg.equals("-report")) {
+					reportInterval = Math.max(1, Integer.parseInt(value));
+				} else if (arg.equals("-maxStall")) {
+					maxStall = Math.max(0, Long.parseLong(value));
+				} else if (arg.equals("-maxHeapGrowth")) {
+					maxHeapGrowth = Math.max(0, Integer.parseInt(value));
+				} else if (arg.equals("-port")) {
+					port = Integer.parseInt(value);
+				} else {
+					return false;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return args.length % 2 == 0;
+	}
+
+	/**
+	 * Runs the soak test
+	 *
+	 * @return the exit status: 0 if it passed, 2 if it failed
+	 */
+	public int run() throws Exception {
+		broker = new LoopbackBroker(port);
+		registry = new SessionRegistry();
+		registry.addListener(log);
+		registry.addListener(new SessionAdapter() {
+			public void sessionEvent(Session session, String event, String detail) {
+				print(event + (detail != null ? "  " + detail : ""));
+			}
+		});
+		startUiThread();
+		try {
+			if (!connect()) {
+				print("Error connecting:  The session did not connect to the loopback broker on port " + broker.getPort());
+				return 2;
+			}
+			long heapBefore = getHeapAfterCollection(true);
+			print("Heap after collection:  " + megabytes(heapBefore) + " MB");
+
+			Thread publisher = startPublisher();
+			for (int i = 0; i < rates.length; i++) {
+				runPhase(rates[i]);
+			}
+			// Keep the UI thread running so that it flushes what is still arriving
+			publishing = false;
+			publisher.join();
+			drain();
+
+			long heapAfter = getHeapAfterCollection(true);
+			return summarize(heapBefore, heapAfter);
+		} finally {
+			publishing = false;
+			running = false;
+			registry.shutdown();
+			broker.shutdown();
+			uiThread.join(1000);
+			log.dispose();
+		}
+	}
+
+	/**
+	 * Connects the session to the broker and subscribes to the test topics
+	 *
+	 * @return whether the session is connected
+	 */
+	private boolean connect() throws InterruptedException {
+		ConnectionProfile profile = new ConnectionProfile();
+		profile.setName(SESSION_NAME);
+		profile.setAddress("127.0.0.1");
+		profile.setPort(broker.getPort());
+		profile.setClientId(SESSION_NAME + "-" + System.currentTimeMillis() % 100000);
+		// Connect with a clean session, as the view does by default, so the session has to subscribe again after
+		// each forced disconnect; and keep reconnecting however long it takes
+		profile.setCleanStart(true);
+		profile.setReconnectAttempts(0);
+		profile.setPersistence(persistence);
+		session = registry.getOrCreateSession(SESSION_NAME);
+		try {
+			session.connect(profile).get();
+			session.subscribe(new String [] {TOPIC_PREFIX + "#"}, new int [] {qos}).get();
+		} catch (ExecutionException e) {
+			return false;
+		}
+		long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+		while (session.getState() != ConnectionState.CONNECTED && System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+		}
+		return session.getState() == ConnectionState.CONNECTED;
+	}
+
+	/**
+	 * Starts the stand-in UI thread.  Once per frame it runs the pending log flushes and renders the newest rows.
+	 */
+	private void startUiThread() {
+		uiThread = new Thread(new Runnable() {
+			public void run() {
+				long due = System.nanoTime();
+				while (running) {
+					long start = System.nanoTime();
+					loopLatency.record(start - due);
+					if (log.runPending() > 0) {
+						log.renderRows(VISIBLE_ROWS);
+					}
+					long end = System.nanoTime();
+					stallTime.record(end - start);
+					due = Math.max(due + FRAME_INTERVAL, end);
+					LockSupport.parkNanos(due - end);
+				}
+			}
+		}, "Soak UI Thread");
+		uiThread.setDaemon(true);
+		uiThread.start();
+	}
+
+	/**
+	 * Starts the thread that publishes from the broker at the target rate
+	 */
+	private Thread startPublisher() {
+		final byte [] payload = new byte[payloadSize];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) ('a' + i % 26);
+		}
+		// With no topic count every message gets a topic of its own
+		final String [] topics = new String[topicCount];
+		for (int i = 0; i < topicCount; i++) {
+			topics[i] = TOPIC_PREFIX + i;
+		}
+		Thread publisher = new Thread(new Runnable() {
+			public void run() {
+				long sent = 0;
+				long serial = 0;
+				int rate = 0;
+				long start = 0;
+				while (publishing) {
+					if (rate != targetRate) {
+						rate = targetRate;
+						start = System.nanoTime();
+						sent = 0;
+					}
+					// Publish the messages due by now, then send them in one write.  If the session has fallen more
+					// than a second behind, the backlog is skipped rather than sent in one burst.
+					long due = (System.nanoTime() - start) * rate / 1000000000L;
+					sent = Math.max(sent, due - rate);
+					while (sent < due && publishing) {
+						String topic = topics.length > 0 ? topics[(int) (serial % topics.length)] : TOPIC_PREFIX + serial;
+						broker.publish(topic, payload, qos);
+						sent++;
+						serial++;
+					}
+					broker.flush();
+					LockSupport.parkNanos(1000000L);
+				}
+			}
+		}, "Soak Publisher");
+		publisher.setDaemon(true);
+		publisher.start();
+		return publisher;
+	}
+
+	/**
+	 * Publishes at a rate for the test duration, reporting and forcing disconnects at their intervals
+	 */
+	private void runPhase(int rate) throws InterruptedException {
+		print("Publishing " + rate + " msgs/s for " + duration + " s");
+		targetRate = rate;
+		long start = System.currentTimeMillis();
+		long end = start + duration * 1000L;
+		long nextReport = start + reportInterval * 1000L;
+		long nextDisconnect = disconnectInterval > 0 ? start + disconnectInterval * 1000L : Long.MAX_VALUE;
+		Counts previous = new Counts();
+		long previousTime = start;
+		while (true) {
+			long now = System.currentTimeMillis();
+			if (now >= nextDisconnect) {
+				int dropped = broker.dropConnections();
+				forcedDisconnects++;
+				print("Forced disconnect of " + dropped + " connection(s)");
+				nextDisconnect += disconnectInterval * 1000L;
+			}
+			if (now >= nextReport || now >= end) {
+				Counts current = new Counts();
+				report(rate, previous, current, now - previousTime);
+				previous = current;
+				previousTime = now;
+				nextReport += reportInterval * 1000L;
+			}
+			if (now >= end) {
+				break;
+			}
+			Thread.sleep(Math.max(1, Math.min(Math.min(nextReport, nextDisconnect), end) - now));
+		}
+	}
+
+	/**
+	 * Waits for the messages in flight to arrive and reach the log
+	 */
+	private void drain() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		Counts previous = new Counts();
+		while (System.currentTimeMillis() < deadline) {
+			Thread.sleep(500);
+			Counts current = new Counts();
+			if (current.arrived == previous.arrived && current.logged == current.arrived) {
+				return;
+			}
+			previous = current;
+		}
+	}
+
+	private void report(int rate, Counts previous, Counts current, long elapsed) {
+		double seconds = Math.max(1, elapsed) / 1000.0;
+		LatencyHistogram.Snapshot stalls = stallTime.getIntervalSnapshot();
+		LatencyHistogram.Snapshot latency = loopLatency.getIntervalSnapshot();
+		print(String.format("Target: %d/s  Published: %.0f/s  Arrived: %.0f/s  Logged: %.0f/s  In flight: %d  Offline: %d"
+			+ "  Stall p99/max: %s/%s ms  Loop latency p99/max: %s/%s ms  Heap: %d MB  State: %s", rate,
+			(current.published - previous.published) / seconds, (current.arrived - previous.arrived) / seconds,
+			(current.logged - previous.logged) / seconds, current.getUnarrived(), current.offline,
+			LatencyHistogram.millis(stalls.getPercentile(99)), LatencyHistogram.millis(stalls.getMax()),
+			LatencyHistogram.millis(latency.getPercentile(99)), LatencyHistogram.millis(latency.getMax()),
+			megabytes(getHeapAfterCollection(false)), session.getState()));
+	}
+
+	private int summarize(long heapBefore, long heapAfter) {
+		Counts counts = new Counts();
+		LatencyHistogram.Snapshot stalls = stallTime.getSnapshot();
+		LatencyHistogram.Snapshot latency = loopLatency.getSnapshot();
+		long stallsOverLimit = stalls.getCount() - stalls.getCountAtOrBelow(maxStall * 1000000L);
+		print("Summary");
+		print("  Messages:       published " + counts.published + ", delivered " + counts.delivered + ", arrived " +
+			counts.arrived + ", logged " + counts.logged);
+		print("  Dropped:        " + counts.offline + " while disconnected, " + counts.getUnarrived() +
+			" lost in transit, " + (counts.arrived - counts.logged) + " never logged");
+		print("  UI thread:      " + stalls.getCount() + " frames, stall " + stalls + ", " + stallsOverLimit +
+			" over " + maxStall + " ms");
+		print("  Event loop:     latency " + latency);
+		print("  Log pipeline:   " + log.getMetrics());
+		print("  Heap:           " + megabytes(heapBefore) + " MB before, " + megabytes(heapAfter) + " MB after, " +
+			"growth " + megabytes(heapAfter - heapBefore) + " MB");
+		MessageStore store = log.getMessageStore();
+		int held = store.getMessageCount();
+		int interned = store.getInternedCount();
+		print("  Store:          " + held + " messages held, " + interned + " topics and session names interned, " +
+			log.getLogIndex().getTopicCount() + " topics indexed");
+		print("  Reconnects:     " + forcedDisconnects + " forced disconnects, " + Math.max(0, broker.getConnects() - 1) +
+			" reconnects accepted by the broker, " + session.getReconnectStats());
+		print("  Persistence:    " + session.getPersistence());
+
+		int failures = 0;
+		if (forcedDisconnects == 0 && counts.getUnarrived() > 0) {
+			print("FAILED:  Messages were lost without a disconnect");
+			failures++;
+		}
+		if (counts.logged != counts.arrived) {
+			print("FAILED:  Arrived messages did not all reach the log");
+			failures++;
+		}
+		if (maxStall > 0 && stalls.getMax() > maxStall * 1000000L) {
+			print("FAILED:  The UI thread stalled for longer than " + maxStall + " ms");
+			failures++;
+		}
+		if (interned > held + 1) {
+			print("FAILED:  The store holds topics of messages it has evicted");
+			failures++;
+		}
+		if (maxHeapGrowth > 0 && heapAfter - heapBefore > maxHeapGrowth * 1024L * 1024L) {
+			print("FAILED:  The heap grew by more than " + maxHeapGrowth + " MB");
+			failures++;
+		}
+		if (session.getState() != ConnectionState.CONNECTED) {
+			print("FAILED:  The session finished " + session.getState());
+			failures++;
+		}
+		if (failures > 0) {
+			return 2;
+		}
+		print("PASSED");
+		return 0;
+	}
+
+	/**
+	 * Returns the heap live after the most recent garbage collection
+	 *
+	 * @param collect whether to collect garbage first
+	 */
+	private static long getHeapAfterCollection(boolean collect) {
+		if (collect) {
+			System.gc();
+			System.gc();
+		}
+		long used = 0;
+		Iterator<MemoryPoolMXBean> it = ManagementFactory.getMemoryPoolMXBeans().iterator();
+		while (it.hasNext()) {
+			MemoryPoolMXBean pool = it.next();
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (pool.getType() == MemoryType.HEAP && usage != null) {
+				used += usage.getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long megabytes(long bytes) {
+		return bytes / (1024 * 1024);
+	}
+
+	private synchronized void print(String line) {
+		System.out.println(timeFormat.format(new Date()) + "  " + line);
+	}
+
+	/**
+	 * The message counts at one moment
+	 */
+	private class Counts {
+		final long published = broker.getPublished();
+		final long delivered = broker.getDelivered();
+		final long offline = broker.getOffline();
+		final long arrived = session.getStats().getMessagesIn();
+		final long logged = log.getFlushedMessages();
+
+		/**
+		 * Returns the number of messages written to the session's connection that have not arrived, which once
+		 * publishing has stopped and the session has drained are the messages lost
+		 */
+		long getUnarrived() {
+			return Math.max(0, delivered - arrived);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formatting the timestamp of a log row, as {@link MqttClientView} does with one reused formatter and date
+ */
+public class TimestampFormatBenchmark extends Benchmark {
+
+	private final SimpleDateFormat format = new SimpleDateFormat(ClientConstants.LOG_DATE_PATTERN);
+	private final Date date = new Date();
+	private long time = System.currentTimeMillis();
+
+	public TimestampFormatBenchmark() {
+		super("log.timestamp");
+	}
+
+	public long run(int operations) {
+		long length = 0;
+		for (int i = 0; i < operations; i++) {
+			// Advance by a few milliseconds, as rows a log flush formats would
+			time += 7;
+			date.setTime(time);
+			length += format.format(date).length();
+		}
+		return length;
+	}
+}
@@ -26,6 +26,9 @@ public class Activator extends AbstractUIPlugin {
 
 	// The shared instance
 	private static Activator plugin;
+
+	// The saved connection profiles, created on first use
+	private ProfileStore profileStore;
 	
 	/**
 	 * The constructor
@@ -47,6 +50,7 @@ public class Activator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		SessionRegistry.getDefault().shutdown();
 		plugin = null;
 		super.stop(context);
 	}
@@ -70,4 +74,14 @@ public class Activator extends AbstractUIPlugin {
 	public static ImageDescriptor getImageDescriptor(String path) {
 		return imageDescriptorFromPlugin(PLUGIN_ID, path);
 	}
+
+	/**
+	 * Returns the connection profiles saved in the plug-in's preference store
+	 */
+	public synchronized ProfileStore getProfileStore() {
+		if (profileStore == null) {
+			profileStore = new ProfileStore(getPreferenceStore());
+		}
+		return profileStore;
+	}
 }
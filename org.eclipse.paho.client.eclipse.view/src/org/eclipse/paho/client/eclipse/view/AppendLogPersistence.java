@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+/**
+ * Persistence that keeps the client's in-flight packets in memory and records every change to them in a single
+ * append-only log, rather than in a file per packet.  Changes are appended to an in-memory buffer; a writer
+ * thread writes everything buffered with one channel write and one sync (group commit), so the disk is synced
+ * once per batch rather than once per packet.  A commit interval makes the writer wait for more changes before
+ * each batch.  With sync on, a put or remove returns only once its batch is on disk; with sync off it returns at
+ * once and the log is written, but not synced, in the background.
+ *
+ * The log, persistence.log in a directory named after the client ID and broker, holds records of:
+ *
+ *   int length (of the rest of the record), byte operation (1 put, 2 remove), short + UTF-8 key, and for puts
+ *   int + header and int + payload, then int CRC-32 of the record from the operation to the end
+ *
+ * Opening replays the log up to the first torn or corrupt record and rewrites it with only the live entries.
+ * The log is rewritten the same way whenever it grows past several times the size of the live entries.
+ */
+public class AppendLogPersistence implements MqttClientPersistence {
+
+	static final String LOG_NAME = "persistence.log";
+	static final String COMPACT_SUFFIX = ".tmp";
+
+	static final byte PUT = 1;
+	static final byte REMOVE = 2;
+
+	// Bytes of a record other than the key, header and payload
+	static final int RECORD_OVERHEAD = 4 + 1 + 2 + 4;
+	static final int PUT_OVERHEAD = 4 + 4;
+
+	/**
+	 * A live entry and the size of its record in the log
+	 */
+	private static class Entry {
+		private final StoredPersistable packet;
+		private final int recordSize;
+
+		private Entry(StoredPersistable packet, int recordSize) {
+			this.packet = packet;
+			this.recordSize = recordSize;
+		}
+	}
+
+	private final File baseDirectory;
+	private final long commitInterval;
+	private final boolean sync;
+
+	// Live entries, buffered records and commit progress, guarded by the lock.  The writer thread waits for
+	// records to be buffered and callers that sync wait for their records to be committed.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition appended = lock.newCondition();
+	private final Condition committed = lock.newCondition();
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer pending = ByteBuffer.allocate(ClientConstants.PERSISTENCE_BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(ClientConstants.PERSISTENCE_BUFFER_SIZE);
+	private long appendedRecords = 0;
+	private long committedRecords = 0;
+	private long liveBytes = 0;
+	private boolean compact = false;
+	private boolean closed = true;
+	private IOException failure;
+
+	// The client and broker last opened for, so the log can be reopened if used after being closed
+	private String clientId;
+	private String serverURI;
+
+	// State of the writer thread
+	private Thread writer;
+	private File logFile;
+	private RandomAccessFile logAccess;
+	private FileChannel channel;
+	private volatile long logSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param baseDirectory the directory to keep the logs of each client and broker in
+	 * @param commitInterval the number of milliseconds the writer waits for more changes before each batch
+	 * @param sync whether changes are synced to disk before they return
+	 */
+	public AppendLogPersistence(File baseDirectory, long commitInterval, boolean sync) {
+		this.baseDirectory = baseDirectory;
+		this.commitInterval = Math.max(0, commitInterval);
+		this.sync = sync;
+	}
+
+	/**
+	 * Opens the log for a client and broker, replaying the entries it holds
+	 */
+	public void open(String clientId, String serverURI) throws MqttPersistenceException {
+		lock.lock();
+		try {
+			if (!closed) {
+				return;
+			}
+			File directory = new File(baseDirectory, directoryName(clientId + "-" + serverURI));
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw persistenceException(new IOException("Unable to create " + directory));
+			}
+			logFile = new File(directory, LOG_NAME);
+			File compacted = new File(directory, LOG_NAME + COMPACT_SUFFIX);
+			if (!logFile.exists() && compacted.exists()) {
+				// A crash between removing the old log and renaming the compacted one over it
+				compacted.renameTo(logFile);
+			}
+			entries.clear();
+			liveBytes = 0;
+			pending.clear();
+			if (spare == null) {
+				spare = ByteBuffer.allocate(ClientConstants.PERSISTENCE_BUFFER_SIZE);
+			}
+			appendedRecords = 0;
+			committedRecords = 0;
+			failure = null;
+			try {
+				replay();
+				writeEntries(entries);
+			} catch (IOException e) {
+				closeChannel();
+				throw persistenceException(e);
+			}
+			this.clientId = clientId;
+			this.serverURI = serverURI;
+			closed = false;
+			compact = false;
+			writer = new Thread(new Runnable() {
+				public void run() {
+					write();
+				}
+			}, "MQTT Persistence Writer");
+			writer.setDaemon(true);
+			writer.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Commits any buffered changes and closes the log
+	 */
+	public void close() throws MqttPersistenceException {
+		Thread stopping;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			appended.signalAll();
+			stopping = writer;
+			writer = null;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			stopping.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeChannel();
+		if (failure != null) {
+			throw persistenceException(failure);
+		}
+	}
+
+	public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+		StoredPersistable packet = StoredPersistable.copyOf(persistable);
+		byte [] keyBytes = utf8(key);
+		lock.lock();
+		try {
+			ensureOpen();
+			int recordSize = RECORD_OVERHEAD + PUT_OVERHEAD + keyBytes.length + packet.getSize();
+			Entry previous = entries.put(key, new Entry(packet, recordSize));
+			liveBytes += recordSize - (previous == null ? 0 : previous.recordSize);
+			append(PUT, keyBytes, packet);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public MqttPersistable get(String key) {
+		lock.lock();
+		try {
+			Entry entry = entries.get(key);
+			return entry == null ? null : entry.packet;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(String key) throws MqttPersistenceException {
+		byte [] keyBytes = utf8(key);
+		lock.lock();
+		try {
+			ensureOpen();
+			Entry previous = entries.remove(key);
+			if (previous != null) {
+				liveBytes -= previous.recordSize;
+				append(REMOVE, keyBytes, null);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Enumeration keys() {
+		lock.lock();
+		try {
+			return Collections.enumeration(new ArrayList<String>(entries.keySet()));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every entry.  The log is rewritten empty by the writer thread.
+	 */
+	public void clear() throws MqttPersistenceException {
+		lock.lock();
+		try {
+			ensureOpen();
+			entries.clear();
+			liveBytes = 0;
+			compact = true;
+			appended.signalAll();
+			awaitCommit(appendedRecords);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean containsKey(String key) {
+		lock.lock();
+		try {
+			return entries.containsKey(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the size of the log on disk, in bytes
+	 */
+	public long getLogSize() {
+		return logSize;
+	}
+
+	/**
+	 * Reopens the log if the client uses it after closing it, and fails if the writer has failed.  Called holding
+	 * the lock.
+	 */
+	private void ensureOpen() throws MqttPersistenceException {
+		if (closed) {
+			if (clientId == null) {
+				throw new MqttPersistenceException();
+			}
+			open(clientId, serverURI);
+		}
+		if (failure != null) {
+			throw persistenceException(failure);
+		}
+	}
+
+	/**
+	 * Buffers a record for the writer, then waits for it to be committed if syncing, or for the buffer to drain
+	 * if it is full.  Called holding the lock.
+	 */
+	private void append(byte operation, byte [] key, StoredPersistable packet) throws MqttPersistenceException {
+		int length = 1 + 2 + key.length + (packet == null ? 0 : PUT_OVERHEAD + packet.getSize());
+		boolean wasEmpty = pending.position() == 0;
+		reserve(4 + length + 4);
+		pending.putInt(length);
+		int start = pending.position();
+		pending.put(operation);
+		pending.putShort((short) key.length);
+		pending.put(key);
+		if (packet != null) {
+			pending.putInt(packet.getHeaderLength());
+			pending.put(packet.getHeaderBytes());
+			pending.putInt(packet.getPayloadLength());
+			pending.put(packet.getPayloadBytes());
+		}
+		crc.reset();
+		crc.update(pending.array(), start, pending.position() - start);
+		pending.putInt((int) crc.getValue());
+		appendedRecords++;
+		if (wasEmpty) {
+			appended.signalAll();
+		}
+		if (sync) {
+			awaitCommit(appendedRecords);
+		} else {
+			while (pending.position() > ClientConstants.PERSISTENCE_MAX_PENDING && failure == null && !closed) {
+				committed.awaitUninterruptibly();
+			}
+		}
+	}
+
+	/**
+	 * Waits until a number of records have been committed.  Called holding the lock.
+	 */
+	private void awaitCommit(long records) throws MqttPersistenceException {
+		while (committedRecords < records && failure == null && !closed) {
+			committed.awaitUninterruptibly();
+		}
+		if (failure != null) {
+			throw persistenceException(failure);
+		}
+	}
+
+	/**
+	 * Grows the pending buffer to hold a number of bytes more
+	 */
+	private void reserve(int bytes) {
+		if (pending.remaining() >= bytes) {
+			return;
+		}
+		int capacity = pending.capacity();
+		while (capacity - pending.position() < bytes) {
+			capacity *= 2;
+		}
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		pending.flip();
+		grown.put(pending);
+		pending = grown;
+	}
+
+	/**
+	 * The writer thread.  Takes everything buffered, waiting out the commit interval first, writes it with one
+	 * write and one sync, and marks it committed.  Rewrites the log when asked or when it has grown too large.
+	 */
+	private void write() {
+		while (true) {
+			ByteBuffer batch = null;
+			Map<String, Entry> live = null;
+			long target;
+			lock.lock();
+			try {
+				while (!closed && !compact && pending.position() == 0) {
+					appended.awaitUninterruptibly();
+				}
+				if (commitInterval > 0 && !closed && !compact) {
+					long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitInterval);
+					long remaining;
+					while (!closed && !compact && (remaining = deadline - System.nanoTime()) > 0) {
+						try {
+							appended.awaitNanos(remaining);
+						} catch (InterruptedException e) {
+							// Only close stops the writer
+						}
+					}
+				}
+				if (closed && !compact && pending.position() == 0) {
+					return;
+				}
+				target = appendedRecords;
+				if (compact) {
+					live = new HashMap<String, Entry>(entries);
+					pending.clear();
+				} else {
+					batch = pending;
+					pending = spare;
+					spare = null;
+				}
+			} finally {
+				lock.unlock();
+			}
+			try {
+				if (live != null) {
+					writeEntries(live);
+				} else {
+					batch.flip();
+					while (batch.hasRemaining()) {
+						logSize += channel.write(batch, logSize);
+					}
+					if (sync) {
+						channel.force(false);
+					}
+				}
+			} catch (IOException e) {
+				lock.lock();
+				try {
+					failure = e;
+					// Hand the buffer back, so that the log can be opened again
+					if (batch != null) {
+						batch.clear();
+						spare = batch;
+					}
+					committed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			lock.lock();
+			try {
+				committedRecords = target;
+				if (live != null) {
+					compact = false;
+				} else {
+					batch.clear();
+					spare = batch;
+				}
+				if (logSize > Math.max(ClientConstants.PERSISTENCE_COMPACT_SIZE,
+						liveBytes * ClientConstants.PERSISTENCE_COMPACT_RATIO)) {
+					compact = true;
+				}
+				committed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Reads the log into the live entries, stopping at the first torn or corrupt record
+	 */
+	private void replay() throws IOException {
+		if (!logFile.exists()) {
+			return;
+		}
+		RandomAccessFile file = new RandomAccessFile(logFile, "r");
+		try {
+			FileChannel in = file.getChannel();
+			ByteBuffer data = ByteBuffer.allocate((int) Math.min(in.size(), Integer.MAX_VALUE));
+			while (data.hasRemaining() && in.read(data) >= 0) {
+				// Keep reading
+			}
+			data.flip();
+			while (data.remaining() >= 4) {
+				int length = data.getInt();
+				if (length < 1 + 2 || length > data.remaining() - 4) {
+					break;
+				}
+				int start = data.position();
+				crc.reset();
+				crc.update(data.array(), start, length);
+				if ((int) crc.getValue() != data.getInt(start + length)) {
+					break;
+				}
+				byte operation = data.get();
+				byte [] key = new byte[data.getShort() & 0xFFFF];
+				data.get(key);
+				String name = new String(key, "UTF-8");
+				if (operation == PUT) {
+					byte [] header = new byte[data.getInt()];
+					data.get(header);
+					byte [] payload = new byte[data.getInt()];
+					data.get(payload);
+					Entry previous = entries.put(name, new Entry(new StoredPersistable(header, payload), 4 + length + 4));
+					liveBytes += 4 + length + 4 - (previous == null ? 0 : previous.recordSize);
+				} else {
+					Entry previous = entries.remove(name);
+					liveBytes -= previous == null ? 0 : previous.recordSize;
+				}
+				data.position(start + length + 4);
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Writes a set of entries to a new log, syncs it and renames it over the current log.  Called on the writer
+	 * thread, or holding the lock while opening.
+	 */
+	private void writeEntries(Map<String, Entry> live) throws IOException {
+		File compacted = new File(logFile.getParentFile(), LOG_NAME + COMPACT_SUFFIX);
+		RandomAccessFile file = new RandomAccessFile(compacted, "rw");
+		long size = 0;
+		try {
+			FileChannel out = file.getChannel();
+			out.truncate(0);
+			ByteBuffer buffer = ByteBuffer.allocate(ClientConstants.PERSISTENCE_BUFFER_SIZE);
+			CRC32 checksum = new CRC32();
+			Iterator<Map.Entry<String, Entry>> iterator = live.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Entry> entry = iterator.next();
+				byte [] key = utf8(entry.getKey());
+				StoredPersistable packet = entry.getValue().packet;
+				int length = 1 + 2 + key.length + PUT_OVERHEAD + packet.getSize();
+				if (buffer.capacity() < 4 + length + 4) {
+					buffer.flip();
+					size += writeFully(out, buffer, size);
+					buffer = ByteBuffer.allocate(4 + length + 4);
+				} else if (buffer.remaining() < 4 + length + 4) {
+					buffer.flip();
+					size += writeFully(out, buffer, size);
+					buffer.clear();
+				}
+				buffer.putInt(length);
+				int start = buffer.position();
+				buffer.put(PUT);
+				buffer.putShort((short) key.length);
+				buffer.put(key);
+				buffer.putInt(packet.getHeaderLength());
+				buffer.put(packet.getHeaderBytes());
+				buffer.putInt(packet.getPayloadLength());
+				buffer.put(packet.getPayloadBytes());
+				checksum.reset();
+				checksum.update(buffer.array(), start, buffer.position() - start);
+				buffer.putInt((int) checksum.getValue());
+			}
+			buffer.flip();
+			size += writeFully(out, buffer, size);
+			out.force(true);
+		} finally {
+			file.close();
+		}
+		closeChannel();
+		if (logFile.exists() && !logFile.delete() || !compacted.renameTo(logFile)) {
+			throw new IOException("Unable to replace " + logFile);
+		}
+		logAccess = new RandomAccessFile(logFile, "rw");
+		channel = logAccess.getChannel();
+		logSize = size;
+	}
+
+	private static long writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+		long written = 0;
+		while (buffer.hasRemaining()) {
+			written += out.write(buffer, position + written);
+		}
+		return written;
+	}
+
+	private void closeChannel() {
+		// Closing the file closes its channel
+		if (logAccess != null) {
+			try {
+				logAccess.close();
+			} catch (IOException e) {
+				// Nothing more can be done with it
+			}
+			logAccess = null;
+			channel = null;
+		}
+	}
+
+	/**
+	 * Returns a directory name made of the letters, digits, dots and dashes of a string
+	 */
+	private static String directoryName(String name) {
+		StringBuilder result = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			result.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+		}
+		return result.toString();
+	}
+
+	private static byte [] utf8(String text) {
+		try {
+			return text.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MqttPersistenceException persistenceException(IOException cause) {
+		return new MqttPersistenceException(cause);
+	}
+}
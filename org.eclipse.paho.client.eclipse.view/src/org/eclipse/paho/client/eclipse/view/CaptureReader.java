@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Reads back a capture written by {@link CaptureWriter}, one record at a time and in the order written.  Each
+ * segment is memory-mapped while it is read.  {@link #seek(long)} uses the segments' time indexes to start reading
+ * near a given time without scanning the capture from the beginning.
+ *
+ * A segment that ends part way through a record, or with a record that fails its checksum (as after a crash), is
+ * read up to the last good record.
+ */
+public class CaptureReader {
+
+	private final File directory;
+	private final String [] segments;
+	private final CRC32 crc = new CRC32();
+	private byte [] scratch = new byte[256];
+
+	// The segment being read and its mapping
+	private int current = -1;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory the directory holding the capture
+	 * @throws IOException if the directory holds no capture
+	 */
+	public CaptureReader(File directory) throws IOException {
+		this.directory = directory;
+		segments = CaptureWriter.segmentNames(directory);
+		if (segments.length == 0) {
+			throw new IOException("No capture in " + directory);
+		}
+		Arrays.sort(segments);
+	}
+
+	/**
+	 * Returns the number of segments in the capture
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Reads the next record
+	 *
+	 * @return true, or false if there are no more records
+	 */
+	public boolean next(CaptureRecord record) throws IOException {
+		while (true) {
+			if (buffer != null && read(record)) {
+				return true;
+			}
+			if (current + 1 >= segments.length) {
+				buffer = null;
+				return false;
+			}
+			open(current + 1);
+		}
+	}
+
+	/**
+	 * Positions the reader so that the next record read is the first one at or after a time
+	 *
+	 * @param time the time to seek to, in nanoseconds since the epoch
+	 */
+	public void seek(long time) throws IOException {
+		// Find the last segment whose first indexed record is no later than the time
+		int target = 0;
+		for (int i = 0; i < segments.length; i++) {
+			long [] entries = readIndex(i);
+			if (entries.length > 0 && entries[0] <= time) {
+				target = i;
+			} else if (entries.length > 0) {
+				break;
+			}
+		}
+		open(target);
+		long [] entries = readIndex(target);
+		int position = CaptureWriter.SEGMENT_HEADER_SIZE;
+		for (int i = 0; i < entries.length; i += 2) {
+			if (entries[i] > time) {
+				break;
+			}
+			position = (int) entries[i + 1];
+		}
+		buffer.position(Math.min(position, buffer.limit()));
+
+		// Scan forward to the first record at or after the time
+		CaptureRecord record = new CaptureRecord();
+		while (true) {
+			int start = buffer != null ? buffer.position() : 0;
+			int segment = current;
+			if (!next(record)) {
+				return;
+			}
+			if (record.time >= time) {
+				if (segment != current) {
+					start = CaptureWriter.SEGMENT_HEADER_SIZE;
+				}
+				buffer.position(start);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Releases the current segment
+	 */
+	public void close() {
+		buffer = null;
+		current = segments.length;
+	}
+
+	/**
+	 * Maps a segment and positions the reader at its first record
+	 */
+	private void open(int segment) throws IOException {
+		current = segment;
+		FileInputStream in = new FileInputStream(new File(directory, segments[segment]));
+		try {
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+		if (buffer.limit() < CaptureWriter.SEGMENT_HEADER_SIZE || buffer.getInt(0) != CaptureWriter.SEGMENT_MAGIC) {
+			throw new IOException(segments[segment] + " is not a capture segment");
+		}
+		if (buffer.getInt(4) != CaptureWriter.VERSION) {
+			throw new IOException(segments[segment] + " has unsupported version " + buffer.getInt(4));
+		}
+		buffer.position(CaptureWriter.SEGMENT_HEADER_SIZE);
+	}
+
+	/**
+	 * Reads the index of a segment as pairs of time and offset.  A missing or damaged index reads as empty.
+	 */
+	private long [] readIndex(int segment) throws IOException {
+		String name = segments[segment];
+		File file = new File(directory, name.substring(0, name.length() - CaptureWriter.SEGMENT_SUFFIX.length()) +
+			CaptureWriter.INDEX_SUFFIX);
+		if (!file.isFile()) {
+			return new long[0];
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer index = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+			while (index.hasRemaining() && channel.read(index) >= 0) {
+				// Keep reading until the buffer is full or the file ends
+			}
+			index.flip();
+			if (index.remaining() < CaptureWriter.INDEX_HEADER_SIZE || index.getInt() != CaptureWriter.INDEX_MAGIC) {
+				return new long[0];
+			}
+			index.position(CaptureWriter.INDEX_HEADER_SIZE);
+			long [] entries = new long[index.remaining() / CaptureWriter.INDEX_ENTRY_SIZE * 2];
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = index.getLong();
+			}
+			return entries;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a record from the current segment
+	 *
+	 * @return true, or false if the segment has no more good records
+	 */
+	private boolean read(CaptureRecord record) {
+		int start = buffer.position();
+		if (buffer.remaining() < 4) {
+			return false;
+		}
+		int length = buffer.getInt(start);
+		if (length < CaptureWriter.RECORD_OVERHEAD - 4 || length > buffer.remaining() - 4) {
+			return false;
+		}
+		int checked = length - 4;
+		if (scratch.length < checked) {
+			scratch = new byte[Math.max(checked, scratch.length * 2)];
+		}
+		buffer.position(start + 4);
+		buffer.get(scratch, 0, checked);
+		int stored = buffer.getInt();
+		crc.reset();
+		crc.update(scratch, 0, checked);
+		if ((int) crc.getValue() != stored) {
+			buffer.position(start);
+			return false;
+		}
+
+		ByteBuffer fields = ByteBuffer.wrap(scratch, 0, checked);
+		record.time = fields.getLong();
+		int flags = fields.get();
+		record.qos = flags & CaptureWriter.QOS_MASK;
+		record.retained = (flags & CaptureWriter.RETAINED) != 0;
+		record.duplicate = (flags & CaptureWriter.DUPLICATE) != 0;
+		record.session = getUtf8(fields);
+		record.topic = getUtf8(fields);
+		record.payload = new byte[fields.getInt()];
+		fields.get(record.payload);
+		return true;
+	}
+
+	private static String getUtf8(ByteBuffer fields) {
+		int length = fields.getShort() & 0xffff;
+		try {
+			String s = new String(fields.array(), fields.position(), length, "UTF-8");
+			fields.position(fields.position() + length);
+			return s;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A message read back from a capture.  A record may be reused for many reads.
+ */
+public class CaptureRecord {
+
+	long time;
+	String session;
+	String topic;
+	int qos;
+	boolean retained;
+	boolean duplicate;
+	byte [] payload;
+
+	/**
+	 * Returns the time the message arrived, in nanoseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public String getSession() {
+		return session;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public int getQos() {
+		return qos;
+	}
+
+	public boolean isRetained() {
+		return retained;
+	}
+
+	public boolean isDuplicate() {
+		return duplicate;
+	}
+
+	public byte [] getPayload() {
+		return payload;
+	}
+}
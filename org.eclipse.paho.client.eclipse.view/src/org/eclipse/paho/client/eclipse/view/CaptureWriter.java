@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Records messages to an append-only binary capture in a directory.  A capture is a series of segment files,
+ * each with a sparse time index beside it.  Callers append records to a pool of in-memory blocks; a writer
+ * thread writes full blocks (and partly full ones every flush interval) with batched channel writes, syncs the
+ * files to disk every sync interval and starts a new segment once the current one reaches the segment size.
+ * Appending only waits on the disk if every block is waiting to be written.
+ *
+ * A segment, capture-NNNNNN.seg, starts with a 24 byte header (magic, version, segment number, creation time in
+ * milliseconds since the epoch, reserved) followed by records:
+ *
+ *   int length (of the rest of the record), long time (nanoseconds since the epoch), byte flags (QoS in bits 0-1,
+ *   retained in bit 2, duplicate in bit 3), short + UTF-8 session name, short + UTF-8 topic, int + payload,
+ *   int CRC-32 of the record from the time to the end of the payload
+ *
+ * The index, capture-NNNNNN.idx, starts with a 16 byte header (magic, version, segment number, reserved)
+ * followed by entries of a long time and a long segment offset, one for the first record of a block at least
+ * every index spacing bytes.  All values are big-endian.  See {@link CaptureReader} for reading captures back.
+ */
+public class CaptureWriter {
+
+	static final int SEGMENT_MAGIC = 0x4D514353;
+	static final int INDEX_MAGIC = 0x4D514349;
+	static final int VERSION = 1;
+	static final int SEGMENT_HEADER_SIZE = 24;
+	static final int INDEX_HEADER_SIZE = 16;
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final String PREFIX = "capture-";
+	static final String SEGMENT_SUFFIX = ".seg";
+	static final String INDEX_SUFFIX = ".idx";
+
+	// Bits of the flags byte
+	static final int QOS_MASK = 0x03;
+	static final int RETAINED = 0x04;
+	static final int DUPLICATE = 0x08;
+
+	// Bytes of a record other than the session name, topic and payload
+	static final int RECORD_OVERHEAD = 4 + 8 + 1 + 2 + 2 + 4 + 4;
+
+	/**
+	 * A buffer of whole records and the time of its first record
+	 */
+	private static class Block {
+		private final ByteBuffer buffer;
+		private final boolean pooled;
+		private long firstTime;
+
+		private Block(int size, boolean pooled) {
+			this.buffer = ByteBuffer.allocate(size);
+			this.pooled = pooled;
+		}
+	}
+
+	private final File directory;
+	private final int blockSize;
+	private final long segmentSize;
+	private final long flushInterval;
+	private final long syncInterval;
+	private final long indexSpacing;
+
+	// Blocks waiting to be written, free blocks and the block being appended to, guarded by the lock.  The writer
+	// thread waits for blocks to be queued and appenders wait for blocks to be freed.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition blockQueued = lock.newCondition();
+	private final Condition blockFreed = lock.newCondition();
+	private final LinkedList<Block> queue = new LinkedList<Block>();
+	private final LinkedList<Block> pool = new LinkedList<Block>();
+	private Block active;
+	private final CRC32 crc = new CRC32();
+	private boolean closed = false;
+	private long records = 0;
+	private volatile IOException failure;
+
+	// Converts System.nanoTime() to nanoseconds since the epoch
+	private final long epochOffset = System.currentTimeMillis() * 1000000L - System.nanoTime();
+
+	// State of the writer thread
+	private final Thread writer;
+	private RandomAccessFile segmentFile;
+	private RandomAccessFile indexFile;
+	private FileChannel segment;
+	private FileChannel index;
+	private int segmentNumber;
+	private long segmentOffset;
+	private long lastIndexed;
+	private long lastSync;
+	private volatile long bytesWritten = 0;
+	private volatile int segments = 0;
+
+	/**
+	 * Constructor.  Starts a capture in a directory with the default sizes and intervals.  If the directory already
+	 * holds a capture, new segments follow the existing ones.
+	 */
+	public CaptureWriter(File directory) throws IOException {
+		this(directory, ClientConstants.CAPTURE_BLOCK_SIZE, ClientConstants.CAPTURE_BLOCKS,
+			ClientConstants.CAPTURE_SEGMENT_SIZE, ClientConstants.CAPTURE_FLUSH_INTERVAL,
+			ClientConstants.CAPTURE_SYNC_INTERVAL, ClientConstants.CAPTURE_INDEX_SPACING);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory the directory to write the capture to, created if it does not exist
+	 * @param blockSize the size of each in-memory block of records, in bytes
+	 * @param blocks the number of blocks
+	 * @param segmentSize the size at which a new segment is started, in bytes
+	 * @param flushInterval the maximum number of milliseconds a record waits before being written
+	 * @param syncInterval the number of milliseconds between syncs of the files to disk
+	 * @param indexSpacing the minimum number of bytes between index entries
+	 */
+	public CaptureWriter(File directory, int blockSize, int blocks, long segmentSize, long flushInterval,
+			long syncInterval, long indexSpacing) throws IOException {
+		this.directory = directory;
+		this.blockSize = blockSize;
+		this.segmentSize = segmentSize;
+		this.flushInterval = flushInterval;
+		this.syncInterval = syncInterval;
+		this.indexSpacing = indexSpacing;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		for (int i = 0; i < Math.max(2, blocks); i++) {
+			pool.add(new Block(blockSize, true));
+		}
+		active = pool.removeFirst();
+		segmentNumber = lastSegmentNumber(directory);
+		openSegment();
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "MQTT Capture Writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Appends a message to the capture, timestamped now
+	 *
+	 * @throws IOException if the capture is closed or writing it has failed
+	 */
+	public void append(String session, String topic, int qos, boolean retained, boolean duplicate,
+			byte [] payload) throws IOException {
+		append(-1, session, topic, qos, retained, duplicate, payload);
+	}
+
+	/**
+	 * Appends a message to the capture with the given time, e.g. when copying messages from elsewhere.  Times must
+	 * not go backwards through the capture, or seeking in it will be inaccurate.
+	 *
+	 * @param time the message's time in nanoseconds since the epoch, or -1 for now
+	 * @throws IOException if the capture is closed or writing it has failed
+	 */
+	public void append(long time, String session, String topic, int qos, boolean retained, boolean duplicate,
+			byte [] payload) throws IOException {
+		int sessionLength = utf8Length(session);
+		int topicLength = utf8Length(topic);
+		int size = RECORD_OVERHEAD + sessionLength + topicLength + payload.length;
+		lock.lock();
+		try {
+			checkOpen();
+			Block block;
+			if (size > blockSize) {
+				// A record larger than a block gets a block of its own, after the records already appended
+				makeRoom(blockSize);
+				block = new Block(size, false);
+				queue.add(block);
+			} else {
+				makeRoom(size);
+				block = active;
+			}
+			// Taken after any wait for room, so times increase through the capture
+			if (time < 0) {
+				time = epochOffset + System.nanoTime();
+			}
+			ByteBuffer buffer = block.buffer;
+			if (buffer.position() == 0) {
+				block.firstTime = time;
+			}
+			int start = buffer.position();
+			buffer.putInt(size - 4);
+			buffer.putLong(time);
+			buffer.put((byte) ((qos & QOS_MASK) | (retained ? RETAINED : 0) | (duplicate ? DUPLICATE : 0)));
+			buffer.putShort((short) sessionLength);
+			putUtf8(buffer, session);
+			buffer.putShort((short) topicLength);
+			putUtf8(buffer, topic);
+			buffer.putInt(payload.length);
+			buffer.put(payload);
+			crc.reset();
+			crc.update(buffer.array(), start + 4, size - 8);
+			buffer.putInt((int) crc.getValue());
+			records++;
+			if (!queue.isEmpty()) {
+				blockQueued.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes out every record appended, syncs the capture to disk and stops the writer thread
+	 *
+	 * @throws IOException if writing the capture failed
+	 */
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (!closed) {
+				closed = true;
+				if (active.buffer.position() > 0) {
+					queue.add(active);
+				}
+				blockQueued.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing capture");
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of records appended
+	 */
+	public long getRecordCount() {
+		lock.lock();
+		try {
+			return records;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written to segments
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Returns the number of segments written
+	 */
+	public int getSegmentCount() {
+		return segments;
+	}
+
+	/**
+	 * Returns the error that stopped the capture, or null if there has been none
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	private void checkOpen() throws IOException {
+		if (failure != null) {
+			throw new IOException("Capture failed: " + failure.getMessage());
+		}
+		if (closed) {
+			throw new IOException("Capture is closed");
+		}
+	}
+
+	/**
+	 * Queues the block being appended to, and replaces it with a free one, until it has room for a record.  Waits
+	 * for the writer thread to free a block if there is none.  Called holding the lock.
+	 */
+	private void makeRoom(int size) throws IOException {
+		while (active.buffer.remaining() < size) {
+			if (pool.isEmpty()) {
+				blockQueued.signal();
+				try {
+					blockFreed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to capture");
+				}
+				checkOpen();
+			} else {
+				queue.add(active);
+				active = pool.removeFirst();
+			}
+		}
+	}
+
+	/**
+	 * The writer thread: writes queued blocks in order, and the partly full block once it has waited a flush
+	 * interval, until the capture is closed
+	 */
+	private void write() {
+		List<Block> blocks = new ArrayList<Block>();
+		try {
+			boolean closing = false;
+			while (!closing) {
+				lock.lock();
+				try {
+					if (queue.isEmpty() && !closed) {
+						blockQueued.await(flushInterval, TimeUnit.MILLISECONDS);
+					}
+					if (queue.isEmpty() && active.buffer.position() > 0 && !pool.isEmpty() && !closed) {
+						queue.add(active);
+						active = pool.removeFirst();
+					}
+					blocks.addAll(queue);
+					queue.clear();
+					closing = closed;
+				} finally {
+					lock.unlock();
+				}
+				for (int i = 0; i < blocks.size(); i++) {
+					writeBlock(blocks.get(i));
+				}
+				long now = System.currentTimeMillis();
+				if (closing || (!blocks.isEmpty() && now - lastSync >= syncInterval)) {
+					sync();
+				}
+				lock.lock();
+				try {
+					for (int i = 0; i < blocks.size(); i++) {
+						Block block = blocks.get(i);
+						if (block.pooled) {
+							block.buffer.clear();
+							pool.add(block);
+						}
+					}
+					blockFreed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				blocks.clear();
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Capture writer interrupted");
+		} finally {
+			closeSegment();
+			lock.lock();
+			try {
+				blockFreed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes a block to the current segment, starting a new segment first if the current one is full
+	 */
+	private void writeBlock(Block block) throws IOException {
+		ByteBuffer buffer = block.buffer;
+		if (buffer.position() == 0) {
+			return;
+		}
+		if (segmentOffset >= segmentSize) {
+			sync();
+			closeSegment();
+			openSegment();
+		}
+		if (lastIndexed < 0 || segmentOffset - lastIndexed >= indexSpacing) {
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+			entry.putLong(block.firstTime).putLong(segmentOffset).flip();
+			writeFully(index, entry);
+			lastIndexed = segmentOffset;
+		}
+		buffer.flip();
+		int length = buffer.remaining();
+		writeFully(segment, buffer);
+		segmentOffset += length;
+		bytesWritten += length;
+	}
+
+	private void sync() throws IOException {
+		segment.force(false);
+		index.force(false);
+		lastSync = System.currentTimeMillis();
+	}
+
+	private void openSegment() throws IOException {
+		segmentNumber++;
+		String name = PREFIX + pad(segmentNumber);
+		try {
+			segmentFile = new RandomAccessFile(new File(directory, name + SEGMENT_SUFFIX), "rw");
+			indexFile = new RandomAccessFile(new File(directory, name + INDEX_SUFFIX), "rw");
+			segment = segmentFile.getChannel();
+			index = indexFile.getChannel();
+			segment.truncate(0);
+			index.truncate(0);
+
+			ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+			header.putInt(SEGMENT_MAGIC).putInt(VERSION).putInt(segmentNumber).putLong(System.currentTimeMillis())
+				.putInt(0).flip();
+			writeFully(segment, header);
+			header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+			header.putInt(INDEX_MAGIC).putInt(VERSION).putInt(segmentNumber).putInt(0).flip();
+			writeFully(index, header);
+		} catch (IOException e) {
+			// Close whichever of the files was opened
+			closeSegment();
+			throw e;
+		}
+
+		segmentOffset = SEGMENT_HEADER_SIZE;
+		lastIndexed = -1;
+		bytesWritten += SEGMENT_HEADER_SIZE;
+		segments++;
+	}
+
+	private void closeSegment() {
+		// Closing a file closes its channel
+		try {
+			if (segmentFile != null) {
+				segmentFile.close();
+			}
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+		try {
+			if (indexFile != null) {
+				indexFile.close();
+			}
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+		segmentFile = null;
+		indexFile = null;
+		segment = null;
+		index = null;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Returns the highest segment number in a directory, or 0 if it holds no segments
+	 */
+	private static int lastSegmentNumber(File directory) {
+		String [] names = segmentNames(directory);
+		int last = 0;
+		for (int i = 0; i < names.length; i++) {
+			try {
+				last = Math.max(last, Integer.parseInt(names[i].substring(PREFIX.length(),
+					names[i].length() - SEGMENT_SUFFIX.length())));
+			} catch (NumberFormatException e) {
+				// Not one of ours
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the names of the segment files in a directory
+	 */
+	static String [] segmentNames(File directory) {
+		String [] names = directory.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		return names != null ? names : new String[0];
+	}
+
+	private static String pad(int number) {
+		String digits = Integer.toString(number);
+		return "000000".substring(Math.min(6, digits.length())) + digits;
+	}
+
+	/**
+	 * Returns the number of bytes a string takes in UTF-8
+	 */
+	static int utf8Length(String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Encodes a string as UTF-8 into a buffer without creating a byte array
+	 */
+	private static void putUtf8(ByteBuffer buffer, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				buffer.put((byte) (0xf0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+}
@@ -13,10 +13,97 @@
 package org.eclipse.paho.client.eclipse.view;
 
 /**
- * Constants for widget sizing defaults
+ * Constants for widget sizing and log defaults
  */
 public class ClientConstants {
 
 	protected static final int BUTTON_WIDTH = 120;
 	protected static final int BUTTON_HEIGHT = 25;
+
+	// Milliseconds to wait before flushing newly posted log entries to the UI
+	protected static final int LOG_FLUSH_INTERVAL = 50;
+	// Maximum number of log entries written to the UI per flush
+	protected static final int LOG_MAX_BATCH_SIZE = 500;
+	// Maximum number of log entries waiting to be written to the UI; entries posted beyond this are dropped
+	protected static final int LOG_QUEUE_CAPACITY = 100000;
+	// Maximum number of records held by the message log
+	protected static final int LOG_MAX_RECORDS = 100000;
+	// Maximum number of bytes of records held by the message log
+	protected static final long LOG_MAX_BYTES = 32L * 1024 * 1024;
+	// Maximum number of payload bytes shown in the log for a published message or file
+	protected static final int LOG_PREVIEW_LENGTH = 64;
+	// Format of the timestamps in the message log
+	protected static final String LOG_DATE_PATTERN = "yyyy/MM/dd HH:mm:ss.SSS";
+
+	// Default number of bytes of an arrived message's payload shown in its log row
+	protected static final int PAYLOAD_PREVIEW_BYTES = 256;
+
+	// Maximum number of arrived messages held by the message store
+	protected static final int STORE_MAX_MESSAGES = 1024 * 1024;
+	// Number of bytes of arrived message payloads held by the message store
+	protected static final int STORE_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+	// Maximum number of topics counted separately by a session's statistics
+	protected static final int STATS_MAX_TOPICS = 10000;
+	// Milliseconds between refreshes of the statistics table
+	protected static final int STATS_REFRESH_INTERVAL = 1000;
+	// Milliseconds between probes of how late the UI event loop runs timers
+	protected static final int LOOP_PROBE_INTERVAL = 100;
+
+	// Default maximum number of pipelined publishes in flight on a session
+	protected static final int PUBLISH_WINDOW_SIZE = 10;
+
+	// Milliseconds a batch publish waits for its publishes to be acknowledged
+	protected static final int PUBLISH_BATCH_TIMEOUT = 30000;
+
+	// Milliseconds a publish may go unacknowledged before it is counted as timed out
+	protected static final int DELIVERY_TIMEOUT = 30000;
+
+	// Milliseconds between checks for publishes that have timed out
+	protected static final int DELIVERY_SWEEP_INTERVAL = 1000;
+
+	// Upper bounds in milliseconds of the ranges of the acknowledgement latency histogram, and its bar width
+	protected static final long [] DELIVERY_HISTOGRAM_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+	protected static final int DELIVERY_HISTOGRAM_WIDTH = 40;
+
+	// Maximum number of topic filters sent in one SUBSCRIBE or UNSUBSCRIBE packet
+	protected static final int SUBSCRIBE_BATCH_SIZE = 1000;
+
+	// Milliseconds after the last change to the log filter before the log is filtered again
+	protected static final int FILTER_DELAY = 300;
+
+	// Size in characters of the buffer exports are written through
+	protected static final int EXPORT_BUFFER_SIZE = 65536;
+
+	// Milliseconds between progress reports of an export
+	protected static final int EXPORT_PROGRESS_INTERVAL = 1000;
+
+	// Size of each in-memory block of captured records, and the number of blocks
+	protected static final int CAPTURE_BLOCK_SIZE = 1024 * 1024;
+	protected static final int CAPTURE_BLOCKS = 8;
+	// Size at which a capture starts a new segment file
+	protected static final long CAPTURE_SEGMENT_SIZE = 256L * 1024 * 1024;
+	// Maximum milliseconds a captured record waits before being written
+	protected static final long CAPTURE_FLUSH_INTERVAL = 200;
+	// Milliseconds between syncs of a capture to disk
+	protected static final long CAPTURE_SYNC_INTERVAL = 1000;
+	// Minimum number of bytes between entries of a capture segment's time index
+	protected static final long CAPTURE_INDEX_SPACING = 64 * 1024;
+
+	// Persistence backend of new profiles, and milliseconds the append log waits for more changes before each commit
+	protected static final PersistenceType PERSISTENCE_TYPE = PersistenceType.FILE;
+	protected static final int PERSISTENCE_COMMIT_INTERVAL = 0;
+	// Initial size of the append log's buffers, and the buffered bytes at which unsynced changes wait for the disk
+	protected static final int PERSISTENCE_BUFFER_SIZE = 64 * 1024;
+	protected static final int PERSISTENCE_MAX_PENDING = 4 * 1024 * 1024;
+	// Size below which the append log is never compacted, and the multiple of its live entries it may grow to
+	protected static final long PERSISTENCE_COMPACT_SIZE = 1024 * 1024;
+	protected static final int PERSISTENCE_COMPACT_RATIO = 4;
+
+	// Base delay, in milliseconds, before the first reconnect attempt
+	protected static final long RECONNECT_INITIAL_DELAY = 1000;
+	// Cap, in milliseconds, on the delay between reconnect attempts
+	protected static final long RECONNECT_MAX_DELAY = 60000;
+	// Number of reconnect attempts to make before giving up (0 to keep trying forever)
+	protected static final int RECONNECT_MAX_ATTEMPTS = 10;
 }
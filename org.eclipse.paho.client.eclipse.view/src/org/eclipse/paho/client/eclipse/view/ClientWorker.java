@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs blocking client operations on a dedicated background thread so that they never block the UI thread.
+ * Operations run one at a time in the order they were submitted, so e.g. a subscribe submitted after a connect
+ * always runs after the connect has completed.
+ */
+public class ClientWorker {
+
+	private final ExecutorService executor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param threadName the name of the worker thread
+	 */
+	public ClientWorker(final String threadName) {
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submits an operation to run on the worker thread
+	 *
+	 * @param name a short name for the operation, e.g. CONNECT
+	 * @param operation the operation to run
+	 * @return a handle to the operation
+	 */
+	public <V> OperationHandle<V> submit(String name, Callable<V> operation) {
+		OperationHandle<V> handle = new OperationHandle<V>(name, operation);
+		try {
+			executor.execute(handle);
+		} catch (RejectedExecutionException e) {
+			handle.reject(e);
+		}
+		return handle;
+	}
+
+	/**
+	 * Stops the worker once the operations already submitted have run.  Later submissions fail immediately.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Stops the worker now: the running operation is interrupted and those not yet started are cancelled.  Later
+	 * submissions fail immediately.
+	 */
+	public void shutdownNow() {
+		List<Runnable> pending = executor.shutdownNow();
+		for (int i = 0; i < pending.size(); i++) {
+			((OperationHandle<?>) pending.get(i)).cancel(false);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * The parameters used to connect a session to a broker.  A profile is filled in on the UI thread and must not
+ * be modified once it has been passed to a session.
+ */
+public class ConnectionProfile {
+
+	// MQTT connection parameters with defaults
+	private String name 				= "";
+	private String address 				= "";
+	private int port 					= 1883;
+	private String clientId 			= "";
+	private short keepAlive 			= 30;
+	private boolean cleanStart 			= true;
+	private String username 			= "";
+	private String password 			= "";
+	private boolean useWill 			= false;
+	private String willTopic 			= "";
+	private String willMessage 			= "";
+	private int willQos 				= 0;
+	private boolean willRetain 			= false;
+	private int reconnectAttempts		= ClientConstants.RECONNECT_MAX_ATTEMPTS;
+
+	// Client persistence parameters with defaults; an empty data directory means the working directory
+	private PersistenceType persistence	= ClientConstants.PERSISTENCE_TYPE;
+	private String dataDirectory		= "";
+	private int commitInterval			= ClientConstants.PERSISTENCE_COMMIT_INTERVAL;
+	private boolean syncPersistence		= true;
+
+	/**
+	 * Returns the URI of the broker, e.g. tcp://localhost:1883
+	 */
+	public String getServerURI() {
+		return "tcp://" + address + ":" + port;
+	}
+
+	/**
+	 * Returns the name the profile was saved under, which is also the name of its session
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public void setAddress(String address) {
+		this.address = address;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	public short getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(short keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public boolean isCleanStart() {
+		return cleanStart;
+	}
+
+	public void setCleanStart(boolean cleanStart) {
+		this.cleanStart = cleanStart;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public boolean isUseWill() {
+		return useWill;
+	}
+
+	public void setUseWill(boolean useWill) {
+		this.useWill = useWill;
+	}
+
+	public String getWillTopic() {
+		return willTopic;
+	}
+
+	public void setWillTopic(String willTopic) {
+		this.willTopic = willTopic;
+	}
+
+	public String getWillMessage() {
+		return willMessage;
+	}
+
+	public void setWillMessage(String willMessage) {
+		this.willMessage = willMessage;
+	}
+
+	public int getWillQos() {
+		return willQos;
+	}
+
+	public void setWillQos(int willQos) {
+		this.willQos = willQos;
+	}
+
+	public boolean isWillRetain() {
+		return willRetain;
+	}
+
+	public void setWillRetain(boolean willRetain) {
+		this.willRetain = willRetain;
+	}
+
+	public int getReconnectAttempts() {
+		return reconnectAttempts;
+	}
+
+	public void setReconnectAttempts(int reconnectAttempts) {
+		this.reconnectAttempts = reconnectAttempts;
+	}
+
+	public PersistenceType getPersistence() {
+		return persistence;
+	}
+
+	public void setPersistence(PersistenceType persistence) {
+		this.persistence = persistence;
+	}
+
+	public String getDataDirectory() {
+		return dataDirectory;
+	}
+
+	public void setDataDirectory(String dataDirectory) {
+		this.dataDirectory = dataDirectory;
+	}
+
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+
+	public boolean isSyncPersistence() {
+		return syncPersistence;
+	}
+
+	public void setSyncPersistence(boolean syncPersistence) {
+		this.syncPersistence = syncPersistence;
+	}
+
+	/**
+	 * Returns whether another profile creates the same persistence backend as this one
+	 */
+	public boolean hasSamePersistence(ConnectionProfile other) {
+		return persistence == other.persistence && dataDirectory.equals(other.dataDirectory) &&
+			commitInterval == other.commitInterval && syncPersistence == other.syncPersistence;
+	}
+}
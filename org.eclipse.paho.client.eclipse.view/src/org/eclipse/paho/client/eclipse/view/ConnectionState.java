@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * The state of a client's connection to its broker
+ */
+public enum ConnectionState {
+
+	// Not connected, and not trying to connect
+	DISCONNECTED,
+
+	// A connection requested by the user is in progress
+	CONNECTING,
+
+	// Connected to the broker
+	CONNECTED,
+
+	// The connection was lost and the reconnect scheduler is trying to restore it
+	RECONNECTING
+}
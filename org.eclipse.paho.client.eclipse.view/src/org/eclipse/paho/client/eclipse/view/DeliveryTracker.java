@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+
+/**
+ * Tracks the publishes of a session from send to deliveryComplete by their delivery tokens.  Each completion
+ * records its acknowledgement latency in a histogram for its QoS.  Publishes not acknowledged within a timeout
+ * are expired and counted as timed out, so a broker that has stalled (e.g. on persistence) shows up as a growing
+ * outstanding count, a rising oldest age and timeouts rather than as silence.
+ */
+public class DeliveryTracker {
+
+	/**
+	 * A publish awaiting its deliveryComplete
+	 */
+	public static class Delivery {
+
+		private final String topic;
+		private final int qos;
+		private final long sendTime;
+		private final boolean logged;
+
+		private Delivery(String topic, int qos, long sendTime, boolean logged) {
+			this.topic = topic;
+			this.qos = qos;
+			this.sendTime = sendTime;
+			this.logged = logged;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		public int getQos() {
+			return qos;
+		}
+
+		/**
+		 * Returns when the publish was sent, as System.nanoTime()
+		 */
+		public long getSendTime() {
+			return sendTime;
+		}
+
+		/**
+		 * Returns whether the publish was logged when sent, and so its completion should be logged too
+		 */
+		public boolean isLogged() {
+			return logged;
+		}
+	}
+
+	private final ConcurrentMap<MqttDeliveryToken, Delivery> pending = new ConcurrentHashMap<MqttDeliveryToken, Delivery>();
+
+	// Counts and acknowledgement latencies per QoS
+	private final AtomicLongArray sent = new AtomicLongArray(3);
+	private final AtomicLongArray completed = new AtomicLongArray(3);
+	private final AtomicLongArray timedOut = new AtomicLongArray(3);
+	private final AtomicLongArray outstanding = new AtomicLongArray(3);
+	private final LatencyHistogram [] latency = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+
+	/**
+	 * Starts tracking a publish that has just been sent
+	 *
+	 * @param logged whether the publish was logged, so its completion should be logged too
+	 */
+	public void sent(MqttDeliveryToken token, String topic, int qos, boolean logged) {
+		if (qos < 0 || qos > 2) {
+			return;
+		}
+		sent.incrementAndGet(qos);
+		outstanding.incrementAndGet(qos);
+		pending.put(token, new Delivery(topic, qos, System.nanoTime(), logged));
+		// The token is marked complete before its deliveryComplete is called, so a completion that came before the
+		// publish was tracked is caught here
+		if (token.isComplete()) {
+			completed(token);
+		}
+	}
+
+	/**
+	 * Records the completion of a tracked publish
+	 *
+	 * @return the publish, or null if it was not tracked, had already completed or has timed out
+	 */
+	public Delivery completed(MqttDeliveryToken token) {
+		Delivery delivery = pending.remove(token);
+		if (delivery == null) {
+			return null;
+		}
+		latency[delivery.qos].record(System.nanoTime() - delivery.sendTime);
+		completed.incrementAndGet(delivery.qos);
+		outstanding.decrementAndGet(delivery.qos);
+		return delivery;
+	}
+
+	/**
+	 * Stops tracking the publishes sent more than a timeout ago and counts them as timed out
+	 *
+	 * @param timeout the timeout in nanoseconds
+	 * @return the oldest publish expired, or null if none were
+	 */
+	public Delivery expire(long timeout) {
+		long now = System.nanoTime();
+		Delivery oldest = null;
+		for (Iterator<Map.Entry<MqttDeliveryToken, Delivery>> i = pending.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<MqttDeliveryToken, Delivery> entry = i.next();
+			Delivery delivery = entry.getValue();
+			if (now - delivery.sendTime > timeout && pending.remove(entry.getKey(), delivery)) {
+				timedOut.incrementAndGet(delivery.qos);
+				outstanding.decrementAndGet(delivery.qos);
+				if (oldest == null || delivery.sendTime - oldest.sendTime < 0) {
+					oldest = delivery;
+				}
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Returns how long the oldest outstanding publish has been awaiting acknowledgement, in nanoseconds, or 0 if
+	 * none are
+	 */
+	public long getOldestAge() {
+		long now = System.nanoTime();
+		long oldest = 0;
+		for (Iterator<Delivery> i = pending.values().iterator(); i.hasNext();) {
+			oldest = Math.max(oldest, now - i.next().sendTime);
+		}
+		return oldest;
+	}
+
+	public long getSent(int qos) {
+		return sent.get(qos);
+	}
+
+	public long getCompleted(int qos) {
+		return completed.get(qos);
+	}
+
+	public long getTimedOut(int qos) {
+		return timedOut.get(qos);
+	}
+
+	/**
+	 * Returns the number of publishes at a QoS awaiting acknowledgement
+	 */
+	public long getOutstanding(int qos) {
+		return outstanding.get(qos);
+	}
+
+	/**
+	 * Returns the acknowledgement latencies of the publishes at a QoS
+	 */
+	public LatencyHistogram getLatency(int qos) {
+		return latency[qos];
+	}
+
+	/**
+	 * Clears the counts and latencies.  Publishes still outstanding stay tracked.
+	 */
+	public void reset() {
+		for (int i = 0; i < 3; i++) {
+			sent.set(i, 0);
+			completed.set(i, 0);
+			timedOut.set(i, 0);
+			latency[i].reset();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Runs the flushes of a {@link LogPipeline} on the UI thread of a display
+ */
+public class DisplayScheduler implements LogPipeline.Scheduler {
+
+	private final Display display;
+
+	public DisplayScheduler(Display display) {
+		this.display = display;
+	}
+
+	/**
+	 * Arms a display timer.  Off the UI thread the timer is armed by a posted task, since timerExec must be
+	 * called on the UI thread.
+	 */
+	public void schedule(final int delay, final Runnable task) {
+		if (Display.getCurrent() == display) {
+			display.timerExec(delay, task);
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			public void run() {
+				display.timerExec(delay, task);
+			}
+		});
+	}
+
+	public void execute(Runnable task) {
+		display.asyncExec(task);
+	}
+
+	public boolean isDisposed() {
+		return display.isDisposed();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Publishes files without reading them onto the heap in one piece.  Files are read through a memory-mapped
+ * channel a window at a time.  A file is either published as one message or, if a chunk size is set, split into
+ * chunk messages that each start with an 8 byte header: the chunk's sequence number (from 0) and the total number
+ * of chunks, as big-endian ints.  Chunks are published through the session's publish window, so only the chunks
+ * in flight are held on the heap.
+ *
+ * Publishing a directory publishes each file in it on the topic followed by "/" and the file name.  The log shows
+ * each file's size, CRC-32 and a short preview of its contents, never the whole payload.
+ */
+public class FilePublisher {
+
+	// Largest payload an MQTT message can carry, less room for the topic and packet id
+	private static final long MAX_PAYLOAD = 268435455L - 65535 - 4;
+
+	// Size of the chunk header: sequence number and total, both ints
+	static final int CHUNK_HEADER_SIZE = 8;
+
+	// Largest region of a file mapped at once
+	private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+	private final Session session;
+	private final String topic;
+	private final int qos;
+	private final boolean retained;
+	private final int chunkSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param session the session to publish on
+	 * @param topic the topic to publish on
+	 * @param qos the QoS to publish with
+	 * @param retained whether to retain the messages
+	 * @param chunkSize the number of file bytes per chunk message, or 0 to publish each file as one message
+	 */
+	public FilePublisher(Session session, String topic, int qos, boolean retained, int chunkSize) {
+		this.session = session;
+		this.topic = topic;
+		this.qos = qos;
+		this.retained = retained;
+		this.chunkSize = Math.max(0, chunkSize);
+	}
+
+	/**
+	 * Publishes a file, or every file in a directory, in the background
+	 */
+	public OperationHandle<Void> start(final File file) {
+		ClientWorker worker = new ClientWorker("MQTT File Publisher [" + session.getName() + "]");
+		OperationHandle<Void> handle = worker.submit("PUBLISH FILE", new Callable<Void>() {
+			public Void call() throws IOException, MqttException, InterruptedException {
+				if (file.isDirectory()) {
+					publishDirectory(file);
+				} else {
+					publishFile(file, topic);
+				}
+				return null;
+			}
+		});
+		handle.addListener(new OperationHandle.Listener() {
+			public void operationComplete(OperationHandle<?> completed) {
+				Throwable error = completed.getError();
+				if (error != null) {
+					session.log(completed.getName() + " FAILED", error.getMessage() != null ? error.getMessage() :
+						error.toString());
+				}
+			}
+		});
+		worker.shutdown();
+		return handle;
+	}
+
+	/**
+	 * Publishes every file in a directory, in name order
+	 */
+	private void publishDirectory(File directory) throws IOException, MqttException, InterruptedException {
+		File [] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Could not list " + directory);
+		}
+		Arrays.sort(files);
+		int published = 0;
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isFile()) {
+				publishFile(files[i], topic + "/" + files[i].getName());
+				published++;
+			}
+		}
+		session.log("PUBLISH DIRECTORY", "Directory: \"" + directory + "\"  Files: " + published);
+	}
+
+	/**
+	 * Publishes one file, whole or in chunks
+	 */
+	private void publishFile(File file, String fileTopic) throws IOException, MqttException, InterruptedException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			CRC32 crc = new CRC32();
+			byte [] preview;
+			long messages;
+			if (chunkSize == 0) {
+				byte [] payload = read(channel, file);
+				crc.update(payload, 0, payload.length);
+				session.sendWindowed(fileTopic, payload, qos, retained, -1);
+				preview = payload;
+				messages = 1;
+			} else {
+				long total = (size + chunkSize - 1) / chunkSize;
+				if (total > Integer.MAX_VALUE) {
+					throw new IOException("Chunk size " + chunkSize + " is too small for " + file);
+				}
+				preview = null;
+				messages = Math.max(total, 1);
+				long window = Math.max(1, MAP_WINDOW / chunkSize) * chunkSize;
+				int sequence = 0;
+				for (long windowStart = 0; windowStart < size || sequence == 0; windowStart += window) {
+					long windowSize = Math.min(window, size - windowStart);
+					MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+					while (mapped.hasRemaining() || (size == 0 && sequence == 0)) {
+						byte [] payload = encodeChunk(mapped, chunkSize, sequence, (int) messages);
+						int length = payload.length - CHUNK_HEADER_SIZE;
+						crc.update(payload, CHUNK_HEADER_SIZE, length);
+						session.sendWindowed(fileTopic, payload, qos, retained, -1);
+						if (preview == null) {
+							preview = Arrays.copyOfRange(payload, CHUNK_HEADER_SIZE, CHUNK_HEADER_SIZE +
+								Math.min(length, ClientConstants.LOG_PREVIEW_LENGTH));
+						}
+						sequence++;
+					}
+				}
+			}
+			session.log("PUBLISH FILE", "Topic: \"" + fileTopic + "\"  File: \"" + file.getName() + "\"  Size: " + size +
+				" bytes  Messages: " + messages + "  CRC32: " + Long.toHexString(crc.getValue()) + "  Preview: \"" +
+				Session.preview(preview) + "\"");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a whole file through a mapped channel
+	 *
+	 * @throws IOException if the file is too large to publish as one message
+	 */
+	private static byte [] read(FileChannel channel, File file) throws IOException {
+		long size = channel.size();
+		if (size > MAX_PAYLOAD) {
+			throw new IOException(file + " is " + size + " bytes, too large for one message; set a chunk size");
+		}
+		byte [] bytes = new byte[(int) size];
+		int offset = 0;
+		while (offset < bytes.length) {
+			long windowSize = Math.min(MAP_WINDOW, bytes.length - offset);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+			mapped.get(bytes, offset, (int) windowSize);
+			offset += windowSize;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the bytes of a file that is small enough to publish as one message
+	 *
+	 * @throws IOException if the file cannot be read or is too large to publish as one message
+	 */
+	public static byte [] readFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return read(in.getChannel(), file);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Encodes the next chunk of a file as a message payload: the chunk header followed by up to a chunk size of
+	 * bytes taken from the source
+	 */
+	static byte [] encodeChunk(ByteBuffer source, int chunkSize, int sequence, int total) {
+		int length = Math.min(chunkSize, source.remaining());
+		byte [] payload = new byte[CHUNK_HEADER_SIZE + length];
+		putInt(payload, 0, sequence);
+		putInt(payload, 4, total);
+		source.get(payload, CHUNK_HEADER_SIZE, length);
+		return payload;
+	}
+
+	private static void putInt(byte [] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+}
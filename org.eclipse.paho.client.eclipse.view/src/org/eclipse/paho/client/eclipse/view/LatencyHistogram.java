@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds.  Values are grouped into buckets by their highest set bit
+ * and the four bits below it, so every percentile is accurate to within about 6% while the histogram stays a
+ * fixed 960 counters regardless of how many values are recorded.  Recording takes no locks.
+ *
+ * Besides the totals since the histogram was created or reset, the histogram can take interval snapshots that
+ * cover only the values recorded since the previous interval snapshot.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+	/**
+	 * An immutable copy of the histogram's counts at one moment, or of the counts recorded during an interval
+	 */
+	public static class Snapshot {
+
+		private final long [] counts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		Snapshot(long [] counts, long total, long max) {
+			this.counts = counts;
+			long sum = 0;
+			for (int i = 0; i < counts.length; i++) {
+				sum += counts[i];
+			}
+			this.count = sum;
+			this.total = total;
+			this.max = max;
+		}
+
+		/**
+		 * Returns the number of values recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the largest value recorded, in nanoseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the mean of the values recorded, in nanoseconds
+		 */
+		public long getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+
+		/**
+		 * Returns the value, in nanoseconds, below which the given percentage of recorded values fall
+		 *
+		 * @param percentile the percentile, e.g. 99.9
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target) {
+					return Math.min(upperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Returns the number of values recorded up to a value in nanoseconds, including the whole of the bucket that
+		 * holds it
+		 */
+		public long getCountAtOrBelow(long value) {
+			int last = index(Math.max(0, value));
+			long seen = 0;
+			for (int i = 0; i <= last && i < counts.length; i++) {
+				seen += counts[i];
+			}
+			return seen;
+		}
+
+		/**
+		 * Returns a one-line summary of the snapshot in milliseconds
+		 */
+		public String toString() {
+			return "Count: " + count + "  p50: " + millis(getPercentile(50)) + "  p99: " + millis(getPercentile(99)) +
+				"  p99.9: " + millis(getPercentile(99.9)) + "  Max: " + millis(max) + " ms";
+		}
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	// Largest value since the last interval snapshot, and the totals as of that snapshot
+	private final AtomicLong intervalMax = new AtomicLong();
+	private long [] intervalCounts = new long[BUCKETS];
+	private long intervalTotal = 0;
+
+	/**
+	 * Records a latency, in nanoseconds
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(index(value));
+		total.addAndGet(value);
+		updateMax(max, value);
+		updateMax(intervalMax, value);
+	}
+
+	/**
+	 * Returns the number of values recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the largest value recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded, in nanoseconds
+	 */
+	public long getMean() {
+		return getSnapshot().getMean();
+	}
+
+	/**
+	 * Returns the value, in nanoseconds, below which the given percentage of recorded values fall
+	 *
+	 * @param percentile the percentile, e.g. 99.9
+	 */
+	public long getPercentile(double percentile) {
+		return getSnapshot().getPercentile(percentile);
+	}
+
+	/**
+	 * Returns a snapshot of all values recorded since the histogram was created or reset
+	 */
+	public Snapshot getSnapshot() {
+		long [] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, total.get(), max.get());
+	}
+
+	/**
+	 * Returns a snapshot of the values recorded since the previous interval snapshot, and starts a new interval
+	 */
+	public synchronized Snapshot getIntervalSnapshot() {
+		long [] current = new long[BUCKETS];
+		long [] interval = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			current[i] = counts.get(i);
+			interval[i] = Math.max(0, current[i] - intervalCounts[i]);
+		}
+		long currentTotal = total.get();
+		Snapshot snapshot = new Snapshot(interval, currentTotal - intervalTotal, intervalMax.getAndSet(0));
+		intervalCounts = current;
+		intervalTotal = currentTotal;
+		return snapshot;
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		max.set(0);
+		intervalMax.set(0);
+		intervalCounts = new long[BUCKETS];
+		intervalTotal = 0;
+	}
+
+	/**
+	 * Returns a one-line summary of the histogram in milliseconds
+	 */
+	public String toString() {
+		return getSnapshot().toString();
+	}
+
+	/**
+	 * Formats a value in nanoseconds as milliseconds with three decimal places
+	 */
+	static String millis(long nanos) {
+		long micros = nanos / 1000;
+		String fraction = Long.toString(1000 + micros % 1000).substring(1);
+		return (micros / 1000) + "." + fraction;
+	}
+
+	private static void updateMax(AtomicLong current, long value) {
+		long currentMax = current.get();
+		while (value > currentMax && !current.compareAndSet(currentMax, value)) {
+			currentMax = current.get();
+		}
+	}
+
+	/**
+	 * Returns the bucket that holds a value
+	 */
+	static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int group = msb - SUB_BITS + 1;
+		int sub = (int) (value >>> (msb - SUB_BITS)) - SUB_COUNT;
+		return group * SUB_COUNT + sub;
+	}
+
+	/**
+	 * Returns the largest value held by a bucket
+	 */
+	static long upperBound(int index) {
+		int group = index / SUB_COUNT;
+		int sub = index % SUB_COUNT;
+		if (group == 0) {
+			return sub;
+		}
+		return ((long) (SUB_COUNT + sub + 1) << (group - 1)) - 1;
+	}
+}
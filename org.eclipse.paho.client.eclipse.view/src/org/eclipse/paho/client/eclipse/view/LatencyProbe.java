@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Measures the latency of a broker by publishing timestamped, sequence-numbered messages on a topic that the
+ * session is also subscribed to, and timing each message when it arrives back.  Each QoS level is a separate
+ * stream with its own sequence numbers, so lost, reordered and duplicated messages can be counted per QoS.  A
+ * message arriving more than the window behind the latest cannot be told from a duplicate, so it is counted as
+ * late and stays counted as lost.
+ * Latencies are kept in a histogram per QoS; every second the probe logs the percentiles for the last second,
+ * and when it finishes it logs the percentiles for the whole run.
+ *
+ * A probe payload starts with a 33 byte header: a magic number, the probe's id, the sequence number, the send
+ * time from System.nanoTime() and the QoS.  Any remaining bytes are padding.
+ */
+public class LatencyProbe implements TopicHandler {
+
+	private static final long MAGIC = 0x5061686F50726F62L;
+	private static final int HEADER_SIZE = 33;
+
+	// Number of recent sequence numbers remembered per stream to tell duplicates from reordered messages
+	private static final int WINDOW = 1 << 16;
+
+	// Time to wait for messages still in flight after the last publish
+	private static final long DRAIN_TIME = 2000000000L;
+
+	/**
+	 * The messages sent and received at one QoS level
+	 */
+	private static class Stream {
+
+		final int qos;
+		final LatencyHistogram latency = new LatencyHistogram();
+		volatile long sent = 0;
+
+		// Receive state, guarded by this
+		private final boolean [] window = new boolean[WINDOW];
+		private long highest = 0;
+		private long received = 0;
+		private long missing = 0;
+		private long reordered = 0;
+		private long duplicates = 0;
+		private long late = 0;
+
+		Stream(int qos) {
+			this.qos = qos;
+		}
+
+		/**
+		 * Accounts for an arrived message
+		 */
+		synchronized void arrived(long sequence, long latencyNanos) {
+			if (sequence > highest) {
+				// Forget the sequence numbers that are about to be reused in the window
+				for (long s = Math.max(highest + 1, sequence - WINDOW + 1); s < sequence; s++) {
+					window[(int) (s & (WINDOW - 1))] = false;
+				}
+				missing += sequence - highest - 1;
+				highest = sequence;
+			} else if (highest - sequence >= WINDOW) {
+				// Too old to tell from a duplicate, so it is not taken off the missing count
+				late++;
+				return;
+			} else if (window[(int) (sequence & (WINDOW - 1))]) {
+				duplicates++;
+				return;
+			} else {
+				// Arrived after a later message, so it was counted as missing
+				reordered++;
+				missing--;
+			}
+			window[(int) (sequence & (WINDOW - 1))] = true;
+			received++;
+			latency.record(latencyNanos);
+		}
+
+		/**
+		 * Returns a one-line summary of the stream, with the given latency snapshot
+		 */
+		synchronized String summary(String lostLabel, LatencyHistogram.Snapshot snapshot) {
+			return "QoS " + qos + "  Sent: " + sent + "  Received: " + received + "  " + lostLabel + ": " + missing +
+				"  Reordered: " + reordered + "  Duplicates: " + duplicates + "  Late: " + late + "  Latency " + snapshot;
+		}
+	}
+
+	private final Session session;
+	private final String topic;
+	private final int rate;
+	private final int [] qosLevels;
+	private final int duration;
+	private final int payloadSize;
+
+	// Distinguishes this probe's messages from those of earlier probes or other clients
+	private final long probeId = new Random().nextLong();
+	private final Stream [] streams = new Stream[3];
+
+	private volatile boolean running = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param session the session to probe
+	 * @param topic the topic to publish and subscribe on
+	 * @param rate the total number of probe messages per second
+	 * @param qosLevels the QoS levels to probe; messages are spread evenly across them
+	 * @param duration the number of seconds to run for
+	 * @param payloadSize the size of each payload in bytes, at least the header size
+	 */
+	public LatencyProbe(Session session, String topic, int rate, int [] qosLevels, int duration, int payloadSize) {
+		this.session = session;
+		this.topic = topic;
+		this.rate = Math.max(1, rate);
+		this.qosLevels = qosLevels;
+		this.duration = Math.max(1, duration);
+		this.payloadSize = Math.max(HEADER_SIZE, payloadSize);
+		for (int i = 0; i < qosLevels.length; i++) {
+			streams[qosLevels[i]] = new Stream(qosLevels[i]);
+		}
+	}
+
+	/**
+	 * Starts probing in the background
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				runProbe();
+			}
+		}, "MQTT Latency Probe [" + session.getName() + "]");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops publishing probe messages.  The final report is logged once messages in flight have arrived.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns the latency histogram for a QoS level, or null if the level is not being probed
+	 */
+	public LatencyHistogram getLatency(int qos) {
+		return streams[qos] == null ? null : streams[qos].latency;
+	}
+
+	/**
+	 * Returns true if a message was published by this probe
+	 */
+	public boolean isProbeMessage(String messageTopic, byte [] payload) {
+		return payload.length >= HEADER_SIZE && getLong(payload, 0) == MAGIC && getLong(payload, 8) == probeId &&
+			topic.equals(messageTopic);
+	}
+
+	/**
+	 * Times a probe message that has arrived back
+	 */
+	public void messageArrived(Session source, String messageTopic, MqttMessage message, byte [] payload) {
+		long now = System.nanoTime();
+		if (source != session || !isProbeMessage(messageTopic, payload)) {
+			return;
+		}
+		int qos = payload[32];
+		if (qos < 0 || qos >= streams.length || streams[qos] == null) {
+			return;
+		}
+		streams[qos].arrived(getLong(payload, 16), now - getLong(payload, 24));
+	}
+
+	/**
+	 * Subscribes, publishes probe messages for the configured duration while reporting every second, then
+	 * reports the totals and unsubscribes
+	 */
+	private void runProbe() {
+		try {
+			session.getRegistry().addTopicHandler(topic, this);
+		} catch (IllegalArgumentException e) {
+			session.log("PROBE FAILED", e.getMessage());
+			running = false;
+			return;
+		}
+		try {
+			session.subscribe(new String [] {topic}, new int [] {2}).get(30, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			session.log("PROBE FAILED", "Could not subscribe to \"" + topic + "\"");
+			session.getRegistry().removeTopicHandler(topic, this);
+			running = false;
+			return;
+		}
+		session.log("PROBE STARTED", "Topic: \"" + topic + "\"  Rate: " + rate + "/s  Duration: " + duration + " s");
+
+		long interval = 1000000000L / rate;
+		long start = System.nanoTime();
+		long end = start + duration * 1000000000L;
+		long next = start;
+		long nextReport = start + 1000000000L;
+		int turn = 0;
+		long errors = 0;
+		while (running) {
+			long now = System.nanoTime();
+			if (now >= end) {
+				break;
+			}
+			if (now >= nextReport) {
+				report("PROBE", "Missing", true);
+				nextReport += 1000000000L;
+			}
+			if (next > now) {
+				LockSupport.parkNanos(Math.min(next, nextReport) - now);
+				continue;
+			}
+			next += interval;
+			Stream stream = streams[qosLevels[turn++ % qosLevels.length]];
+			long sequence = stream.sent + 1;
+			byte [] payload = new byte[payloadSize];
+			putLong(payload, 0, MAGIC);
+			putLong(payload, 8, probeId);
+			putLong(payload, 16, sequence);
+			payload[32] = (byte) stream.qos;
+			try {
+				putLong(payload, 24, System.nanoTime());
+				session.send(topic, payload, stream.qos, false);
+				stream.sent = sequence;
+			} catch (MqttException e) {
+				if (errors++ == 0) {
+					session.log("PROBE ERROR", e.getMessage());
+				}
+			}
+		}
+		running = false;
+
+		// Give messages in flight a chance to arrive before counting them as lost
+		LockSupport.parkNanos(DRAIN_TIME);
+		report("PROBE COMPLETE", "Lost", false);
+		session.getRegistry().removeTopicHandler(topic, this);
+		session.unsubscribe(new String [] {topic});
+	}
+
+	/**
+	 * Logs a summary of each stream, with latency percentiles for the last interval or the whole run
+	 */
+	private void report(String event, String lostLabel, boolean interval) {
+		for (int i = 0; i < streams.length; i++) {
+			Stream stream = streams[i];
+			if (stream != null) {
+				LatencyHistogram.Snapshot snapshot = interval ? stream.latency.getIntervalSnapshot() :
+					stream.latency.getSnapshot();
+				session.log(event, stream.summary(lostLabel, snapshot));
+			}
+		}
+	}
+
+	private static long getLong(byte [] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	private static void putLong(byte [] bytes, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			bytes[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+}
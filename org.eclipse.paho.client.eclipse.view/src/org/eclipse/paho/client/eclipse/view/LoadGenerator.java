@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Publishes generated messages on a session at a target rate, or as fast as possible, to measure what a broker
+ * can sustain.  Every second the generator logs the messages and bytes published per second and the
+ * distribution of acknowledgement latency (the time from publishing a message to its deliveryComplete).
+ *
+ * In the topic pattern, {n} is replaced by the message number and {t} by the number of the publisher thread,
+ * e.g. load/{t}/{n}.
+ */
+public class LoadGenerator extends SessionAdapter {
+
+	/**
+	 * The send time of a publish, or its completion time if deliveryComplete arrived before the publisher
+	 * recorded the send time
+	 */
+	private static class Stamp {
+		final long time;
+		final boolean completed;
+
+		Stamp(long time, boolean completed) {
+			this.time = time;
+			this.completed = completed;
+		}
+	}
+
+	private final Session session;
+	private final String topicPattern;
+	private final int rate;
+	private final int payloadSize;
+	private final int qos;
+	private final int duration;
+	private final int threads;
+
+	// Send time (nanoTime) of each publish awaiting deliveryComplete
+	private final ConcurrentMap<MqttDeliveryToken, Stamp> sendTimes = new ConcurrentHashMap<MqttDeliveryToken, Stamp>();
+	private final LatencyHistogram ackLatency = new LatencyHistogram();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	private volatile boolean running = false;
+	private Thread coordinator = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param session the session to publish on
+	 * @param topicPattern the topic to publish on, which may contain {n} and {t}
+	 * @param rate the target total number of messages per second, or 0 to publish as fast as possible
+	 * @param payloadSize the size of each payload in bytes
+	 * @param qos the QoS to publish with
+	 * @param duration the number of seconds to run for
+	 * @param threads the number of publisher threads
+	 */
+	public LoadGenerator(Session session, String topicPattern, int rate, int payloadSize, int qos, int duration,
+			int threads) {
+		this.session = session;
+		this.topicPattern = topicPattern;
+		this.rate = Math.max(0, rate);
+		this.payloadSize = Math.max(0, payloadSize);
+		this.qos = qos;
+		this.duration = Math.max(1, duration);
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Starts publishing in the background
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		coordinator = new Thread(new Runnable() {
+			public void run() {
+				runLoad();
+			}
+		}, "MQTT Load Generator [" + session.getName() + "]");
+		coordinator.setDaemon(true);
+		coordinator.start();
+	}
+
+	/**
+	 * Stops publishing.  The final report is logged once the publisher threads have finished.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns the acknowledgement latency of the messages published so far
+	 */
+	public LatencyHistogram getAckLatency() {
+		return ackLatency;
+	}
+
+	/**
+	 * Records the acknowledgement latency of a completed publish
+	 */
+	public void deliveryComplete(Session source, MqttDeliveryToken token) {
+		if (source != session) {
+			return;
+		}
+		long now = System.nanoTime();
+		Stamp sent = sendTimes.remove(token);
+		if (sent != null) {
+			ackLatency.record(now - sent.time);
+		} else if (running) {
+			// Completed before the publisher recorded the send time; the publisher records the latency
+			sent = sendTimes.putIfAbsent(token, new Stamp(now, true));
+			if (sent != null && sendTimes.remove(token, sent)) {
+				ackLatency.record(now - sent.time);
+			}
+		}
+	}
+
+	/**
+	 * Runs the publisher threads for the configured duration, reporting throughput every second
+	 */
+	private void runLoad() {
+		session.getRegistry().addListener(this);
+		session.log("LOAD STARTED", "Topic: \"" + topicPattern + "\"  Rate: " + (rate == 0 ? "max" : rate + "/s") +
+			"  Payload: " + payloadSize + " bytes  QoS: " + qos + "  Duration: " + duration + " s  Threads: " + threads);
+		Thread [] publishers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			publishers[i] = new Thread(new Runnable() {
+				public void run() {
+					publish(thread);
+				}
+			}, "MQTT Load Publisher " + i + " [" + session.getName() + "]");
+			publishers[i].setDaemon(true);
+			publishers[i].start();
+		}
+
+		long start = System.nanoTime();
+		long end = start + duration * 1000000000L;
+		long lastMessages = 0;
+		long lastReport = start;
+		while (running && System.nanoTime() < end) {
+			LockSupport.parkNanos(Math.min(1000000000L, end - System.nanoTime()));
+			long now = System.nanoTime();
+			long sent = messages.get();
+			report("LOAD", sent - lastMessages, now - lastReport);
+			lastMessages = sent;
+			lastReport = now;
+		}
+		running = false;
+		for (int i = 0; i < threads; i++) {
+			try {
+				publishers[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		report("LOAD COMPLETE", messages.get(), System.nanoTime() - start);
+		session.getRegistry().removeListener(this);
+		sendTimes.clear();
+	}
+
+	/**
+	 * Publishes messages from one publisher thread until stopped, pacing them to the thread's share of the rate
+	 */
+	private void publish(int thread) {
+		byte [] payload = new byte[payloadSize];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) ('a' + i % 26);
+		}
+		String threadTopic = topicPattern.replace("{t}", Integer.toString(thread));
+		boolean perMessageTopic = threadTopic.indexOf("{n}") >= 0;
+		long interval = rate == 0 ? 0 : threads * 1000000000L / rate;
+		long next = System.nanoTime();
+		while (running) {
+			if (interval > 0) {
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+					continue;
+				}
+				next += interval;
+			}
+			long n = sequence.incrementAndGet();
+			String topic = perMessageTopic ? threadTopic.replace("{n}", Long.toString(n)) : threadTopic;
+			try {
+				long sendTime = System.nanoTime();
+				MqttDeliveryToken token = session.send(topic, payload, qos, false);
+				Stamp completed = sendTimes.putIfAbsent(token, new Stamp(sendTime, false));
+				if (completed != null && completed.completed && sendTimes.remove(token, completed)) {
+					ackLatency.record(completed.time - sendTime);
+				}
+				messages.incrementAndGet();
+			} catch (MqttException e) {
+				if (errors.incrementAndGet() == 1) {
+					session.log("LOAD ERROR", e.getMessage());
+				}
+				LockSupport.parkNanos(10000000L);
+			}
+		}
+	}
+
+	/**
+	 * Logs the throughput over an interval along with the acknowledgement latency so far
+	 */
+	private void report(String event, long count, long elapsedNanos) {
+		double seconds = Math.max(elapsedNanos, 1) / 1e9;
+		long messagesPerSecond = (long) (count / seconds);
+		long bytesPerSecond = (long) ((double) count * payloadSize / seconds);
+		session.log(event, "Messages: " + count + "  Msgs/s: " + messagesPerSecond + "  Bytes/s: " + bytesPerSecond +
+			"  Errors: " + errors.get() + "  Awaiting ack: " + sendTimes.size() + "  Ack latency " + ackLatency);
+	}
+}
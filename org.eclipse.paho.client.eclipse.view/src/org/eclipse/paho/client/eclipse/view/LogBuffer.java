@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A fixed-capacity ring buffer of log records.  The buffer holds at most a maximum number of records and
+ * at most a maximum number of bytes; once either limit is reached, adding a record evicts the oldest ones.
+ * Appending is constant time regardless of how many records have been logged.
+ *
+ * The buffer is not thread safe.  It is only accessed on the UI thread.
+ */
+public class LogBuffer {
+
+	private LogRecord[] records;
+	private long maxBytes;
+
+	// Index of the oldest record, number of records held and their total size
+	private int head = 0;
+	private int count = 0;
+	private long bytes = 0;
+
+	// Total number of records ever evicted, used to detect that indices have shifted
+	private long evicted = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxRecords the maximum number of records to hold
+	 * @param maxBytes the maximum number of bytes of records to hold
+	 */
+	public LogBuffer(int maxRecords, long maxBytes) {
+		records = new LogRecord[Math.max(1, maxRecords)];
+		this.maxBytes = Math.max(1, maxBytes);
+	}
+
+	/**
+	 * Appends a record, evicting the oldest records as needed to stay within the limits
+	 */
+	public void add(LogRecord record) {
+		int size = record.getSize();
+		while (count > 0 && (count == records.length || bytes + size > maxBytes)) {
+			removeOldest();
+		}
+		records[(head + count) % records.length] = record;
+		count++;
+		bytes += size;
+	}
+
+	/**
+	 * Returns the record at the given index, where 0 is the oldest record held
+	 */
+	public LogRecord get(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+		return records[(head + index) % records.length];
+	}
+
+	/**
+	 * Returns the number of records held
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the approximate number of bytes held
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the total number of records evicted since the buffer was created
+	 */
+	public long getEvictedCount() {
+		return evicted;
+	}
+
+	/**
+	 * Removes all records
+	 */
+	public void clear() {
+		while (count > 0) {
+			removeOldest();
+		}
+	}
+
+	public int getMaxRecords() {
+		return records.length;
+	}
+
+	/**
+	 * Sets the maximum number of records to hold, keeping the newest records
+	 */
+	public void setMaxRecords(int maxRecords) {
+		maxRecords = Math.max(1, maxRecords);
+		while (count > maxRecords) {
+			removeOldest();
+		}
+		LogRecord[] resized = new LogRecord[maxRecords];
+		for (int i = 0; i < count; i++) {
+			resized[i] = records[(head + i) % records.length];
+		}
+		records = resized;
+		head = 0;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the maximum number of bytes to hold, keeping the newest records
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = Math.max(1, maxBytes);
+		while (count > 0 && bytes > this.maxBytes) {
+			removeOldest();
+		}
+	}
+
+	private void removeOldest() {
+		LogRecord oldest = records[head];
+		records[head] = null;
+		head = (head + 1) % records.length;
+		count--;
+		bytes -= oldest.getSize();
+		evicted++;
+	}
+}
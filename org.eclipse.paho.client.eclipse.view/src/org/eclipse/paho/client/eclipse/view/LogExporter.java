@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+
+/**
+ * Exports the arrived messages held by a {@link MessageStore} to a file, as JSON lines or CSV, or to a capture
+ * directory that can be replayed.  Messages are read from the store one at a time and streamed through a buffered
+ * writer, so the memory used does not depend on how many are exported.  An optional query limits the export to
+ * the messages it matches.
+ *
+ * In JSON lines and CSV, payloads that are valid UTF-8 text are written as text and others as hex.  Payloads too
+ * large for the store to keep whole are exported as far as they were kept, and marked as truncated.
+ */
+public class LogExporter {
+
+	/**
+	 * The export formats
+	 */
+	public enum Format {
+		JSONL("JSON Lines", "*.jsonl"),
+		CSV("CSV", "*.csv"),
+		CAPTURE("Capture", null);
+
+		private final String label;
+		private final String extension;
+
+		private Format(String label, String extension) {
+			this.label = label;
+			this.extension = extension;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * Returns the file name pattern of the format, or null if it exports to a directory
+		 */
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * Returns the format with the given label, or JSONL if there is none
+		 */
+		public static Format fromLabel(String label) {
+			Format [] formats = values();
+			for (int i = 0; i < formats.length; i++) {
+				if (formats[i].label.equals(label)) {
+					return formats[i];
+				}
+			}
+			return JSONL;
+		}
+	}
+
+	/**
+	 * Notified of the progress of an export, about once a second and when it finishes.  Called on the export
+	 * thread.
+	 */
+	public interface Listener {
+		void exportProgress(long exported, long checked, long total);
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char [] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final String CSV_HEADER = "time,session,topic,qos,retained,duplicate,size,truncated,encoding,payload";
+
+	private final MessageStore store;
+	private final LogQuery query;
+	private final Format format;
+
+	// Reused for each message exported (export thread only)
+	private final MessageStore.Row row = new MessageStore.Row();
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+	private final Date date = new Date();
+
+	/**
+	 * Constructor
+	 *
+	 * @param store the store holding the messages
+	 * @param query the query the messages exported must match, or null to export every message
+	 * @param format the format to export in
+	 */
+	public LogExporter(MessageStore store, LogQuery query, Format format) {
+		this.store = store;
+		this.query = query != null ? query.copy() : null;
+		this.format = format;
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
+	/**
+	 * Exports the messages held by the store in the background.  Cancelling the returned handle stops the export,
+	 * leaving what has been written so far.
+	 *
+	 * @param target the file to write, or for a capture the directory to write to
+	 * @param listener notified of the export's progress, or null
+	 * @return a handle to the export, whose result is the number of messages exported
+	 */
+	public OperationHandle<Long> start(final File target, final Listener listener) {
+		ClientWorker worker = new ClientWorker("MQTT Log Exporter");
+		OperationHandle<Long> handle = worker.submit("EXPORT", new Callable<Long>() {
+			public Long call() throws IOException, InterruptedException {
+				return Long.valueOf(export(target, listener));
+			}
+		});
+		worker.shutdown();
+		return handle;
+	}
+
+	/**
+	 * Exports the messages held by the store when called.  Messages arriving during the export are left out.
+	 *
+	 * @param target the file to write, or for a capture the directory to write to
+	 * @param listener notified of the export's progress, or null
+	 * @return the number of messages exported
+	 * @throws IOException if writing the export failed
+	 * @throws InterruptedException if the export was cancelled
+	 */
+	public long export(File target, Listener listener) throws IOException, InterruptedException {
+		Writer writer = null;
+		CaptureWriter capture = null;
+		if (format == Format.CAPTURE) {
+			capture = new CaptureWriter(target);
+		} else {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), UTF8),
+				ClientConstants.EXPORT_BUFFER_SIZE);
+		}
+		try {
+			if (format == Format.CSV) {
+				writer.write(CSV_HEADER);
+				writer.write("\r\n");
+			}
+			long first = store.getFirstSequence();
+			long end = store.getNextSequence();
+			long exported = 0;
+			long captureTime = 0;
+			long reported = System.currentTimeMillis();
+			for (long sequence = first; sequence < end; sequence++) {
+				if (!readMatch(sequence)) {
+					continue;
+				}
+				if (format == Format.CAPTURE) {
+					// Times may not go backwards through a capture, though messages from different sessions can be
+					// stored slightly out of time order
+					captureTime = Math.max(captureTime, row.getTime() * 1000000L);
+					capture.append(captureTime, row.getSession(), row.getTopic(), row.getQos(), row.isRetained(),
+						row.isDuplicate(), row.copyPayload());
+				} else if (format == Format.CSV) {
+					writeCsv(writer);
+				} else {
+					writeJson(writer);
+				}
+				exported++;
+				if (exported % 1024 == 0) {
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+					long now = System.currentTimeMillis();
+					if (listener != null && now - reported >= ClientConstants.EXPORT_PROGRESS_INTERVAL) {
+						listener.exportProgress(exported, sequence - first, end - first);
+						reported = now;
+					}
+				}
+			}
+			if (listener != null) {
+				listener.exportProgress(exported, end - first, end - first);
+			}
+			return exported;
+		} finally {
+			if (capture != null) {
+				capture.close();
+			} else {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads a message into the row, returning whether it is still held and matches the query
+	 */
+	private boolean readMatch(long sequence) {
+		return store.read(sequence, row) && (query == null || query.matches(row));
+	}
+
+	/**
+	 * Writes the message in the row as a line of JSON
+	 */
+	private void writeJson(Writer writer) throws IOException {
+		boolean text = isText();
+		writer.write("{\"time\":\"");
+		writer.write(getDate());
+		writer.write("\",\"timestamp\":");
+		writer.write(Long.toString(row.getTime()));
+		writer.write(",\"session\":");
+		writeJsonString(writer, row.getSession());
+		writer.write(",\"topic\":");
+		writeJsonString(writer, row.getTopic());
+		writer.write(",\"qos\":");
+		writer.write(Integer.toString(row.getQos()));
+		writer.write(",\"retained\":");
+		writer.write(row.isRetained() ? "true" : "false");
+		writer.write(",\"duplicate\":");
+		writer.write(row.isDuplicate() ? "true" : "false");
+		writer.write(",\"size\":");
+		writer.write(Integer.toString(row.getPayloadLength()));
+		writer.write(",\"truncated\":");
+		writer.write(isTruncated() ? "true" : "false");
+		writer.write(",\"encoding\":\"");
+		writer.write(text ? "utf8" : "hex");
+		writer.write("\",\"payload\":");
+		if (text) {
+			writeJsonString(writer, new String(row.getPayload(), 0, row.getStoredLength(), UTF8));
+		} else {
+			writer.write('"');
+			writeHex(writer);
+			writer.write('"');
+		}
+		writer.write("}\n");
+	}
+
+	/**
+	 * Writes the message in the row as a CSV record
+	 */
+	private void writeCsv(Writer writer) throws IOException {
+		boolean text = isText();
+		writer.write(getDate());
+		writer.write(',');
+		writeCsvField(writer, row.getSession());
+		writer.write(',');
+		writeCsvField(writer, row.getTopic());
+		writer.write(',');
+		writer.write(Integer.toString(row.getQos()));
+		writer.write(row.isRetained() ? ",true," : ",false,");
+		writer.write(row.isDuplicate() ? "true," : "false,");
+		writer.write(Integer.toString(row.getPayloadLength()));
+		writer.write(isTruncated() ? ",true," : ",false,");
+		if (text) {
+			writer.write("utf8,");
+			writeCsvField(writer, new String(row.getPayload(), 0, row.getStoredLength(), UTF8));
+		} else {
+			writer.write("hex,");
+			writeHex(writer);
+		}
+		writer.write("\r\n");
+	}
+
+	private boolean isText() {
+		return PayloadRenderer.detect(row.getPayload(), row.getStoredLength()) != PayloadRenderer.Format.HEX;
+	}
+
+	private boolean isTruncated() {
+		return row.getStoredLength() < row.getPayloadLength();
+	}
+
+	private String getDate() {
+		date.setTime(row.getTime());
+		return dateFormat.format(date);
+	}
+
+	/**
+	 * Writes the stored payload as hex digits, two per byte
+	 */
+	private void writeHex(Writer writer) throws IOException {
+		byte [] payload = row.getPayload();
+		for (int i = 0; i < row.getStoredLength(); i++) {
+			writer.write(HEX_DIGITS[(payload[i] >> 4) & 0x0f]);
+			writer.write(HEX_DIGITS[payload[i] & 0x0f]);
+		}
+	}
+
+	/**
+	 * Writes a string as a quoted JSON string
+	 */
+	private static void writeJsonString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			writer.write(value, start, i - start);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				writer.write("\\u00");
+				writer.write(HEX_DIGITS[(c >> 4) & 0x0f]);
+				writer.write(HEX_DIGITS[c & 0x0f]);
+			}
+		}
+		writer.write(value, start, value.length() - start);
+		writer.write('"');
+	}
+
+	/**
+	 * Writes a CSV field, quoting it if it holds a comma, quote or line break
+	 */
+	private static void writeCsvField(Writer writer, String value) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) == '"') {
+				writer.write(value, start, i + 1 - start);
+				writer.write('"');
+				start = i + 1;
+			}
+		}
+		writer.write(value, start, value.length() - start);
+		writer.write('"');
+	}
+}
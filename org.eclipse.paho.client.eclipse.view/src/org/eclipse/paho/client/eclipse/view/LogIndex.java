@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the messages in a {@link MessageStore}, kept up to date as messages are stored.  For each topic the
+ * index keeps a posting list of the sequence numbers of its messages, and for each second the sequence number of
+ * the first message stored in it.  A search uses these to narrow a query to the messages of the matching topics
+ * within its time range, and only reads those messages from the store to check the rest of the query.
+ *
+ * The index registers itself with its store, which adds each message to it as part of storing it, so posting
+ * lists are always in sequence order however many threads store messages.  The index is thread safe.  Entries
+ * for messages the store has evicted are dropped from time to time.
+ */
+public class LogIndex {
+
+	// Number of additions between drops of evicted entries
+	private static final int TRIM_INTERVAL = 65536;
+
+	// Number of messages checked between checks for cancellation
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	private final MessageStore store;
+
+	// Sequence numbers of each topic's messages, in order
+	private final Map<String, LongList> postings = new HashMap<String, LongList>();
+
+	// Each second in which messages were stored and the sequence number of its first message, in order
+	private final LongList bucketSeconds = new LongList();
+	private final LongList bucketFirsts = new LongList();
+
+	private int added = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param store the store whose messages are indexed
+	 */
+	public LogIndex(MessageStore store) {
+		this.store = store;
+		store.setIndex(this);
+	}
+
+	/**
+	 * Indexes a message that has just been stored.  Called by the store while it holds its lock, so that messages
+	 * are added in sequence order.
+	 *
+	 * @param sequence the message's sequence number in the store
+	 * @param topic the message's topic
+	 * @param time the time the message arrived, in milliseconds since the epoch
+	 */
+	public synchronized void add(long sequence, String topic, long time) {
+		LongList posting = postings.get(topic);
+		if (posting == null) {
+			posting = new LongList(4);
+			postings.put(topic, posting);
+		}
+		posting.add(sequence);
+		long second = time / 1000;
+		if (bucketSeconds.isEmpty() || second > bucketSeconds.get(bucketSeconds.size() - 1)) {
+			bucketSeconds.add(second);
+			bucketFirsts.add(sequence);
+		}
+		if (++added % TRIM_INTERVAL == 0) {
+			trim(store.getFirstSequence());
+		}
+	}
+
+	/**
+	 * Returns the number of topics indexed
+	 */
+	public synchronized int getTopicCount() {
+		return postings.size();
+	}
+
+	/**
+	 * Finds the messages matching a query.  Checks for interruption as it goes, so a search can be cancelled by
+	 * interrupting the thread running it.
+	 *
+	 * @param query the query, which must not be used by another thread during the search
+	 * @return the sequence numbers of the matching messages, in order
+	 * @throws InterruptedException if the search was cancelled
+	 */
+	public long [] search(LogQuery query) throws InterruptedException {
+		long first = store.getFirstSequence();
+		long next = store.getNextSequence();
+		long low = first;
+		long high = next;
+		List<long []> topicPostings = null;
+		synchronized (this) {
+			// Narrow the range to the seconds of the time range, with a second's slack either side since messages
+			// from different sessions can be stored slightly out of time order
+			if (query.getFrom() > 0) {
+				int bucket = bucketSeconds.lowerBound(query.getFrom() / 1000) - 1;
+				if (bucket >= 0) {
+					low = Math.max(low, bucketFirsts.get(bucket));
+				}
+			}
+			if (query.getTo() < Long.MAX_VALUE) {
+				int bucket = bucketSeconds.lowerBound(query.getTo() / 1000 + 2);
+				if (bucket < bucketFirsts.size()) {
+					high = Math.min(high, bucketFirsts.get(bucket));
+				}
+			}
+			if (query.getTopicFilter() != null) {
+				topicPostings = new ArrayList<long []>();
+				for (Iterator<Map.Entry<String, LongList>> i = postings.entrySet().iterator(); i.hasNext();) {
+					Map.Entry<String, LongList> entry = i.next();
+					if (query.matchesTopic(entry.getKey())) {
+						LongList posting = entry.getValue();
+						topicPostings.add(posting.toArray(posting.lowerBound(low), posting.lowerBound(high)));
+					}
+				}
+			}
+		}
+
+		LongList matches = new LongList();
+		MessageStore.Row row = new MessageStore.Row();
+		boolean payload = query.matchesPayload();
+		if (topicPostings != null) {
+			int count = 0;
+			for (int i = 0; i < topicPostings.size(); i++) {
+				count += topicPostings.get(i).length;
+			}
+			long [] candidates = new long[count];
+			count = 0;
+			for (int i = 0; i < topicPostings.size(); i++) {
+				long [] posting = topicPostings.get(i);
+				System.arraycopy(posting, 0, candidates, count, posting.length);
+				count += posting.length;
+			}
+			Arrays.sort(candidates);
+			for (int i = 0; i < candidates.length; i++) {
+				check(query, candidates[i], row, payload, matches, i);
+			}
+		} else {
+			for (long sequence = low; sequence < high; sequence++) {
+				check(query, sequence, row, payload, matches, (int) (sequence - low));
+			}
+		}
+		return matches.toArray();
+	}
+
+	/**
+	 * Adds a message to the matches if it is still held and matches the query
+	 */
+	private void check(LogQuery query, long sequence, MessageStore.Row row, boolean payload, LongList matches,
+			int checked) throws InterruptedException {
+		if (checked % CANCEL_CHECK_INTERVAL == 0 && Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (store.read(sequence, row, payload) && query.matches(row)) {
+			matches.add(sequence);
+		}
+	}
+
+	/**
+	 * Drops the entries of messages before the given sequence number.  Called holding the lock.
+	 */
+	private void trim(long first) {
+		for (Iterator<LongList> i = postings.values().iterator(); i.hasNext();) {
+			LongList posting = i.next();
+			posting.removeFirst(posting.lowerBound(first));
+			if (posting.isEmpty()) {
+				i.remove();
+			}
+		}
+		int buckets = 0;
+		while (buckets + 1 < bucketFirsts.size() && bucketFirsts.get(buckets + 1) <= first) {
+			buckets++;
+		}
+		bucketSeconds.removeFirst(buckets);
+		bucketFirsts.removeFirst(buckets);
+	}
+}
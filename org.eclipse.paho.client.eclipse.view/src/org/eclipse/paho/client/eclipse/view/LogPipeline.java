@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A batched log pipeline.  Any thread may post log entries; posting only enqueues the entry on a lock-free
+ * queue and, if no flush is pending, schedules a single flush on the UI thread.  The flush drains the queue
+ * in bulk (at most one batch per frame) and hands each batch to a sink, so producers such as the MQTT
+ * callback thread never wait on the UI thread.  The queue is bounded: once it holds its capacity, entries posted
+ * are dropped until the UI thread catches up, so a producer that outruns the UI cannot exhaust the heap.
+ *
+ * Flushes are run by a {@link Scheduler}, normally a {@link DisplayScheduler}.  Other schedulers let the pipeline
+ * run without SWT, e.g. in benchmarks.  The pipeline records its queue depth, dropped entries, flushes and
+ * hand-offs to the scheduler in its {@link PipelineMetrics}.
+ */
+public class LogPipeline {
+
+	/**
+	 * Receives batches of log entries.  Always called on the UI thread.
+	 */
+	public interface Sink {
+		void flush(List<LogRecord> batch);
+	}
+
+	/**
+	 * Runs the flushes of a pipeline on a single thread, the UI thread for a display
+	 */
+	public interface Scheduler {
+
+		/**
+		 * Runs a task on the scheduler's thread after a number of milliseconds.  May be called from any thread.
+		 */
+		void schedule(int delay, Runnable task);
+
+		/**
+		 * Runs a task on the scheduler's thread as soon as it can, after the tasks already waiting
+		 */
+		void execute(Runnable task);
+
+		/**
+		 * Returns whether the scheduler has stopped running tasks
+		 */
+		boolean isDisposed();
+	}
+
+	// The scheduler that runs the flushes, and the sink that receives them
+	private final Scheduler scheduler;
+	private final Sink sink;
+
+	// Pending entries, their number and whether a flush has already been scheduled for them
+	private final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<LogRecord>();
+	private final AtomicInteger size = new AtomicInteger(0);
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	// Flush tuning parameters
+	private volatile int flushInterval;
+	private volatile int maxBatchSize;
+	private volatile int capacity = ClientConstants.LOG_QUEUE_CAPACITY;
+	private volatile boolean disposed = false;
+
+	// Instrumentation of the pipeline
+	private final PipelineMetrics metrics = new PipelineMetrics();
+
+	// The batch handed to the sink, reused across flushes (UI thread only)
+	private final List<LogRecord> batch = new ArrayList<LogRecord>();
+
+	// Drains one batch from the queue into the sink
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param display the display whose UI thread the sink is called on
+	 * @param sink the sink that receives batches of log entries
+	 */
+	public LogPipeline(Display display, Sink sink) {
+		this(display, sink, ClientConstants.LOG_FLUSH_INTERVAL, ClientConstants.LOG_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param display the display whose UI thread the sink is called on
+	 * @param sink the sink that receives batches of log entries
+	 * @param flushInterval the number of milliseconds to wait before flushing newly posted entries
+	 * @param maxBatchSize the maximum number of entries handed to the sink per flush
+	 */
+	public LogPipeline(Display display, Sink sink, int flushInterval, int maxBatchSize) {
+		this(new DisplayScheduler(display), sink, flushInterval, maxBatchSize);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param scheduler the scheduler that runs the flushes, on the thread the sink is called on
+	 * @param sink the sink that receives batches of log entries
+	 * @param flushInterval the number of milliseconds to wait before flushing newly posted entries
+	 * @param maxBatchSize the maximum number of entries handed to the sink per flush
+	 */
+	public LogPipeline(Scheduler scheduler, Sink sink, int flushInterval, int maxBatchSize) {
+		this.scheduler = scheduler;
+		this.sink = sink;
+		setFlushInterval(flushInterval);
+		setMaxBatchSize(maxBatchSize);
+	}
+
+	/**
+	 * Posts an entry to the log.  May be called from any thread and never blocks.  The entry is dropped if the
+	 * queue is full.
+	 */
+	public void post(LogRecord entry) {
+		if (disposed) {
+			return;
+		}
+		if (size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			metrics.recordDropped();
+			return;
+		}
+		queue.offer(entry);
+		metrics.recordPost();
+		schedule();
+	}
+
+	/**
+	 * Returns the instrumentation of the pipeline
+	 */
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait before flushing newly posted entries
+	 */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = Math.max(0, flushInterval);
+	}
+
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the maximum number of entries handed to the sink per flush
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of entries waiting to be flushed.  Entries posted beyond this are dropped.
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Stops the pipeline.  Pending entries are discarded and later posts are ignored.
+	 */
+	public void dispose() {
+		disposed = true;
+		int discarded = 0;
+		while (queue.poll() != null) {
+			discarded++;
+		}
+		size.addAndGet(-discarded);
+		metrics.recordDiscarded(discarded);
+	}
+
+	/**
+	 * Schedules a flush unless one is already pending
+	 */
+	private void schedule() {
+		if (!scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		if (scheduler.isDisposed()) {
+			return;
+		}
+		long start = System.nanoTime();
+		scheduler.schedule(flushInterval, flushTask);
+		metrics.recordHandOff(System.nanoTime() - start);
+	}
+
+	/**
+	 * Drains up to one batch into the sink.  If entries remain, another flush is queued for the next pass of the
+	 * event loop so that the UI stays responsive while catching up.
+	 */
+	private void flush() {
+		if (disposed) {
+			return;
+		}
+		batch.clear();
+		long depth = metrics.getQueueDepth();
+		LogRecord entry;
+		int limit = maxBatchSize;
+		while (batch.size() < limit && (entry = queue.poll()) != null) {
+			batch.add(entry);
+		}
+		size.addAndGet(-batch.size());
+		if (!batch.isEmpty()) {
+			long start = System.nanoTime();
+			sink.flush(batch);
+			metrics.recordFlush(depth, batch.size(), System.nanoTime() - start);
+			batch.clear();
+		}
+		if (!queue.isEmpty()) {
+			scheduler.execute(flushTask);
+			return;
+		}
+		// Clear the flag, then re-check for entries posted after the queue was seen empty
+		scheduled.set(false);
+		if (!queue.isEmpty()) {
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A filter over arrived messages: a topic filter, a payload substring or regular expression, a QoS and a time
+ * range.  Any part left unset matches every message.
+ *
+ * Payloads are decoded as UTF-8.  A query reuses its decoder and matchers, so it is not thread safe; use {@link #copy()} to match on another thread.
+ */
+public class LogQuery {
+
+	private final String topicFilter;
+	private final String text;
+	private final Pattern pattern;
+	private final int qos;
+	private final long from;
+	private final long to;
+
+	// Matches topics against the topic filter
+	private final TopicTrie<String> topicTrie;
+	private final List<String> topicMatches = new ArrayList<String>(1);
+
+	// Reused for each payload matched against a regular expression
+	private Matcher matcher;
+
+	// Reused to decode each payload; a truncated payload may end part way through a character, which decodes as a
+	// replacement character
+	private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private CharBuffer chars = CharBuffer.allocate(0);
+
+	// The payload text and whether it is a regular expression, as given
+	private final String query;
+	private final boolean regex;
+
+	/**
+	 * Constructor
+	 *
+	 * @param topicFilter an MQTT topic filter, or null to match any topic
+	 * @param text a payload substring or regular expression, or null to match any payload
+	 * @param regex whether the text is a regular expression
+	 * @param qos the QoS to match, or -1 to match any
+	 * @param from the earliest time to match, in milliseconds since the epoch, or 0 for no limit
+	 * @param to the latest time to match, in milliseconds since the epoch, or 0 for no limit
+	 * @throws IllegalArgumentException if the topic filter or regular expression is invalid
+	 */
+	public LogQuery(String topicFilter, String text, boolean regex, int qos, long from, long to) {
+		this.topicFilter = topicFilter;
+		this.query = text;
+		this.regex = regex;
+		this.text = regex ? null : text;
+		this.pattern = regex && text != null ? Pattern.compile(text) : null;
+		this.qos = qos;
+		this.from = from;
+		this.to = to == 0 ? Long.MAX_VALUE : to;
+		if (topicFilter != null) {
+			topicTrie = new TopicTrie<String>();
+			topicTrie.add(topicFilter, topicFilter);
+		} else {
+			topicTrie = null;
+		}
+	}
+
+	/**
+	 * Returns a query that matches the same messages, for use on another thread
+	 */
+	public LogQuery copy() {
+		return new LogQuery(topicFilter, query, regex, qos, from, to == Long.MAX_VALUE ? 0 : to);
+	}
+
+	public String getTopicFilter() {
+		return topicFilter;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * Returns whether the query looks at payloads, and so needs them read
+	 */
+	public boolean matchesPayload() {
+		return text != null || pattern != null;
+	}
+
+	/**
+	 * Returns whether a topic matches the query's topic filter
+	 */
+	public boolean matchesTopic(String topic) {
+		if (topicTrie == null) {
+			return true;
+		}
+		topicMatches.clear();
+		return topicTrie.match(topic, topicMatches) > 0;
+	}
+
+	/**
+	 * Returns whether a message matches the query.  The payload is only looked at if the row holds one.
+	 */
+	public boolean matches(MessageStore.Row row) {
+		if (row.getTime() < from || row.getTime() > to) {
+			return false;
+		}
+		if (qos >= 0 && row.getQos() != qos) {
+			return false;
+		}
+		if (!matchesTopic(row.getTopic())) {
+			return false;
+		}
+		if (matchesPayload()) {
+			CharBuffer payload = decode(row.getPayload(), row.getStoredLength());
+			if (pattern != null) {
+				if (matcher == null) {
+					matcher = pattern.matcher(payload);
+				} else {
+					matcher.reset(payload);
+				}
+				return matcher.find();
+			}
+			return contains(payload, text);
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a payload into the query's character buffer, which is only valid until the next call
+	 */
+	private CharBuffer decode(byte[] payload, int length) {
+		// UTF-8 never decodes to more characters than it has bytes
+		if (chars.capacity() < length) {
+			chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+		}
+		chars.clear();
+		decoder.reset();
+		ByteBuffer in = ByteBuffer.wrap(payload, 0, length);
+		decoder.decode(in, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	/**
+	 * Returns whether some characters contain a string
+	 */
+	private static boolean contains(CharBuffer chars, String text) {
+		int last = chars.length() - text.length();
+		for (int i = 0; i <= last; i++) {
+			int j = 0;
+			while (j < text.length() && chars.get(i + j) == text.charAt(j)) {
+				j++;
+			}
+			if (j == text.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A single entry in the message log: the time it was logged, the session it came from, a short event name
+ * (e.g. PUBLISH ARRIVED) and an optional line of detail.
+ */
+public class LogRecord {
+
+	// Approximate fixed cost of a record and its strings, in bytes
+	private static final int OVERHEAD = 64;
+
+	private final long time;
+	private final String source;
+	private final String event;
+	private final String detail;
+
+	/**
+	 * Constructor
+	 *
+	 * @param time the time the record was logged, in milliseconds since the epoch
+	 * @param source the name of the session the record came from
+	 * @param event the event name
+	 * @param detail the event detail, or null if there is none
+	 */
+	public LogRecord(long time, String source, String event, String detail) {
+		this.time = time;
+		this.source = source;
+		this.event = event;
+		this.detail = detail == null ? "" : detail;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getEvent() {
+		return event;
+	}
+
+	public String getDetail() {
+		return detail;
+	}
+
+	/**
+	 * Returns the approximate number of bytes of heap held by this record
+	 */
+	public int getSize() {
+		return OVERHEAD + 2 * (source.length() + event.length() + detail.length());
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A growable list of longs, without boxing.  Not thread safe.
+ */
+public class LongList {
+
+	private long [] values;
+	private int size = 0;
+
+	public LongList() {
+		this(16);
+	}
+
+	public LongList(int capacity) {
+		values = new long[Math.max(1, capacity)];
+	}
+
+	public void add(long value) {
+		if (size == values.length) {
+			long [] grown = new long[values.length * 2];
+			System.arraycopy(values, 0, grown, 0, size);
+			values = grown;
+		}
+		values[size++] = value;
+	}
+
+	public long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return values[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the index of the first value not less than the given one, assuming the list is sorted
+	 */
+	public int lowerBound(long value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Removes the first values of the list
+	 */
+	public void removeFirst(int count) {
+		count = Math.min(count, size);
+		System.arraycopy(values, count, values, 0, size - count);
+		size -= count;
+	}
+
+	/**
+	 * Returns the values from an index up to, but not including, another
+	 */
+	public long [] toArray(int from, int to) {
+		long [] copy = new long[to - from];
+		System.arraycopy(values, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	public long [] toArray() {
+		return toArray(0, size);
+	}
+}
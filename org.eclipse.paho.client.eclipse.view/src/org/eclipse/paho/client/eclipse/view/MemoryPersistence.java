@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+/**
+ * Persistence that keeps the client's in-flight packets in memory only.  Nothing touches the disk, so publishing
+ * at QoS 1 and 2 is not bound by it, but packets in flight are lost if the view or Eclipse exits.
+ */
+public class MemoryPersistence implements MqttClientPersistence {
+
+	private final Map<String, StoredPersistable> entries = new HashMap<String, StoredPersistable>();
+
+	public void open(String clientId, String serverURI) {
+	}
+
+	public void close() {
+	}
+
+	public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+		StoredPersistable copy = StoredPersistable.copyOf(persistable);
+		synchronized (entries) {
+			entries.put(key, copy);
+		}
+	}
+
+	public MqttPersistable get(String key) {
+		synchronized (entries) {
+			return entries.get(key);
+		}
+	}
+
+	public void remove(String key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	public Enumeration keys() {
+		synchronized (entries) {
+			return Collections.enumeration(new ArrayList<String>(entries.keySet()));
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public boolean containsKey(String key) {
+		synchronized (entries) {
+			return entries.containsKey(key);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * The path of an arrived message into the log, shared by the view and the benchmarks.  Each message is appended
+ * to the message store, which indexes it, and posted to the log pipeline as a {@link MessageRecord}, and the time
+ * taken is recorded in the pipeline's metrics.  Messages sent by the running latency probe, if any, are left to the
+ * probe.
+ *
+ * Called on the threads that deliver messages; nothing here touches SWT.
+ */
+public class MessageLogger {
+
+	private final MessageStore store;
+	private final LogPipeline pipeline;
+
+	// The running latency probe, whose messages are not logged
+	private volatile LatencyProbe probe = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param store the store arrived messages are appended to
+	 * @param pipeline the pipeline the log records of arrived messages are posted to
+	 */
+	public MessageLogger(MessageStore store, LogPipeline pipeline) {
+		this.store = store;
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Sets the latency probe whose messages are not logged, or null for none
+	 */
+	public void setLatencyProbe(LatencyProbe probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * Logs a message that has arrived from the broker
+	 */
+	public void messageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+		// Probe messages are reported by the probe
+		LatencyProbe latencyProbe = probe;
+		if (latencyProbe != null && latencyProbe.isProbeMessage(topic, payload)) {
+			return;
+		}
+		long start = System.nanoTime();
+		long time = System.currentTimeMillis();
+		long sequence = store.append(time, session.getName(), topic, message.getQos(), message.isRetained(),
+			message.isDuplicate(), payload);
+		pipeline.post(new MessageRecord(time, session.getName(), store, sequence));
+		pipeline.getMetrics().recordMessageArrived(System.nanoTime() - start);
+	}
+}
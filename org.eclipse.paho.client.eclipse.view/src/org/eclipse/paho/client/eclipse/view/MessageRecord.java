@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * A log record for an arrived message.  The message itself lives in a {@link MessageStore}; the record only holds
+ * its sequence number, and the detail is formatted from the store each time it is asked for.
+ */
+public class MessageRecord extends LogRecord {
+
+	// Approximate fixed cost of a record, in bytes
+	private static final int OVERHEAD = 48;
+
+	private final MessageStore store;
+	private final long sequence;
+
+	/**
+	 * Constructor
+	 *
+	 * @param time the time the message arrived, in milliseconds since the epoch
+	 * @param source the name of the session the message arrived on
+	 * @param store the store holding the message
+	 * @param sequence the message's sequence number in the store
+	 */
+	public MessageRecord(long time, String source, MessageStore store, long sequence) {
+		super(time, source, "PUBLISH ARRIVED", null);
+		this.store = store;
+		this.sequence = sequence;
+	}
+
+	public MessageStore getStore() {
+		return store;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the detail with the payload rendered as UTF-8, up to {@link ClientConstants#LOG_PREVIEW_LENGTH} bytes
+	 */
+	public String getDetail() {
+		return getDetail(new MessageStore.Row(), new PayloadRenderer(), PayloadRenderer.Format.UTF8,
+			ClientConstants.LOG_PREVIEW_LENGTH, false);
+	}
+
+	/**
+	 * Returns the detail with the payload rendered as asked.  The row and renderer are reused, so a caller
+	 * rendering many records allocates only the resulting string.
+	 *
+	 * @param row the row to read the message into
+	 * @param renderer the renderer to render the payload with
+	 * @param format how to render the payload
+	 * @param limit the maximum number of payload bytes to render, or 0 for all of them
+	 * @param multiLine whether the detail may span lines
+	 */
+	public String getDetail(MessageStore.Row row, PayloadRenderer renderer, PayloadRenderer.Format format, int limit,
+			boolean multiLine) {
+		if (!store.read(sequence, row)) {
+			return "(message no longer held)";
+		}
+		String detail = "Topic: \"" + row.getTopic() + "\"  QoS: " + row.getQos() + "  Retain: " + row.isRetained() +
+			"  Size: " + row.getPayloadLength() + (multiLine ? "\n\n" : "  Payload: ") +
+			renderer.render(row.getPayload(), row.getStoredLength(), row.getPayloadLength(), format, limit, multiLine);
+		if (multiLine && row.getStoredLength() < row.getPayloadLength()) {
+			detail += "\n(only the first " + row.getStoredLength() + " bytes were kept)";
+		}
+		return detail;
+	}
+
+	public int getSize() {
+		return OVERHEAD;
+	}
+}
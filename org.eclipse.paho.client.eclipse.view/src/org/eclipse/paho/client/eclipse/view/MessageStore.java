@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An off-heap store of arrived messages.  Each message is a fixed-size row in a direct buffer holding its arrival
+ * time, the ids of its session and topic, a byte of QoS/retain/duplicate flags and the offset and length of its
+ * payload.  Payloads are copied into a second direct buffer used as a ring.  Session names and topics are interned,
+ * so storing a message allocates nothing on the heap unless its topic is not already held.  An interned string is
+ * counted by the messages that use it and released when the last of them is evicted, so heap use stays flat
+ * however many messages, and however many distinct topics, are captured.
+ *
+ * Messages are numbered with sequence numbers that increase from 0.  When either buffer is full the oldest messages
+ * are evicted.  Nothing is formatted until a message is read back with {@link #read(long, Row)}.
+ *
+ * The store is thread safe, and the threads storing messages hold its lock only briefly: to intern the strings,
+ * evict, number the message, reserve its payload space and add it to the index.  The payload and row are then
+ * written outside the lock, concurrently with other threads' messages.  A message becomes readable once it and
+ * every message numbered before it are written, so a thread whose predecessor is still copying a payload yields
+ * until it finishes; eviction likewise waits for the oldest message to be written.  The remaining contention is
+ * that short critical section, the index's periodic trim (run inside it), and reads, which hold the lock for one
+ * message at a time.  Because messages become readable in order, a writer descheduled mid copy also holds up the
+ * writers numbered after it, which shows on a single processor.
+ */
+public class MessageStore {
+
+	// Layout of a row in the index buffer
+	private static final int TIME = 0;
+	private static final int PAYLOAD_OFFSET = 8;
+	private static final int PAYLOAD_LENGTH = 16;
+	private static final int STORED_LENGTH = 20;
+	private static final int TOPIC_ID = 24;
+	private static final int SESSION_ID = 28;
+	private static final int FLAGS = 32;
+	private static final int ROW_SIZE = 40;
+
+	// Number of checks a thread waiting for an earlier message to be written makes before yielding; none on a single
+	// processor, where the writer it waits for cannot run while it spins
+	private static final int AWAIT_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+	// Bits of the flags byte
+	private static final int QOS_MASK = 0x03;
+	private static final int RETAINED = 0x04;
+	private static final int DUPLICATE = 0x08;
+
+	/**
+	 * A message read back from the store.  A row may be reused for many reads to avoid allocating.
+	 */
+	public static class Row {
+
+		private long sequence;
+		private long time;
+		private String session;
+		private String topic;
+		private int qos;
+		private boolean retained;
+		private boolean duplicate;
+		private int payloadLength;
+		private int storedLength;
+		private byte [] payload = new byte[64];
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public String getSession() {
+			return session;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		public int getQos() {
+			return qos;
+		}
+
+		public boolean isRetained() {
+			return retained;
+		}
+
+		public boolean isDuplicate() {
+			return duplicate;
+		}
+
+		/**
+		 * Returns the length of the payload as it arrived
+		 */
+		public int getPayloadLength() {
+			return payloadLength;
+		}
+
+		/**
+		 * Returns the number of payload bytes kept by the store, which is less than the payload length if the
+		 * payload was too large to keep whole
+		 */
+		public int getStoredLength() {
+			return storedLength;
+		}
+
+		/**
+		 * Returns the buffer holding the stored payload.  Only the first {@link #getStoredLength()} bytes are valid,
+		 * and the buffer is overwritten by the next read into this row.
+		 */
+		public byte [] getPayload() {
+			return payload;
+		}
+
+		/**
+		 * Returns a copy of the stored payload
+		 */
+		public byte [] copyPayload() {
+			byte [] copy = new byte[storedLength];
+			System.arraycopy(payload, 0, copy, 0, storedLength);
+			return copy;
+		}
+	}
+
+	// Allocated when the first message is stored, so a store that is never used costs nothing
+	private ByteBuffer rows;
+	private ByteBuffer payloads;
+
+	// Each writing thread's own view of the payload ring, since the position of a buffer cannot be shared.  Readers
+	// use the payloads buffer itself, holding the lock.
+	private final ThreadLocal<ByteBuffer> payloadWriters = new ThreadLocal<ByteBuffer>();
+	private final int maxMessages;
+	private final int payloadCapacity;
+	private final int maxStoredLength;
+
+	// Sequence numbers of the oldest message held, of the next message to be numbered and of the first message not
+	// yet completely written.  The messages from first up to committed can be read.
+	private volatile long first = 0;
+	private long next = 0;
+	private volatile long committed = 0;
+
+	// Total number of payload bytes ever written, the ring position being this modulo the capacity
+	private long payloadEnd = 0;
+
+	// Interned session names and topics, the number of held messages using each, and the ids released for reuse
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final List<String> strings = new ArrayList<String>();
+	private int [] references = new int[16];
+	private int [] freeIds = new int[16];
+	private int freeCount = 0;
+
+	// The index kept up to date with the stored messages, if any
+	private LogIndex index = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxMessages the maximum number of messages to hold
+	 * @param payloadCapacity the number of bytes of payload to hold.  A single payload keeps at most a sixteenth
+	 * of this; the rest of it is dropped.
+	 */
+	public MessageStore(int maxMessages, int payloadCapacity) {
+		this.maxMessages = Math.max(1, maxMessages);
+		this.payloadCapacity = Math.max(16, payloadCapacity);
+		this.maxStoredLength = this.payloadCapacity / 16;
+	}
+
+	/**
+	 * Sets the index that each message is added to as it is stored
+	 */
+	synchronized void setIndex(LogIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Stores a message, evicting the oldest messages as needed, and adds it to the index.  Indexing under the same
+	 * lock that numbers the message keeps the index's posting lists in sequence order.  The message can be read
+	 * once this returns.
+	 *
+	 * @return the sequence number of the message
+	 */
+	public long append(long time, String session, String topic, int qos, boolean retained, boolean duplicate,
+			byte [] payload) {
+		int stored = Math.min(payload.length, maxStoredLength);
+		long sequence;
+		long payloadStart;
+		int topicId;
+		int sessionId;
+		ByteBuffer rowBuffer;
+		ByteBuffer payloadBuffer;
+		synchronized (this) {
+			if (rows == null) {
+				rows = ByteBuffer.allocateDirect(maxMessages * ROW_SIZE);
+				payloads = ByteBuffer.allocateDirect(payloadCapacity);
+			}
+			// Intern before evicting, so that a string the evicted messages share with this one is kept
+			topicId = intern(topic);
+			sessionId = intern(session);
+			payloadStart = payloadEnd;
+			payloadEnd += stored;
+			while (first < next) {
+				// The oldest message may still be being written by a thread that does not need the lock to finish
+				awaitCommitted(first + 1);
+				if (next - first < maxMessages &&
+						rows.getLong(row(first) + PAYLOAD_OFFSET) >= payloadEnd - payloadCapacity) {
+					break;
+				}
+				evictFirst();
+			}
+			sequence = next++;
+			if (index != null) {
+				index.add(sequence, topic, time);
+			}
+			rowBuffer = rows;
+			payloadBuffer = payloads;
+		}
+
+		// The row and payload space are this thread's until the message is committed
+		ByteBuffer ring = payloadWriters.get();
+		if (ring == null) {
+			ring = payloadBuffer.duplicate();
+			payloadWriters.set(ring);
+		}
+		writePayload(ring, payloadStart, payload, stored);
+		int row = row(sequence);
+		rowBuffer.putLong(row + TIME, time);
+		rowBuffer.putLong(row + PAYLOAD_OFFSET, payloadStart);
+		rowBuffer.putInt(row + PAYLOAD_LENGTH, payload.length);
+		rowBuffer.putInt(row + STORED_LENGTH, stored);
+		rowBuffer.putInt(row + TOPIC_ID, topicId);
+		rowBuffer.putInt(row + SESSION_ID, sessionId);
+		rowBuffer.put(row + FLAGS, (byte) ((qos & QOS_MASK) | (retained ? RETAINED : 0) |
+			(duplicate ? DUPLICATE : 0)));
+
+		// Messages become readable in sequence order
+		awaitCommitted(sequence);
+		committed = sequence + 1;
+		return sequence;
+	}
+
+	/**
+	 * Reads a message into a row
+	 *
+	 * @return true, or false if the message has been evicted or was never stored
+	 */
+	public boolean read(long sequence, Row into) {
+		return read(sequence, into, true);
+	}
+
+	/**
+	 * Reads a message into a row, optionally leaving out the payload.  Reading without the payload leaves the
+	 * row's payload buffer as it was, though the payload lengths are read.
+	 *
+	 * @return true, or false if the message has been evicted or was never stored
+	 */
+	public synchronized boolean read(long sequence, Row into, boolean payload) {
+		if (sequence < first || sequence >= committed) {
+			return false;
+		}
+		int row = row(sequence);
+		int flags = rows.get(row + FLAGS);
+		into.sequence = sequence;
+		into.time = rows.getLong(row + TIME);
+		into.session = strings.get(rows.getInt(row + SESSION_ID));
+		into.topic = strings.get(rows.getInt(row + TOPIC_ID));
+		into.qos = flags & QOS_MASK;
+		into.retained = (flags & RETAINED) != 0;
+		into.duplicate = (flags & DUPLICATE) != 0;
+		into.payloadLength = rows.getInt(row + PAYLOAD_LENGTH);
+		into.storedLength = rows.getInt(row + STORED_LENGTH);
+		if (payload) {
+			if (into.payload.length < into.storedLength) {
+				into.payload = new byte[Math.max(into.storedLength, into.payload.length * 2)];
+			}
+			readPayload(payloads, rows.getLong(row + PAYLOAD_OFFSET), into.payload, into.storedLength);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest message held
+	 */
+	public long getFirstSequence() {
+		return first;
+	}
+
+	/**
+	 * Returns the sequence number after that of the newest message that can be read.  Messages still being written
+	 * are not counted.
+	 */
+	public long getNextSequence() {
+		return committed;
+	}
+
+	/**
+	 * Returns the number of messages held that can be read
+	 */
+	public int getMessageCount() {
+		long oldest = first;
+		return (int) Math.max(0, committed - oldest);
+	}
+
+	/**
+	 * Returns the number of payload bytes held, including those of messages still being written
+	 */
+	public synchronized long getPayloadBytes() {
+		return first < committed ? payloadEnd - rows.getLong(row(first) + PAYLOAD_OFFSET) : 0;
+	}
+
+	/**
+	 * Returns the number of distinct session names and topics interned for the messages held
+	 */
+	public synchronized int getInternedCount() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns the number of bytes of memory held outside the heap
+	 */
+	public long getCapacity() {
+		return (long) maxMessages * ROW_SIZE + payloadCapacity;
+	}
+
+	/**
+	 * Discards every message that can be read; messages still being written are kept.  Sequence numbers carry on
+	 * from where they were.
+	 */
+	public synchronized void clear() {
+		while (first < committed) {
+			evictFirst();
+		}
+	}
+
+	private int row(long sequence) {
+		return (int) (sequence % maxMessages) * ROW_SIZE;
+	}
+
+	/**
+	 * Waits until the messages before a sequence number have been written.  Their writers do not need the lock.
+	 */
+	private void awaitCommitted(long sequence) {
+		// The wait is normally a payload copy long, so spin briefly before giving up the processor
+		for (int spins = 0; committed < sequence; spins++) {
+			if (spins >= AWAIT_SPINS) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Evicts the oldest message, releasing its strings
+	 */
+	private void evictFirst() {
+		int row = row(first++);
+		release(rows.getInt(row + TOPIC_ID));
+		release(rows.getInt(row + SESSION_ID));
+	}
+
+	/**
+	 * Returns the id of a string, interning it if it is not already held, and counts one more message using it
+	 */
+	private int intern(String string) {
+		Integer id = ids.get(string);
+		if (id == null) {
+			int free;
+			if (freeCount > 0) {
+				free = freeIds[--freeCount];
+				strings.set(free, string);
+			} else {
+				free = strings.size();
+				strings.add(string);
+				if (free == references.length) {
+					references = Arrays.copyOf(references, free * 2);
+				}
+			}
+			id = Integer.valueOf(free);
+			ids.put(string, id);
+		}
+		int value = id.intValue();
+		references[value]++;
+		return value;
+	}
+
+	/**
+	 * Counts one less message using a string, releasing its id for reuse when none are left
+	 */
+	private void release(int id) {
+		if (--references[id] > 0) {
+			return;
+		}
+		ids.remove(strings.get(id));
+		strings.set(id, null);
+		if (freeCount == freeIds.length) {
+			freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+		}
+		freeIds[freeCount++] = id;
+	}
+
+	/**
+	 * Copies a payload into the ring, wrapping at the end
+	 */
+	private void writePayload(ByteBuffer ring, long start, byte [] payload, int length) {
+		int position = (int) (start % payloadCapacity);
+		int firstPart = Math.min(length, payloadCapacity - position);
+		ring.position(position);
+		ring.put(payload, 0, firstPart);
+		if (firstPart < length) {
+			ring.position(0);
+			ring.put(payload, firstPart, length - firstPart);
+		}
+	}
+
+	/**
+	 * Copies a payload out of the ring, wrapping at the end
+	 */
+	private void readPayload(ByteBuffer ring, long start, byte [] into, int length) {
+		int position = (int) (start % payloadCapacity);
+		int firstPart = Math.min(length, payloadCapacity - position);
+		ring.position(position);
+		ring.get(into, 0, firstPart);
+		if (firstPart < length) {
+			ring.position(0);
+			ring.get(into, firstPart, length - firstPart);
+		}
+	}
+}
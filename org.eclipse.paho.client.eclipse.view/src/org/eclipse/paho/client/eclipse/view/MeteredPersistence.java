@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+/**
+ * Wraps a persistence backend to count the packets it stores and removes, the bytes stored and the time the
+ * client spends waiting on it, so the throughput of each backend can be reported.
+ */
+public class MeteredPersistence implements MqttClientPersistence {
+
+	private final MqttClientPersistence delegate;
+	private final PersistenceType type;
+
+	private final AtomicLong puts = new AtomicLong();
+	private final AtomicLong putBytes = new AtomicLong();
+	private final AtomicLong putNanos = new AtomicLong();
+	private final AtomicLong removes = new AtomicLong();
+	private final AtomicLong removeNanos = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param delegate the backend
+	 * @param type the kind of backend, for reports
+	 */
+	public MeteredPersistence(MqttClientPersistence delegate, PersistenceType type) {
+		this.delegate = delegate;
+		this.type = type;
+	}
+
+	public PersistenceType getType() {
+		return type;
+	}
+
+	public void open(String clientId, String serverURI) throws MqttPersistenceException {
+		delegate.open(clientId, serverURI);
+	}
+
+	public void close() throws MqttPersistenceException {
+		delegate.close();
+	}
+
+	public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+		long start = System.nanoTime();
+		delegate.put(key, persistable);
+		putNanos.addAndGet(System.nanoTime() - start);
+		puts.incrementAndGet();
+		putBytes.addAndGet(persistable.getHeaderLength() + persistable.getPayloadLength());
+	}
+
+	public MqttPersistable get(String key) throws MqttPersistenceException {
+		return delegate.get(key);
+	}
+
+	public void remove(String key) throws MqttPersistenceException {
+		long start = System.nanoTime();
+		delegate.remove(key);
+		removeNanos.addAndGet(System.nanoTime() - start);
+		removes.incrementAndGet();
+	}
+
+	public Enumeration keys() throws MqttPersistenceException {
+		return delegate.keys();
+	}
+
+	public void clear() throws MqttPersistenceException {
+		delegate.clear();
+	}
+
+	public boolean containsKey(String key) throws MqttPersistenceException {
+		return delegate.containsKey(key);
+	}
+
+	/**
+	 * Returns the number of packets stored
+	 */
+	public long getPuts() {
+		return puts.get();
+	}
+
+	/**
+	 * Returns the number of bytes of packets stored
+	 */
+	public long getPutBytes() {
+		return putBytes.get();
+	}
+
+	/**
+	 * Returns the number of packets removed
+	 */
+	public long getRemoves() {
+		return removes.get();
+	}
+
+	/**
+	 * Returns the total time spent storing and removing packets, in nanoseconds
+	 */
+	public long getBusyNanos() {
+		return putNanos.get() + removeNanos.get();
+	}
+
+	/**
+	 * Returns a one-line summary of the totals for the log
+	 */
+	public String toString() {
+		long operations = puts.get() + removes.get();
+		return "Backend: " + type.getLabel() + "  Stored: " + puts.get() + "  Removed: " + removes.get() + "  Bytes: " +
+			putBytes.get() + "  Mean time: " + (operations == 0 ? 0 : getBusyNanos() / operations / 1000) + " us";
+	}
+}
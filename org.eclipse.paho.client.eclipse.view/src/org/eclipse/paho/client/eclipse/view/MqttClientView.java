@@ -13,20 +13,20 @@
 package org.eclipse.paho.client.eclipse.view;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
-import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
-import org.eclipse.paho.client.mqttv3.MqttTopic;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.events.ModifyEvent;
@@ -43,13 +43,19 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.TabFolder;
 import org.eclipse.swt.widgets.TabItem;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.part.ViewPart;
 
@@ -57,30 +63,29 @@ import org.eclipse.ui.part.ViewPart;
  * An MQTT client view.  The top half provides three tabs for Connecting to an MQTT broker, publishing messages,
  * and subscribing on topics.  The bottom half of the view contains a log of all MQTT connections, publishes, and
  * subscription events.
+ *
+ * Connections are held as sessions in the shared {@link SessionRegistry}, one per connection profile.  The tabs
+ * act on the session selected in the Profile drop down, and the log shows the events of every session.
  */
-public class MqttClientView extends ViewPart implements MqttCallback {
+public class MqttClientView extends ViewPart implements SessionListener {
 
 	// The display and parent composite
     private Display display;
 	private Composite parent;
+
+	// The tabs whose controls are built the first time they are selected, and the log's font
+	private TabFolder tabFolder;
+	private TabItem publishTab;
+	private TabItem subscribeTab;
+	private TabItem statisticsTab;
+	private Font logFont;
+
+	// The connection profiles saved in the plug-in preferences, or null when running outside the plug-in
+	private ProfileStore profileStore;
 	
-	// MQTT connection parameters with defaults
-	private static MqttClient mqttClient		= null;
-	private static MqttConnectOptions connOpts	= null;
-	private static String connectAddress 		= "";
-	private static int connectPort 				= 1883;
-	private static String clientId 				= "";
-	private static short keepAlive 				= 30;
-	private static boolean cleanStart 			= true;
-	private static boolean firstConnect 		= true;
-	private static Boolean connected 			= new Boolean(false);
-	private static String tmpMsg 				= null;
-	private static String willTopic 			= "";
-	private static String willMessage 			= "";
-	private static int willQos 					= 0;
-	private static boolean willRetain 			= false;
-	private static String username 				= "";
-	private static String password 				= "";
+	// The shared session registry, and the session the tabs currently act on (UI thread only)
+	private final SessionRegistry registry = SessionRegistry.getDefault();
+	private Session activeSession = null;
 	
 	// Current publish parameters with defaults
 	private String publishTopic = null;
@@ -89,24 +94,37 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	private byte [] payload		= null;
 	private boolean useWill 	= false;
 	
-	// Current subscribe topic and QoS with defaults
-	private String subscribeTopic 	= null;
-	private int subscribeQos 		= 0;
-	
 	// The text boxes to store the values of the MQTT parameters for connecting/publishing/subscribing
 	private Text subscribeTopicValue;
 	private Text publishTopicValue;
 	private Text publishPayloadValue;
 	private Text publishFileName;
+	private Text publishChunkSizeValue;
+	private Text publishCountValue;
+	private Text publishWindowValue;
 	private Text brokerAddressValue;
 	private Text brokerPortValue;
 	private Text clientIdValue;
 	private Text keepAliveValue;
-	private Text messageLog;
+	private Table messageLog;
+	private Table statisticsTable;
+	private Table subscriptionsTable;
+	private Table deliverySummaryTable;
+	private Table deliveryHistogramTable;
+	private Label deliveryGaugeLabel;
+	private Label persistenceRateLabel;
+	private Label loopDiagnosticsLabel;
+	private Label queueDiagnosticsLabel;
+	private Label arrivalDiagnosticsLabel;
 	private Text willTopicValue;
 	private Text willMessageValue;
 	private Text usernameValue;
 	private Text passwordValue;
+	private Text reconnectAttemptsValue;
+	private Text dataDirectoryValue;
+	private Text commitIntervalValue;
+	private Combo persistenceDrop;
+	private Button syncPersistenceCheckBox;
 	
 	// The buttons needed to store the state of MQTT parameters for connecting/publishing/subscribing
 	private Button willCheckBox;
@@ -120,10 +138,113 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	private Group publishGroup;
 	private Group subscribeGroup;
 	
+	// Connection profile drop down selection menu
+	private Combo profileDrop;
+	
 	// Quality of Service drop down selection menus
 	private Combo subscribeQosDrop;
 	private Combo publishQosDrop;
 	private Combo willQosDrop;
+	private Combo loadQosDrop;
+	private Combo payloadFormatDrop;
+	
+	// Load test parameters and the running load generator
+	private Text loadTopicValue;
+	private Text loadRateValue;
+	private Text loadPayloadSizeValue;
+	private Text loadDurationValue;
+	private Text loadThreadsValue;
+	private LoadGenerator loadGenerator = null;
+
+	// Replay parameters and the running replay
+	private Text replayDirectoryValue;
+	private Text replaySpeedValue;
+	private Text replayFromValue;
+	private Text replayToValue;
+	private Text replayStartValue;
+	private Combo replayQosDrop;
+	private ReplayEngine replayEngine = null;
+	
+	// Latency probe parameters and the running probe
+	private Text probeTopicValue;
+	private Text probeRateValue;
+	private Text probeDurationValue;
+	private Text probePayloadSizeValue;
+	private Button [] probeQosCheckBoxes;
+	private volatile LatencyProbe latencyProbe = null;
+
+	// Capture directory and the capture being written
+	private Text captureDirectoryValue;
+	private volatile CaptureWriter captureWriter = null;
+
+	// The pipeline that batches log entries onto the UI thread, and the bounded buffer the log table shows
+	private LogPipeline logPipeline;
+	private final LogBuffer logBuffer = new LogBuffer(ClientConstants.LOG_MAX_RECORDS, ClientConstants.LOG_MAX_BYTES);
+
+	// Off-heap store of the arrived messages, which the log records for them refer to
+	private final MessageStore messageStore = new MessageStore(ClientConstants.STORE_MAX_MESSAGES,
+		ClientConstants.STORE_PAYLOAD_BYTES);
+
+	// Filter bar parameters
+	private Text filterTopicValue;
+	private Text filterPayloadValue;
+	private Button filterRegexCheckBox;
+	private Combo filterQosDrop;
+	private Text filterFromValue;
+	private Text filterToValue;
+	private Label filterCountLabel;
+	private Combo exportFormatDrop;
+
+	// The running export of the log, if any
+	private OperationHandle<Long> logExport = null;
+
+	// Index of the stored messages and the worker that searches it
+	private final LogIndex logIndex = new LogIndex(messageStore);
+	private final ClientWorker filterWorker = new ClientWorker("MQTT Log Filter");
+
+	// Stores, indexes and posts arrived messages to the log pipeline
+	private MessageLogger messageLogger;
+
+	// The active filter, the search running for it, and its matches once found (UI thread only).  The matches are
+	// kept up to date with arriving messages from the first sequence number not yet checked.
+	private LogQuery filterQuery = null;
+	private OperationHandle<long []> filterSearch = null;
+	private LongList filterResults = null;
+	private long filterChecked = 0;
+	private int filterGeneration = 0;
+	private final SimpleDateFormat filterDateFormat = new SimpleDateFormat(ClientConstants.LOG_DATE_PATTERN);
+
+	// The subscriptions shown in the subscriptions table, in topic order, and their QoS
+	private String [] subscriptionTopics = new String[0];
+	private int [] subscriptionQos = new int[0];
+	private boolean subscriptionsConfirmed = true;
+
+	// The topics shown in the statistics table, hottest first, and their rates when last refreshed
+	private StatisticsRow [] statisticsRows = new StatisticsRow[0];
+
+	// The persistence backend last sampled for the statistics tab, and its totals when sampled
+	private MeteredPersistence persistenceSample = null;
+	private long persistenceSampleTime;
+	private long persistenceSamplePuts;
+	private long persistenceSampleBytes;
+
+	// When the diagnostics were last sampled, and the flushed records then
+	private long diagnosticsSampleTime = System.nanoTime();
+	private long diagnosticsSampleRecords;
+
+	// When the event loop latency probe is next due to run (UI thread only)
+	private long loopProbeDue;
+
+	// Renders the payloads of arrived messages in the log, with the row it reads them into (UI thread only)
+	private final PayloadRenderer payloadRenderer = new PayloadRenderer();
+	private final MessageStore.Row logRow = new MessageStore.Row();
+	private PayloadRenderer.Format payloadFormat = PayloadRenderer.Format.AUTO;
+	private int payloadPreviewBytes = ClientConstants.PAYLOAD_PREVIEW_BYTES;
+	private Text payloadPreviewValue;
+
+	// Formatter for log timestamps, reused on the UI thread
+	private final SimpleDateFormat logDateFormat = new SimpleDateFormat(ClientConstants.LOG_DATE_PATTERN);
+	private final Date logDate = new Date();
 
 	/**
 	 *  Constructor
@@ -151,9 +272,10 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		// Create composite with rows
 		SashForm sashform = new SashForm(parent, SWT.VERTICAL);
 		
-		final TabFolder tabFolder = new TabFolder(sashform, SWT.V_SCROLL | SWT.H_SCROLL);
+		tabFolder = new TabFolder(sashform, SWT.V_SCROLL | SWT.H_SCROLL);
 
-	    // Create each tab and set its text, tool tip text, image, and control
+	    // Create each tab and set its text and tool tip text.  Only the connection tab, which is showing, has its
+		// control built now; the others are built by the tab listener when first selected.
 		// Connection tab
 	    TabItem one = new TabItem(tabFolder, SWT.NONE);
 	    one.setText("Connection");
@@ -161,23 +283,310 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	    one.setControl(getConnectionControl(tabFolder));
 
 	    // Publish tab
-	    TabItem two = new TabItem(tabFolder, SWT.NONE);
-	    two.setText("Publish");
-	    two.setToolTipText("Publish messages");
-	    two.setControl(getPublishControl(tabFolder));
+	    publishTab = new TabItem(tabFolder, SWT.NONE);
+	    publishTab.setText("Publish");
+	    publishTab.setToolTipText("Publish messages");
 
 	    // Subscribe tab
-	    TabItem three = new TabItem(tabFolder, SWT.NONE);
-	    three.setText("Subscribe");
-	    three.setToolTipText("Subscribe and unsubscribe to topics");
-	    three.setControl(getSubscribeControl(tabFolder));
+	    subscribeTab = new TabItem(tabFolder, SWT.NONE);
+	    subscribeTab.setText("Subscribe");
+	    subscribeTab.setToolTipText("Subscribe and unsubscribe to topics");
+
+	    // Statistics tab
+	    statisticsTab = new TabItem(tabFolder, SWT.NONE);
+	    statisticsTab.setText("Statistics");
+	    statisticsTab.setToolTipText("Traffic per topic");
+	    tabFolder.addSelectionListener(tabListener);
 		
-		messageLog = new Text(sashform, SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
-	    messageLog.setFont(new Font(display, new FontData("Courier New", 10, SWT.NORMAL)));
+		Composite logComposite = new Composite(sashform, SWT.NONE);
+		GridLayout logLayout = new GridLayout(1, false);
+		logLayout.marginWidth = 0;
+		logLayout.marginHeight = 0;
+		logComposite.setLayout(logLayout);
+		createFilterBar(logComposite);
+
+		messageLog = new Table(logComposite, SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL | SWT.VIRTUAL | SWT.FULL_SELECTION);
+		messageLog.setLayoutData(new GridData(GridData.FILL_BOTH));
+	    logFont = new Font(display, new FontData("Courier New", 10, SWT.NORMAL));
+	    messageLog.setFont(logFont);
+	    messageLog.setHeaderVisible(true);
+	    messageLog.setLinesVisible(true);
+	    String [] columns = {"Time", "Session", "Event", "Detail"};
+	    int [] widths = {170, 120, 200, 600};
+	    for (int i = 0; i < columns.length; i++) {
+	    	TableColumn column = new TableColumn(messageLog, SWT.NONE);
+	    	column.setText(columns[i]);
+	    	column.setWidth(widths[i]);
+	    }
+	    messageLog.addListener(SWT.SetData, logDataListener);
+	    messageLog.addListener(SWT.DefaultSelection, logExpandListener);
+	    logPipeline = new LogPipeline(display, logSink);
+	    messageLogger = new MessageLogger(messageStore, logPipeline);
 
 		sashform.setWeights(new int[]{2,1});
+		
+		// Show events from every session, and start on the profile used last, else on an existing session
+		Activator plugin = Activator.getDefault();
+		profileStore = plugin != null ? plugin.getProfileStore() : null;
+		registry.addListener(this);
+		refreshProfiles();
+		String [] names = registry.getSessionNames();
+		String last = profileStore != null ? profileStore.getLastName() : "";
+		if (last.length() > 0) {
+			selectSession(last);
+		} else if (names.length > 0) {
+			selectSession(names[0]);
+		}
+		display.timerExec(ClientConstants.STATS_REFRESH_INTERVAL, statisticsRefreshTask);
+		loopProbeDue = System.nanoTime() + ClientConstants.LOOP_PROBE_INTERVAL * 1000000L;
+		display.timerExec(ClientConstants.LOOP_PROBE_INTERVAL, loopProbeTask);
+	}
+
+	/**
+	 *  Dispose of the view
+	 */
+	public void dispose() {
+		registry.removeListener(this);
+		stopCapture();
+		if (loadGenerator != null) {
+			loadGenerator.stop();
+		}
+		if (replayEngine != null) {
+			replayEngine.stop();
+		}
+		if (latencyProbe != null) {
+			latencyProbe.stop();
+		}
+		if (filterSearch != null) {
+			filterSearch.cancel(true);
+		}
+		filterWorker.shutdown();
+		if (logExport != null) {
+			logExport.cancel(true);
+		}
+		if (logPipeline != null) {
+			logPipeline.dispose();
+		}
+		if (logFont != null) {
+			logFont.dispose();
+		}
+		super.dispose();
 	}
 
+	// Sink that adds each batch of log records to the log buffer and updates the log table once per batch
+	private LogPipeline.Sink logSink = new LogPipeline.Sink() {
+		public void flush(List<LogRecord> batch) {
+			if (messageLog.isDisposed()) {
+				return;
+			}
+			int visibleRows = Math.max(1, messageLog.getClientArea().height / Math.max(1, messageLog.getItemHeight()));
+			boolean follow = messageLog.getTopIndex() + visibleRows >= getLogSize();
+			long evicted = logBuffer.getEvictedCount();
+			for (int i = 0; i < batch.size(); i++) {
+				logBuffer.add(batch.get(i));
+			}
+			boolean shifted;
+			if (filterQuery == null) {
+				shifted = logBuffer.getEvictedCount() != evicted;
+			} else {
+				shifted = addFilterMatches(batch);
+			}
+			messageLog.setItemCount(getLogSize());
+			if (shifted) {
+				// Rows have shifted, so the visible rows must be materialized again
+				messageLog.clearAll();
+			}
+			if (follow) {
+				messageLog.setTopIndex(getLogSize() - 1);
+			}
+		}
+	};
+
+	// Listener that materializes a row of the virtual log table when it becomes visible
+	private Listener logDataListener = new Listener() {
+		public void handleEvent(Event event) {
+			TableItem item = (TableItem) event.item;
+			LogRecord record = getLogRecord(event.index);
+			if (record == null) {
+				return;
+			}
+			item.setText(0, getDate(record.getTime()));
+			item.setText(1, record.getSource());
+			item.setText(2, record.getEvent());
+			item.setText(3, getDetail(record, payloadPreviewBytes, false));
+		}
+	};
+
+	// Listener that shows the whole of a log row when it is double clicked
+	private Listener logExpandListener = new Listener() {
+		public void handleEvent(Event event) {
+			LogRecord record = getLogRecord(messageLog.getSelectionIndex());
+			if (record != null) {
+				showRecord(record);
+			}
+		}
+	};
+
+	// Listener for payload display setting events
+	private SelectionListener payloadDisplayListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {
+			widgetSelected(e);
+		}
+		public void widgetSelected(SelectionEvent e) {
+			payloadFormat = PayloadRenderer.Format.fromLabel(payloadFormatDrop.getText());
+			try {
+				payloadPreviewBytes = Math.max(1, Integer.parseInt(payloadPreviewValue.getText().trim()));
+			} catch (NumberFormatException ex) {
+				payloadPreviewValue.setText(Integer.toString(payloadPreviewBytes));
+			}
+			// Render the visible rows again with the new settings
+			messageLog.clearAll();
+		}
+	};
+
+	// Listener for filter bar events that take effect at once
+	private SelectionListener filterListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {
+			widgetSelected(e);
+		}
+		public void widgetSelected(SelectionEvent e) {
+			applyFilter();
+		}
+	};
+
+	// Listener for typing in the filter bar, which filters again once typing pauses
+	private ModifyListener filterModifyListener = new ModifyListener() {
+		public void modifyText(ModifyEvent e) {
+			display.timerExec(ClientConstants.FILTER_DELAY, filterTask);
+		}
+	};
+
+	// Listener for clear filter button events
+	private SelectionListener filterClearListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			filterTopicValue.setText("");
+			filterPayloadValue.setText("");
+			filterRegexCheckBox.setSelection(false);
+			filterQosDrop.select(0);
+			filterFromValue.setText("");
+			filterToValue.setText("");
+			applyFilter();
+		}
+	};
+
+	// Listener for export button events
+	private SelectionListener exportListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			exportLog();
+		}
+	};
+
+	// Applies the filter once typing in the filter bar pauses
+	private Runnable filterTask = new Runnable() {
+		public void run() {
+			if (!messageLog.isDisposed()) {
+				applyFilter();
+			}
+		}
+	};
+
+	// Refreshes the statistics and subscriptions tables while they are showing, then re-arms itself
+	private Runnable statisticsRefreshTask = new Runnable() {
+		public void run() {
+			if (messageLog.isDisposed()) {
+				return;
+			}
+			if (statisticsTable != null && statisticsTable.isVisible()) {
+				refreshStatistics();
+			}
+			if (subscriptionsTable != null && subscriptionsTable.isVisible()) {
+				refreshSubscriptions();
+			}
+			display.timerExec(ClientConstants.STATS_REFRESH_INTERVAL, this);
+		}
+	};
+
+	// Records how late the event loop ran this timer, then re-arms itself
+	private Runnable loopProbeTask = new Runnable() {
+		public void run() {
+			if (messageLog.isDisposed()) {
+				return;
+			}
+			long now = System.nanoTime();
+			logPipeline.getMetrics().recordLoopLatency(now - loopProbeDue);
+			loopProbeDue = now + ClientConstants.LOOP_PROBE_INTERVAL * 1000000L;
+			display.timerExec(ClientConstants.LOOP_PROBE_INTERVAL, this);
+		}
+	};
+
+	// Listener that materializes a row of the virtual statistics table when it becomes visible
+	private Listener statisticsDataListener = new Listener() {
+		public void handleEvent(Event event) {
+			TableItem item = (TableItem) event.item;
+			int index = event.index;
+			if (index < 0 || index >= statisticsRows.length) {
+				return;
+			}
+			StatisticsRow row = statisticsRows[index];
+			TopicStats stats = row.stats;
+			item.setText(0, stats.getTopic());
+			item.setText(1, Long.toString(stats.getMessagesIn()));
+			item.setText(2, Long.toString(stats.getMessagesOut()));
+			item.setText(3, Long.toString(stats.getBytesIn()));
+			item.setText(4, Long.toString(stats.getBytesOut()));
+			item.setText(5, String.format("%.1f", row.rate));
+			item.setText(6, stats.getLastSeen() == 0 ? "" : getDate(stats.getLastSeen()));
+			for (int qos = 0; qos < 3; qos++) {
+				item.setText(7 + qos, Long.toString(stats.getMessages(qos)));
+			}
+		}
+	};
+
+	// Listener for statistics reset events
+	private SelectionListener statisticsResetListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			if (activeSession != null) {
+				activeSession.getStats().reset();
+				activeSession.getDeliveryTracker().reset();
+			}
+			logPipeline.getMetrics().reset();
+			refreshStatistics();
+		}
+	};
+
+	// Listener that writes a sample of the pipeline metrics to the log
+	private SelectionListener diagnosticsLogListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			out("", "DIAGNOSTICS", logPipeline.getMetrics().toString());
+		}
+	};
+
+	// Listener that builds the control of a tab the first time it is selected
+	private SelectionListener tabListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			TabItem tab = (TabItem) e.item;
+			if (tab == null || tab.getControl() != null) {
+				return;
+			}
+			if (tab == publishTab) {
+				tab.setControl(getPublishControl(tabFolder));
+			} else if (tab == subscribeTab) {
+				tab.setControl(getSubscribeControl(tabFolder));
+				subscriptionTopics = new String[0];
+				subscriptionQos = new int[0];
+				refreshSubscriptions();
+			} else if (tab == statisticsTab) {
+				tab.setControl(getStatisticsControl(tabFolder));
+				refreshStatistics();
+			}
+		}
+	};
+
 	// Listener for LWT enable/disable events
 	private SelectionListener willListener = new SelectionListener() {
 		public void widgetDefaultSelected(SelectionEvent e) {
@@ -191,13 +600,12 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		}
 	};
 	
-	// Listener for widget selection events
-	private SelectionListener selectListener = new SelectionListener() {
+	// Listener for profile selection events
+	private SelectionListener profileListener = new SelectionListener() {
 		public void widgetDefaultSelected(SelectionEvent e) {
 		}
 		public void widgetSelected(SelectionEvent e) {
-			cleanStart = cleanStartCheckBox.getSelection();
-			updateInfo();
+			selectSession(profileDrop.getText());
 		}
 	};
 	
@@ -230,13 +638,97 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		public void widgetSelected(SelectionEvent e) {
 			publishTopic = publishTopicValue.getText();
 			publishQos = Integer.parseInt(publishQosDrop.getText());
-			String filename = publishFileName.getText();
+			publishFile(new File(publishFileName.getText()));
+		}
+	};
+	
+	// Listener for load test start events
+	private SelectionListener loadStartListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			startLoad();
+		}
+	};
+	
+	// Listener for load test stop events
+	private SelectionListener loadStopListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			if (loadGenerator != null) {
+				loadGenerator.stop();
+			}
+		}
+	};
+	
+	// Listener for replay start events
+	private SelectionListener replayStartListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			startReplay();
+		}
+	};
+	
+	// Listener for replay stop events
+	private SelectionListener replayStopListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			if (replayEngine != null) {
+				replayEngine.stop();
+			}
+		}
+	};
+	
+	// Listener for latency probe start events
+	private SelectionListener probeStartListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			startProbe();
+		}
+	};
+	
+	// Listener for latency probe stop events
+	private SelectionListener probeStopListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			if (latencyProbe != null) {
+				latencyProbe.stop();
+			}
+		}
+	};
+	
+	// Listener for capture start events
+	private SelectionListener captureStartListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			startCapture();
+		}
+	};
+	
+	// Listener for capture stop events
+	private SelectionListener captureStopListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			stopCapture();
+		}
+	};
+	
+	// Listener that records every arrived message to the capture while one is running
+	private SessionAdapter captureListener = new SessionAdapter() {
+		public void messageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+			CaptureWriter writer = captureWriter;
+			if (writer == null) {
+				return;
+			}
 			try {
-				payload = getBytesFromFile(new File(filename));
-			} catch (IOException e1) {
-				e1.printStackTrace();
+				writer.append(session.getName(), topic, message.getQos(), message.isRetained(), message.isDuplicate(),
+					payload);
+			} catch (IOException e) {
+				if (captureWriter == writer) {
+					captureWriter = null;
+					registry.removeListener(this);
+					out(session.getName(), "CAPTURE FAILED", e.getMessage());
+				}
 			}
-			publish();
 		}
 	};
 	
@@ -244,10 +736,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	private SelectionListener subscribeListener = new SelectionListener() {
 		public void widgetDefaultSelected(SelectionEvent e) {}
 		public void widgetSelected(SelectionEvent e) {
-			subscribeTopic = subscribeTopicValue.getText();
-			subscribeQos = Integer.parseInt(subscribeQosDrop.getText());
 			subscribe();
-			publishTopicValue.setText(subscribeTopic);
 		}
 	};
 	
@@ -255,273 +744,989 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	private SelectionListener unsubscribeListener = new SelectionListener() {
 		public void widgetDefaultSelected(SelectionEvent e) {}
 		public void widgetSelected(SelectionEvent e) {
-			subscribeTopic = subscribeTopicValue.getText();
 			unsubscribe();
 		}
 	};
 
+	// Listener for import topics button events
+	private SelectionListener importTopicsListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			FileDialog dialog = new FileDialog(new Shell(), SWT.OPEN);
+			String path = dialog.open();
+			if (path == null) {
+				return;
+			}
+			try {
+				subscribeTopicValue.setText(new String(FilePublisher.readFile(new File(path)), "UTF-8"));
+			} catch (IOException ex) {
+				out("Error importing topics:  " + ex.getMessage());
+			}
+		}
+	};
+
+	// Listener for unsubscribe selected button events
+	private SelectionListener unsubscribeSelectedListener = new SelectionListener() {
+		public void widgetDefaultSelected(SelectionEvent e) {}
+		public void widgetSelected(SelectionEvent e) {
+			if (activeSession == null) {
+				out("Error unsubscribing:  Client is not connected.");
+				return;
+			}
+			int [] selection = subscriptionsTable.getSelectionIndices();
+			if (selection.length == 0) {
+				return;
+			}
+			String [] topics = new String[selection.length];
+			for (int i = 0; i < selection.length; i++) {
+				topics[i] = subscriptionTopics[selection[i]];
+			}
+			activeSession.unsubscribe(topics);
+		}
+	};
+
+	// Listener that materializes a row of the virtual subscriptions table when it becomes visible
+	private Listener subscriptionsDataListener = new Listener() {
+		public void handleEvent(Event event) {
+			TableItem item = (TableItem) event.item;
+			int index = event.index;
+			if (index < 0 || index >= subscriptionTopics.length) {
+				return;
+			}
+			item.setText(0, subscriptionTopics[index]);
+			item.setText(1, Integer.toString(subscriptionQos[index]));
+			item.setText(2, subscriptionsConfirmed ? "Active" : "Unconfirmed");
+		}
+	};
+
 	/**
-	 * A parameter's value has changed, update info
+	 * Makes the named session the one the tabs act on, and shows the profile it last connected with.  A profile
+	 * that has been saved but has no session yet is shown without creating one.
 	 */
-	public void valueChanged(Text text) {
-		updateInfo();
+	private void selectSession(String name) {
+		Session session = registry.getSession(name);
+		ConnectionProfile profile;
+		if (session != null) {
+			profile = session.getProfile();
+		} else {
+			profile = profileStore != null ? profileStore.load(name) : null;
+			if (profile == null) {
+				return;
+			}
+		}
+		activeSession = session;
+		profileDrop.setText(name);
+		if (profile != null) {
+			loadProfile(profile);
+		}
+		refreshStatistics();
 	}
 	
 	/**
-	 * Broker address value has changed, update info
+	 * Takes a sample of the active session's topic statistics and redraws the statistics table, hottest topics first
 	 */
-	private void addressValueChanged(Text text) {
-		updateInfo();
-		firstConnect = true;
+	private void refreshStatistics() {
+		if (statisticsTable == null) {
+			return;
+		}
+		TopicStats [] topics = activeSession != null ?
+			activeSession.getStats().getTopics().toArray(new TopicStats[0]) : new TopicStats[0];
+		StatisticsRow [] rows = new StatisticsRow[topics.length];
+		for (int i = 0; i < topics.length; i++) {
+			rows[i] = new StatisticsRow(topics[i]);
+		}
+		Arrays.sort(rows);
+		statisticsRows = rows;
+		statisticsTable.setItemCount(rows.length);
+		statisticsTable.clearAll();
+		refreshDeliveries();
+		refreshPersistence();
+		refreshDiagnostics();
 	}
+
+	/**
+	 * Shows the pipeline metrics recorded since the last refresh
+	 */
+	private void refreshDiagnostics() {
+		PipelineMetrics metrics = logPipeline.getMetrics();
+		long now = System.nanoTime();
+		double seconds = Math.max(1, now - diagnosticsSampleTime) / 1e9;
+		long records = metrics.getFlushedRecords();
+		LatencyHistogram.Snapshot loop = metrics.getLoopLatency().getIntervalSnapshot();
+		LatencyHistogram.Snapshot flushes = metrics.getFlushTime().getIntervalSnapshot();
+		LatencyHistogram.Snapshot handOffs = metrics.getHandOffTime().getIntervalSnapshot();
+		LatencyHistogram.Snapshot arrivals = metrics.getArrivalTime().getIntervalSnapshot();
+		loopDiagnosticsLabel.setText("UI thread:  Loop latency " + summarize(loop) + "  Flush time " + summarize(flushes) +
+			"  Hand-offs " + String.format("%.0f/s ", handOffs.getCount() / seconds) + summarize(handOffs));
+		queueDiagnosticsLabel.setText("Log queue:  Depth " + metrics.getQueueDepth() + " (max " + metrics.getMaxQueueDepth() +
+			")  Dropped " + metrics.getDropped() + "  " + String.format("%.0f flushes/s  %.0f records/s", flushes.getCount() / seconds, (records -
+			diagnosticsSampleRecords) / seconds) + "  Records/flush " + (flushes.getCount() == 0 ? 0 : (records -
+			diagnosticsSampleRecords) / flushes.getCount()) + " (max " + metrics.getMaxBatchSize() + ")");
+		arrivalDiagnosticsLabel.setText("messageArrived:  " + String.format("%.0f/s  ", arrivals.getCount() / seconds) +
+			"Mean " + LatencyHistogram.millis(arrivals.getMean()) + " ms  " + summarize(arrivals));
+		diagnosticsSampleTime = now;
+		diagnosticsSampleRecords = records;
+	}
+
+	/**
+	 * Returns the 99th percentile and maximum of a latency snapshot in milliseconds
+	 */
+	private static String summarize(LatencyHistogram.Snapshot snapshot) {
+		return "p99 " + LatencyHistogram.millis(snapshot.getPercentile(99)) + " ms  max " +
+			LatencyHistogram.millis(snapshot.getMax()) + " ms";
+	}
+
+	/**
+	 * Shows the throughput of the active session's persistence backend since the last refresh
+	 */
+	private void refreshPersistence() {
+		MeteredPersistence persistence = activeSession != null ? activeSession.getPersistence() : null;
+		if (persistence == null) {
+			persistenceRateLabel.setText("Persistence: not connected");
+			persistenceSample = null;
+			return;
+		}
+		long now = System.nanoTime();
+		long puts = persistence.getPuts();
+		long bytes = persistence.getPutBytes();
+		long removes = persistence.getRemoves();
+		long operations = puts + removes;
+		double seconds = (now - persistenceSampleTime) / 1e9;
+		String rate = "";
+		if (persistenceSample == persistence && seconds > 0) {
+			rate = String.format("  %.0f stores/s  %.1f KB/s", (puts - persistenceSamplePuts) / seconds,
+				(bytes - persistenceSampleBytes) / seconds / 1024);
+		}
+		persistenceRateLabel.setText("Persistence: " + persistence.getType().getLabel() + rate + "  Stored: " + puts +
+			"  Removed: " + removes + "  Mean time: " + (operations == 0 ? 0 : persistence.getBusyNanos() / operations / 1000) + " us");
+		persistenceSample = persistence;
+		persistenceSampleTime = now;
+		persistenceSamplePuts = puts;
+		persistenceSampleBytes = bytes;
+	}
+
+	/**
+	 * Shows the active session's acknowledgement counts, latency percentiles and latency histogram
+	 */
+	private void refreshDeliveries() {
+		if (activeSession == null) {
+			deliveryGaugeLabel.setText("");
+			deliverySummaryTable.removeAll();
+			deliveryHistogramTable.removeAll();
+			return;
+		}
+		DeliveryTracker tracker = activeSession.getDeliveryTracker();
+		LatencyHistogram.Snapshot [] snapshots = new LatencyHistogram.Snapshot[3];
+		long outstanding = 0;
+		for (int qos = 0; qos < 3; qos++) {
+			snapshots[qos] = tracker.getLatency(qos).getSnapshot();
+			outstanding += tracker.getOutstanding(qos);
+		}
+		deliveryGaugeLabel.setText("Awaiting acknowledgement: " + outstanding + "  Oldest: " +
+			LatencyHistogram.millis(tracker.getOldestAge()) + " ms  In flight window: " +
+			activeSession.getPublishWindow().getInFlight() + " of " + activeSession.getPublishWindow().getSize());
+
+		// One summary row per QoS
+		if (deliverySummaryTable.getItemCount() != 3) {
+			deliverySummaryTable.removeAll();
+			for (int qos = 0; qos < 3; qos++) {
+				new TableItem(deliverySummaryTable, SWT.NONE);
+			}
+		}
+		for (int qos = 0; qos < 3; qos++) {
+			TableItem item = deliverySummaryTable.getItem(qos);
+			LatencyHistogram.Snapshot snapshot = snapshots[qos];
+			item.setText(new String [] {Integer.toString(qos), Long.toString(tracker.getSent(qos)),
+				Long.toString(tracker.getCompleted(qos)), Long.toString(tracker.getOutstanding(qos)),
+				Long.toString(tracker.getTimedOut(qos)), LatencyHistogram.millis(snapshot.getPercentile(50)),
+				LatencyHistogram.millis(snapshot.getPercentile(99)), LatencyHistogram.millis(snapshot.getPercentile(99.9)),
+				LatencyHistogram.millis(snapshot.getMax())});
+		}
+
+		// One histogram row per latency range, with a bar scaled to the fullest range
+		long [] bounds = ClientConstants.DELIVERY_HISTOGRAM_BOUNDS;
+		long [][] counts = new long[bounds.length + 1][3];
+		long [] totals = new long[bounds.length + 1];
+		long fullest = 1;
+		for (int qos = 0; qos < 3; qos++) {
+			long below = 0;
+			for (int i = 0; i <= bounds.length; i++) {
+				long upTo = i < bounds.length ? snapshots[qos].getCountAtOrBelow(bounds[i] * 1000000L) :
+					snapshots[qos].getCount();
+				counts[i][qos] = upTo - below;
+				totals[i] += upTo - below;
+				below = upTo;
+			}
+		}
+		for (int i = 0; i < totals.length; i++) {
+			fullest = Math.max(fullest, totals[i]);
+		}
+		if (deliveryHistogramTable.getItemCount() != totals.length) {
+			deliveryHistogramTable.removeAll();
+			for (int i = 0; i < totals.length; i++) {
+				new TableItem(deliveryHistogramTable, SWT.NONE);
+			}
+		}
+		StringBuilder bar = new StringBuilder();
+		for (int i = 0; i < totals.length; i++) {
+			bar.setLength(0);
+			for (long j = totals[i] * ClientConstants.DELIVERY_HISTOGRAM_WIDTH / fullest; j > 0; j--) {
+				bar.append('#');
+			}
+			deliveryHistogramTable.getItem(i).setText(new String [] {
+				i < bounds.length ? "<= " + bounds[i] + " ms" : "> " + bounds[bounds.length - 1] + " ms",
+				Long.toString(counts[i][0]), Long.toString(counts[i][1]), Long.toString(counts[i][2]), bar.toString()});
+		}
+	}
+
+	/**
+	 * Shows the active session's subscriptions in the subscriptions table, if they have changed since last shown
+	 */
+	private void refreshSubscriptions() {
+		Map<String, Integer> subscriptions = activeSession != null ? activeSession.getSubscriptions() :
+			new HashMap<String, Integer>();
+		String [] topics = subscriptions.keySet().toArray(new String[0]);
+		Arrays.sort(topics);
+		int [] qos = new int[topics.length];
+		for (int i = 0; i < topics.length; i++) {
+			Integer level = subscriptions.get(topics[i]);
+			qos[i] = level != null ? level.intValue() : 0;
+		}
+		boolean confirmed = activeSession == null || activeSession.isSubscriptionsConfirmed();
+		if (Arrays.equals(topics, subscriptionTopics) && Arrays.equals(qos, subscriptionQos) &&
+				confirmed == subscriptionsConfirmed) {
+			return;
+		}
+		subscriptionTopics = topics;
+		subscriptionQos = qos;
+		subscriptionsConfirmed = confirmed;
+		subscriptionsTable.deselectAll();
+		subscriptionsTable.setItemCount(topics.length);
+		subscriptionsTable.clearAll();
+	}
+
+	/**
+	 * Fills the profile drop down with the names of the registered sessions and the saved profiles
+	 */
+	private void refreshProfiles() {
+		String text = profileDrop.getText();
+		Set<String> names = new TreeSet<String>(Arrays.asList(registry.getSessionNames()));
+		if (profileStore != null) {
+			names.addAll(Arrays.asList(profileStore.getNames()));
+		}
+		profileDrop.setItems(names.toArray(new String[0]));
+		profileDrop.setText(text);
+	}
 	
 	/**
-	 * Updates the connection information
-	 */
-	private void updateInfo() {
-		connectAddress = brokerAddressValue.getText();
-		willTopic = willTopicValue.getText();
-		willMessage = willMessageValue.getText();
-		clientId = clientIdValue.getText();
-		willQos = Integer.parseInt(willQosDrop.getText());
-		willRetain = willRetainCheckBox.getSelection();
-		username = usernameValue.getText();
-		password = passwordValue.getText();
-		try {
-			connectPort = Integer.parseInt(brokerPortValue.getText());
-		} catch (NumberFormatException e) {
-		}
-		try {
-			keepAlive = Short.parseShort(keepAliveValue.getText());
-		} catch (NumberFormatException e) {
-		}
+	 * Shows a profile's values in the connection tab
+	 */
+	private void loadProfile(ConnectionProfile profile) {
+		brokerAddressValue.setText(profile.getAddress());
+		brokerPortValue.setText(Integer.toString(profile.getPort()));
+		clientIdValue.setText(profile.getClientId());
+		usernameValue.setText(profile.getUsername());
+		passwordValue.setText(profile.getPassword());
+		keepAliveValue.setText(Short.toString(profile.getKeepAlive()));
+		reconnectAttemptsValue.setText(Integer.toString(profile.getReconnectAttempts()));
+		persistenceDrop.select(profile.getPersistence().ordinal());
+		dataDirectoryValue.setText(profile.getDataDirectory());
+		commitIntervalValue.setText(Integer.toString(profile.getCommitInterval()));
+		syncPersistenceCheckBox.setSelection(profile.isSyncPersistence());
+		cleanStartCheckBox.setSelection(profile.isCleanStart());
+		useWill = profile.isUseWill();
+		willCheckBox.setSelection(useWill);
+		willTopicValue.setText(profile.getWillTopic());
+		willMessageValue.setText(profile.getWillMessage());
+		willQosDrop.select(profile.getWillQos());
+		willRetainCheckBox.setSelection(profile.isWillRetain());
+		willTopicValue.setEnabled(useWill);
+		willMessageValue.setEnabled(useWill);
+		willQosDrop.setEnabled(useWill);
+		willRetainCheckBox.setEnabled(useWill);
 	}
 	
 	/**
-	 * Connects to the broker
-	 */
-	private void connect() {
-		// Check if the client is currently connected
-		if (!connected) {
-			// Update connection information
-			updateInfo();
-			// Build connection string
-			String connectString = "tcp://" + connectAddress + ":" + connectPort;
-			if(clientId == null || clientId.length() < 1) {
-				out(getDate() + "Error connecting to " + connectString + ", please enter a valid client ID.");
-				return;
-			}
-			// Instantiate client
+	 * Creates a connection profile from the values in the connection tab.  If no profile name has been entered,
+	 * the profile is named after its client ID and broker.
+	 */
+	private ConnectionProfile createProfile() {
+		ConnectionProfile profile = new ConnectionProfile();
+		profile.setAddress(brokerAddressValue.getText());
+		profile.setClientId(clientIdValue.getText());
+		profile.setUsername(usernameValue.getText());
+		profile.setPassword(passwordValue.getText());
+		profile.setCleanStart(cleanStartCheckBox.getSelection());
+		profile.setUseWill(useWill);
+		profile.setWillTopic(willTopicValue.getText());
+		profile.setWillMessage(willMessageValue.getText());
+		profile.setWillQos(Integer.parseInt(willQosDrop.getText()));
+		profile.setWillRetain(willRetainCheckBox.getSelection());
+		profile.setPersistence(PersistenceType.fromLabel(persistenceDrop.getText()));
+		profile.setDataDirectory(dataDirectoryValue.getText().trim());
+		profile.setSyncPersistence(syncPersistenceCheckBox.getSelection());
+		try {
+			profile.setPort(Integer.parseInt(brokerPortValue.getText()));
+		} catch (NumberFormatException e) {
+		}
+		try {
+			profile.setKeepAlive(Short.parseShort(keepAliveValue.getText()));
+		} catch (NumberFormatException e) {
+		}
+		try {
+			profile.setReconnectAttempts(Integer.parseInt(reconnectAttemptsValue.getText()));
+		} catch (NumberFormatException e) {
+		}
+		try {
+			profile.setCommitInterval(Integer.parseInt(commitIntervalValue.getText()));
+		} catch (NumberFormatException e) {
+		}
+		String name = profileDrop.getText().trim();
+		if (name.length() == 0) {
+			name = profile.getClientId() + "@" + profile.getAddress() + ":" + profile.getPort();
+			profileDrop.setText(name);
+		}
+		profile.setName(name);
+		return profile;
+	}
+	
+	/**
+	 * Connects the profile's session to the broker, creating the session if needed
+	 */
+	private OperationHandle<Void> connect() {
+		ConnectionProfile profile = createProfile();
+		if(profile.getClientId().length() < 1) {
+			out("Error connecting to " + profile.getServerURI() + ", please enter a valid client ID.");
+			return null;
+		}
+		if (profile.isUseWill() && profile.getWillTopic().equals("")) {
+			out("Error connecting:  Please enter a LWT topic.");
+			return null;
+		}
+		if (profileStore != null) {
 			try {
-				if (firstConnect) {
-					mqttClient = new MqttClient(connectString, clientId);
-					mqttClient.setCallback(this);
-					firstConnect = false;
+				profileStore.save(profile);
+			} catch (IOException e) {
+				out("Error saving profile:  " + e.getMessage());
+			}
+		}
+		activeSession = registry.getOrCreateSession(profile.getName());
+		return activeSession.connect(profile);
+	}
+	
+	/**
+	 * Disconnects the active session from the broker
+	 */
+	private OperationHandle<Void> disconnect() {
+		if (activeSession == null) {
+			out("Error disconnecting:  Client was not connected.");
+			return null;
+		}
+		return activeSession.disconnect();
+	}
+	
+	/**
+	 * Publishes a message on the active session
+	 */
+	private OperationHandle<MqttDeliveryToken> publish() {
+		if(publishTopic == null || publishTopic.equals("")) {
+			out("Error publishing:  Please enter a topic to publish on.");
+			return null;
+		}
+		if (activeSession == null) {
+			out("Error publishing:  Client is not connected.");
+			return null;
+		}
+		int count;
+		try {
+			count = Integer.parseInt(publishCountValue.getText().trim());
+		} catch (NumberFormatException e) {
+			out("Error publishing:  Please enter a whole number for the count.");
+			return null;
+		}
+		applyPublishWindow();
+		if (count > 1) {
+			byte [][] payloads = new byte[count][];
+			Arrays.fill(payloads, payload);
+			activeSession.publishBatch(publishTopic, payloads, publishQos, retain);
+			return null;
+		}
+		return activeSession.publish(publishTopic, payload, publishQos, retain);
+	}
+
+	/**
+	 * Sets the size of the active session's publish window from the publish tab
+	 */
+	private void applyPublishWindow() {
+		PublishWindow window = activeSession.getPublishWindow();
+		try {
+			window.setSize(Integer.parseInt(publishWindowValue.getText().trim()));
+		} catch (NumberFormatException e) {
+			publishWindowValue.setText(Integer.toString(window.getSize()));
+		}
+	}
+
+	/**
+	 * Publishes a file, or every file in a directory, on the active session
+	 */
+	private void publishFile(File file) {
+		if (!file.exists()) {
+			out("Error publishing:  File not found.  " + file);
+			return;
+		}
+		if (activeSession == null) {
+			out("Error publishing:  Client is not connected.");
+			return;
+		}
+		applyPublishWindow();
+		int chunkSize = 0;
+		try {
+			chunkSize = Integer.parseInt(publishChunkSizeValue.getText().trim());
+		} catch (NumberFormatException e) {
+			// Leave the chunk size at 0 and publish each file whole
+		}
+		new FilePublisher(activeSession, publishTopic, publishQos, retain, chunkSize).start(file);
+	}
+	
+	/**
+	 * Starts a load test on the active session
+	 */
+	private void startLoad() {
+		if (activeSession == null) {
+			out("Error starting load test:  Client is not connected.");
+			return;
+		}
+		if (loadGenerator != null && loadGenerator.isRunning()) {
+			out("Error starting load test:  A load test is already running.");
+			return;
+		}
+		String topic = loadTopicValue.getText();
+		if (topic.length() == 0) {
+			out("Error starting load test:  Please enter a topic to publish on.");
+			return;
+		}
+		try {
+			loadGenerator = new LoadGenerator(activeSession, topic,
+				Integer.parseInt(loadRateValue.getText()),
+				Integer.parseInt(loadPayloadSizeValue.getText()),
+				Integer.parseInt(loadQosDrop.getText()),
+				Integer.parseInt(loadDurationValue.getText()),
+				Integer.parseInt(loadThreadsValue.getText()));
+		} catch (NumberFormatException e) {
+			out("Error starting load test:  Please enter whole numbers for the rate, size, duration and threads.");
+			return;
+		}
+		loadGenerator.start();
+	}
+	
+	/**
+	 * Starts recording every arrived message, from every session, to a capture
+	 */
+	private void startCapture() {
+		if (captureWriter != null) {
+			out("Error starting capture:  A capture is already running.");
+			return;
+		}
+		String directory = captureDirectoryValue.getText().trim();
+		if (directory.length() == 0) {
+			out("Error starting capture:  Please enter a directory to capture to.");
+			return;
+		}
+		try {
+			captureWriter = new CaptureWriter(new File(directory));
+		} catch (IOException e) {
+			out("", "Error starting capture:  " + e.getMessage(), null);
+			return;
+		}
+		registry.addListener(captureListener);
+		out("", "CAPTURE STARTED", "Directory: \"" + directory + "\"");
+	}
+
+	/**
+	 * Stops the running capture.  The capture is written out and closed in the background.
+	 */
+	private void stopCapture() {
+		final CaptureWriter writer = captureWriter;
+		if (writer == null) {
+			return;
+		}
+		captureWriter = null;
+		registry.removeListener(captureListener);
+		Thread closer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					writer.close();
+					out("", "CAPTURE STOPPED", "Directory: \"" + writer.getDirectory() + "\"  Messages: " +
+						writer.getRecordCount() + "  Bytes: " + writer.getBytesWritten() + "  Segments: " +
+						writer.getSegmentCount());
+				} catch (IOException e) {
+					out("", "CAPTURE FAILED", e.getMessage());
 				}
-			} catch (MqttException e) {
-				out(getDate() + "Failed to connect to broker: " + e.getMessage());
-				e.printStackTrace();
-			}
-			
-			// Set connection options
-			connOpts = new MqttConnectOptions();
-			connOpts.setCleanSession(cleanStart);
-			connOpts.setConnectionTimeout(30);
-			connOpts.setKeepAliveInterval(keepAlive);
-			if (username.length() > 0 && password.length() > 0) {
-				connOpts.setPassword(password.toCharArray());
-				connOpts.setUserName(username);
-			}
-			if (useWill) {
-				if(willTopic == null || willTopic.equals("")) {
-					out("Error connecting:  Please enter a LWT topic.");
-					return;
+			}
+		}, "MQTT Capture Closer");
+		closer.setDaemon(true);
+		closer.start();
+	}
+
+	/**
+	 * Starts replaying a capture on the active session
+	 */
+	private void startReplay() {
+		if (activeSession == null) {
+			out("Error starting replay:  Client is not connected.");
+			return;
+		}
+		if (replayEngine != null && replayEngine.isRunning()) {
+			out("Error starting replay:  A replay is already running.");
+			return;
+		}
+		applyPublishWindow();
+		String directory = replayDirectoryValue.getText().trim();
+		if (directory.length() == 0) {
+			out("Error starting replay:  Please enter the directory of a capture.");
+			return;
+		}
+		int qos = replayQosDrop.getSelectionIndex() - 1;
+		try {
+			replayEngine = new ReplayEngine(activeSession, new File(directory),
+				Double.parseDouble(replaySpeedValue.getText()),
+				replayFromValue.getText(),
+				replayToValue.getText(),
+				qos,
+				Integer.parseInt(replayStartValue.getText()));
+		} catch (NumberFormatException e) {
+			out("Error starting replay:  Please enter a number for the speed and whole seconds for the start.");
+			return;
+		}
+		replayEngine.start();
+	}
+
+	/**
+	 * Starts a latency probe on the active session
+	 */
+	private void startProbe() {
+		if (activeSession == null) {
+			out("Error starting latency probe:  Client is not connected.");
+			return;
+		}
+		if (latencyProbe != null && latencyProbe.isRunning()) {
+			out("Error starting latency probe:  A probe is already running.");
+			return;
+		}
+		String topic = probeTopicValue.getText();
+		if (topic.length() == 0) {
+			out("Error starting latency probe:  Please enter a topic to probe on.");
+			return;
+		}
+		int count = 0;
+		int [] levels = new int[probeQosCheckBoxes.length];
+		for (int i = 0; i < probeQosCheckBoxes.length; i++) {
+			if (probeQosCheckBoxes[i].getSelection()) {
+				levels[count++] = i;
+			}
+		}
+		if (count == 0) {
+			out("Error starting latency probe:  Please select at least one QoS.");
+			return;
+		}
+		int [] qosLevels = new int[count];
+		System.arraycopy(levels, 0, qosLevels, 0, count);
+		try {
+			latencyProbe = new LatencyProbe(activeSession, topic,
+				Integer.parseInt(probeRateValue.getText()),
+				qosLevels,
+				Integer.parseInt(probeDurationValue.getText()),
+				Integer.parseInt(probePayloadSizeValue.getText()));
+		} catch (NumberFormatException e) {
+			out("Error starting latency probe:  Please enter whole numbers for the rate, duration and size.");
+			return;
+		}
+		messageLogger.setLatencyProbe(latencyProbe);
+		latencyProbe.start();
+	}
+	
+	/**
+	 * Subscribes on a topic on the active session
+	 */
+	private OperationHandle<Void> subscribe() {
+		if (activeSession == null) {
+			out("Error subscribing:  Client is not connected.");
+			return null;
+		}
+		SubscriptionList list = getSubscriptionList("Error subscribing:  ");
+		if (list == null) {
+			return null;
+		}
+		if (list.size() == 1 && publishTopicValue != null) {
+			publishTopicValue.setText(list.getTopics()[0]);
+		}
+		return activeSession.subscribe(list.getTopics(), list.getQos());
+	}
+	
+	/**
+	 * Unsubscribes from a topic on the active session
+	 */
+	private OperationHandle<Void> unsubscribe() {
+		if (activeSession == null) {
+			out("Error unsubscribing:  Client is not connected.");
+			return null;
+		}
+		SubscriptionList list = getSubscriptionList("Error unsubscribing:  ");
+		if (list == null) {
+			return null;
+		}
+		return activeSession.unsubscribe(list.getTopics());
+	}
+
+	/**
+	 * Returns the topic filters entered in the subscribe tab, or null after logging why they cannot be used
+	 */
+	private SubscriptionList getSubscriptionList(String error) {
+		SubscriptionList list;
+		try {
+			list = SubscriptionList.parse(subscribeTopicValue.getText(), subscribeQosDrop.getSelectionIndex());
+		} catch (IllegalArgumentException e) {
+			out(error + e.getMessage());
+			return null;
+		}
+		if (list.size() == 0) {
+			out(error + "Please enter a topic.");
+			return null;
+		}
+		return list;
+	}
+
+	/**
+	 * Adds a session created by this or another view to the profile drop down
+	 */
+	public void sessionAdded(Session session) {
+		display.asyncExec(new Runnable() {
+			public void run() {
+				if (!profileDrop.isDisposed()) {
+					refreshProfiles();
 				}
-				connOpts.setWill(mqttClient.getTopic(willTopic), willMessage.getBytes(), willQos, willRetain);
 			}
-			// Attempt to connect
-			try {
-				out(getDate() + "Attempting to connect to broker:  " + connectString);
-				mqttClient.connect(connOpts);
-			
-				connected = true;
-				out(getDate() + "CONNECTED - Client ID: " + clientId);
-			} catch (MqttException e) {
-				out(getDate() + "Failed to connect to broker: " + e.getMessage());
-				e.printStackTrace();
-			}
-		} else {
-			out("Error connecting:  Client is currently connected.");
-		}
+		});
+	}
+
+	/**
+	 * Logs an event from a session
+	 */
+	public void sessionEvent(Session session, String event, String detail) {
+		out(session.getName(), event, detail);
+	}
+
+	/**
+	 * Logs a message that has arrived from the broker
+	 */
+	public void messageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+		messageLogger.messageArrived(session, topic, message, payload);
+	}
+
+	/**
+	 * Called when a publish has completed (an acknowledgement has been received from the broker)
+	 */
+	public void deliveryComplete(Session session, MqttDeliveryToken token) {
+		// The session logs the completion of each publish it logged, with its topic and acknowledgement latency
 	}
 	
 	/**
-	 * Disconnects from the broker
+	 * Returns a hex string representation of the byte array
 	 */
-	private void disconnect() {
-		try {
-			if(connected) {
-				mqttClient.disconnect();
-				out(getDate() + "DISCONNECTED");
-			} else {
-				out(getDate() + "Error disconnecting:  Client was not connected.");
-			}
-		} catch (MqttException e) {
-			out(getDate() + "Error disconnecting:  " + e.getMessage());
-		}
-		connected = false;
+	public static String getHexString(byte[] b) {
+		return PayloadRenderer.toHex(b);
 	}
 	
 	/**
-	 * Publishes a message
+	 * Writes an event about the active session to the log.  Only called on the UI thread.
 	 */
-	private void publish() {
-		
-		if(mqttClient != null) {
-			if(publishTopic == null || publishTopic.equals("")) {
-				out("Error publishing:  Please enter a topic to publish on.");
-				return;
-			}
-			try {
-				MqttTopic topic = mqttClient.getTopic(publishTopic);
-				topic.publish(payload, publishQos, retain);
-				out(getDate() + "PUBLISH");
-				out(" Topic:   \"" + publishTopic + "\"\n" + 
-				    " QOS:     " + publishQos +  "\n" +
-				    " Retain:  " + retain + "\n" +
-				    " Payload: \"" + new String(payload) + "\"");
-			} catch (MqttPersistenceException e) {
-				e.printStackTrace();
-			} catch (NullPointerException e) {
-				e.printStackTrace();
-			} catch (MqttException e) {
-				e.printStackTrace();
-			}
-		}
+	private void out(String event) {
+		out(activeSession != null ? activeSession.getName() : "", event, null);
+	}
+
+	/**
+	 * Writes an event and its detail to the log.  Safe to call from any thread; the record is queued and
+	 * written to the log in batches on the UI thread.
+	 */
+	private void out(String source, String event, String detail) {
+		logPipeline.post(new LogRecord(System.currentTimeMillis(), source, event, detail));
 	}
 	
 	/**
-	 * Subscribes on a topic
+	 * Returns the detail of a log record, rendering the payload of an arrived message with the current payload
+	 * settings.  Only called on the UI thread.
+	 *
+	 * @param limit the maximum number of payload bytes to render, or 0 for all of them
+	 * @param multiLine whether the detail may span lines
 	 */
-	private void subscribe() {
-		if(mqttClient != null) {
-			try {
-				String [] topicArray = {subscribeTopic};
-				int [] qosArray = {subscribeQos};
-				mqttClient.subscribe(topicArray, qosArray);
-				out(getDate() + "SUBSCRIBE");
-				out(" Topic:   \"" + subscribeTopic + "\"\n" + 
-				    " QOS:     " + subscribeQos);
-			} catch (MqttPersistenceException e) {
-				e.printStackTrace();
-			} catch (NullPointerException e) {
-				e.printStackTrace();
-			} catch (MqttException e) {
-				e.printStackTrace();
-			}
+	private String getDetail(LogRecord record, int limit, boolean multiLine) {
+		if (record instanceof MessageRecord) {
+			return ((MessageRecord) record).getDetail(logRow, payloadRenderer, payloadFormat, limit, multiLine);
 		}
+		return record.getDetail();
 	}
-	
+
 	/**
-	 * Unsubscribes from a topic
+	 * Returns the number of rows in the log table, which when filtering is the number of matches found so far
 	 */
-	private void unsubscribe() {
-		if(mqttClient != null) {
-			try {
-				String [] topicArray = {subscribeTopic};
-				mqttClient.unsubscribe(topicArray);
-				out(getDate() + "UNSUBSCRIBE");
-				out(" Topic:   \"" + subscribeTopic + "\"");
-			} catch (MqttPersistenceException e) {
-				e.printStackTrace();
-			} catch (NullPointerException e) {
-				e.printStackTrace();
-			} catch (MqttException e) {
-				e.printStackTrace();
+	private int getLogSize() {
+		if (filterQuery == null) {
+			return logBuffer.size();
+		}
+		return filterResults == null ? 0 : filterResults.size();
+	}
+
+	/**
+	 * Returns the record shown in a row of the log table, or null if there is none.  When filtering, the record is
+	 * read back from the message store, and is null if the store has since evicted it.
+	 */
+	private LogRecord getLogRecord(int index) {
+		if (filterQuery == null) {
+			return index >= 0 && index < logBuffer.size() ? logBuffer.get(index) : null;
+		}
+		if (filterResults == null || index < 0 || index >= filterResults.size()) {
+			return null;
+		}
+		long sequence = filterResults.get(index);
+		if (!messageStore.read(sequence, logRow, false)) {
+			return null;
+		}
+		return new MessageRecord(logRow.getTime(), logRow.getSession(), messageStore, sequence);
+	}
+
+	/**
+	 * Filters the log by the query in the filter bar.  The index is searched on the filter worker, cancelling any
+	 * search still running for an earlier query, and the log table shows the matches once they are found.
+	 */
+	private void applyFilter() {
+		LogQuery query;
+		try {
+			query = getFilterQuery();
+		} catch (IllegalArgumentException e) {
+			filterCountLabel.setText("Invalid filter");
+			filterCountLabel.setToolTipText(e.getMessage());
+			return;
+		}
+		if (filterSearch != null) {
+			filterSearch.cancel(true);
+			filterSearch = null;
+		}
+		final int generation = ++filterGeneration;
+		filterQuery = query;
+		filterResults = null;
+		filterCountLabel.setToolTipText(null);
+		if (query == null) {
+			filterCountLabel.setText("");
+			showLog();
+			return;
+		}
+		filterCountLabel.setText("Searching...");
+		showLog();
+
+		// The search covers at least the messages stored before it was submitted; later ones are checked on arrival
+		final long end = messageStore.getNextSequence();
+		final LogQuery searchQuery = query.copy();
+		filterSearch = filterWorker.submit("FILTER", new Callable<long []>() {
+			public long [] call() throws Exception {
+				final long [] matches = logIndex.search(searchQuery);
+				if (!display.isDisposed()) {
+					display.asyncExec(new Runnable() {
+						public void run() {
+							filterFound(generation, matches, end);
+						}
+					});
+				}
+				return matches;
 			}
+		});
+	}
+
+	/**
+	 * Returns the query in the filter bar, or null if it is empty
+	 *
+	 * @throws IllegalArgumentException if the topic filter, regular expression or a time is invalid
+	 */
+	private LogQuery getFilterQuery() {
+		String topic = filterTopicValue.getText().trim();
+		String payload = filterPayloadValue.getText();
+		int qos = filterQosDrop.getSelectionIndex() - 1;
+		long from = getFilterTime(filterFromValue, false);
+		long to = getFilterTime(filterToValue, true);
+		if (topic.length() == 0 && payload.length() == 0 && qos < 0 && from == 0 && to == 0) {
+			return null;
 		}
+		return new LogQuery(topic.length() > 0 ? topic : null, payload.length() > 0 ? payload : null,
+			filterRegexCheckBox.getSelection(), qos, from, to);
 	}
 
 	/**
-	 * Logs a message that the broker connection has been lost and attempts to reconnect.
+	 * Returns the time entered in a filter bar field, or 0 if it is empty.  Times are entered as the log shows them;
+	 * the milliseconds may be left out, in which case the range takes in the whole second.
+	 *
+	 * @param end whether the time ends the range
 	 */
-	public void connectionLost(Throwable cause) {
-		connected = false;
-		syncOut(getDate() + "CONNECTION LOST!");
-		String connectString = connectAddress + ":" + connectPort;
-		syncOut(getDate() + "Attempting to reconnect to broker:  " + connectString);
+	private long getFilterTime(Text field, boolean end) {
+		String text = field.getText().trim();
+		if (text.length() == 0) {
+			return 0;
+		}
+		if (text.indexOf('.') < 0) {
+			text += end ? ".999" : ".000";
+		}
 		try {
-			mqttClient.connect(connOpts);
-		} catch (Exception e) {
-			syncOut(getDate() + "Failed to reconnect.");
-			syncOut(getDate() + "DISCONNECTED");
+			return filterDateFormat.parse(text).getTime();
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Times must be entered as yyyy/MM/dd HH:mm:ss.SSS");
 		}
-		connected = true;
-		syncOut(getDate() + "CONNECTED - Client ID: " + clientId);
 	}
 
 	/**
-	 * Logs a message that has arrived from the broker
+	 * Shows the matches of a search, unless the filter has changed since it was submitted
 	 */
-	public void messageArrived(MqttTopic topic, MqttMessage message)
-			throws Exception {
-		syncOut(getDate() + "PUBLISH ARRIVED");
-		syncOut(" Topic:   \"" + topic + "\"");
-		syncOut(" Payload: \"" + new String(message.getPayload()) + "\"");
+	private void filterFound(int generation, long [] matches, long end) {
+		if (generation != filterGeneration || messageLog.isDisposed()) {
+			return;
+		}
+		filterSearch = null;
+		filterResults = new LongList(Math.max(16, matches.length));
+		for (int i = 0; i < matches.length; i++) {
+			filterResults.add(matches[i]);
+		}
+		// Check the messages stored while the search ran, which the log sink will not see again
+		filterChecked = filterResults.isEmpty() ? end : Math.max(end, filterResults.get(filterResults.size() - 1) + 1);
+		long next = messageStore.getNextSequence();
+		boolean payload = filterQuery.matchesPayload();
+		for (; filterChecked < next; filterChecked++) {
+			if (messageStore.read(filterChecked, logRow, payload) && filterQuery.matches(logRow)) {
+				filterResults.add(filterChecked);
+			}
+		}
+		showLog();
 	}
 
 	/**
-	 * Logs that a publish has completed (an acknowledgement has been received from the broker
+	 * Adds the arrived messages in a batch of log records that match the filter to its matches, and drops the
+	 * matches the store has evicted
+	 *
+	 * @return whether matches were dropped, shifting the rows of the log table
 	 */
-	public void deliveryComplete(MqttDeliveryToken token) {
-		syncOut(getDate() + "PUBLISH COMPLETE");
+	private boolean addFilterMatches(List<LogRecord> batch) {
+		if (filterResults == null) {
+			return false;
+		}
+		boolean payload = filterQuery.matchesPayload();
+		for (int i = 0; i < batch.size(); i++) {
+			if (!(batch.get(i) instanceof MessageRecord)) {
+				continue;
+			}
+			long sequence = ((MessageRecord) batch.get(i)).getSequence();
+			if (sequence < filterChecked) {
+				continue;
+			}
+			filterChecked = sequence + 1;
+			if (messageStore.read(sequence, logRow, payload) && filterQuery.matches(logRow)) {
+				filterResults.add(sequence);
+			}
+		}
+		int evicted = filterResults.lowerBound(messageStore.getFirstSequence());
+		filterResults.removeFirst(evicted);
+		filterCountLabel.setText(filterResults.size() + " matches");
+		return evicted > 0;
 	}
-	
+
 	/**
-	 * Synchronously writes a message to the log.
+	 * Shows the whole log, or the matches of the filter, in the log table
 	 */
-	private void syncOut(String msg) {
-		tmpMsg = msg;
-		parent.getDisplay().syncExec(new Runnable() {
-			public void run(){
-				out(tmpMsg);
-			}
-		});
+	private void showLog() {
+		if (filterResults != null) {
+			filterCountLabel.setText(filterResults.size() + " matches");
+		}
+		messageLog.setItemCount(getLogSize());
+		messageLog.clearAll();
+		messageLog.setTopIndex(Math.max(0, getLogSize() - 1));
 	}
-	
+
 	/**
-	 * Returns a hex string representation of the byte array
+	 * Exports the arrived messages matching the filter in the background, logging its progress
 	 */
-	public static String getHexString(byte[] b) {
-		  String result = "";
-		  for (int i=0; i < b.length; i++) {
-		    result += Integer.toString( ( b[i] & 0xff ) + 0x100, 16).substring( 1 );
-		  }
-		  return result;
+	private void exportLog() {
+		if (logExport != null && !logExport.isDone()) {
+			out("Error exporting:  An export is already running.");
+			return;
+		}
+		LogQuery query;
+		try {
+			query = getFilterQuery();
+		} catch (IllegalArgumentException e) {
+			out("Error exporting:  " + e.getMessage());
+			return;
+		}
+		LogExporter.Format format = LogExporter.Format.fromLabel(exportFormatDrop.getText());
+		String path;
+		if (format.getExtension() == null) {
+			DirectoryDialog dialog = new DirectoryDialog(new Shell(), SWT.NULL);
+			dialog.setMessage("Choose a directory to write the capture to");
+			path = dialog.open();
+		} else {
+			FileDialog dialog = new FileDialog(new Shell(), SWT.SAVE);
+			dialog.setFilterExtensions(new String[] {format.getExtension()});
+			dialog.setOverwrite(true);
+			path = dialog.open();
+		}
+		if (path == null) {
+			return;
+		}
+		final File target = new File(path);
+		logExport = new LogExporter(messageStore, query, format).start(target, new LogExporter.Listener() {
+			public void exportProgress(long exported, long checked, long total) {
+				out("", "EXPORT", exported + " messages exported, " + checked + " of " + total + " checked");
+			}
+		});
+		logExport.addListener(new OperationHandle.Listener() {
+			public void operationComplete(OperationHandle<?> handle) {
+				Throwable error = handle.getError();
+				if (error == null) {
+					out("", "EXPORT COMPLETE", target.getPath());
+				} else {
+					out("", "EXPORT FAILED", error.getMessage() != null ? error.getMessage() : error.toString());
+				}
+			}
+		});
 	}
-	
+
 	/**
-	 * Writes a message to the log
+	 * Opens a window showing the whole of a log record, with the full payload of an arrived message
 	 */
-	private void out(String message) {
-		messageLog.append(message + "\n");
+	private void showRecord(LogRecord record) {
+		Shell shell = new Shell(parent.getShell(), SWT.SHELL_TRIM);
+		shell.setText(record.getEvent() + " - " + getDate(record.getTime()));
+		shell.setLayout(new FillLayout());
+		Text text = new Text(shell, SWT.MULTI | SWT.READ_ONLY | SWT.V_SCROLL | SWT.H_SCROLL | SWT.BORDER);
+		final Font font = new Font(display, new FontData("Courier New", 10, SWT.NORMAL));
+		text.setFont(font);
+		text.setText(getDetail(record, 0, true));
+		shell.addListener(SWT.Dispose, new Listener() {
+			public void handleEvent(Event event) {
+				font.dispose();
+			}
+		});
+		shell.setSize(700, 500);
+		shell.open();
 	}
-	
+
 	/**
-	 * Return the current date as a formatted string.
+	 * Return the given time as a formatted string.  Only called on the UI thread.
 	 */
-	private String getDate() {
-		System.currentTimeMillis();
-		SimpleDateFormat formatter = new SimpleDateFormat ("yyyy/MM/dd hh:mm:ss.SS");
-		Date currentTime_1 = new Date();
-		String dateString = formatter.format(currentTime_1);
-		return "[" + dateString + "] ";
+	private String getDate(long time) {
+		logDate.setTime(time);
+		return logDateFormat.format(logDate);
 	}
 
 	/**
 	 * Creates the connection composite and populates it with all the widgets needed to establish an MQTT connection
 	 */
 	private Control getConnectionControl(TabFolder tabFolder) {
+		ConnectionProfile defaults = new ConnectionProfile();
 		Composite composite = new Composite(tabFolder, SWT.NONE);
 		composite.setLayout(new FillLayout(SWT.VERTICAL));
 		
@@ -531,12 +1736,19 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 	    connectionGroup.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
 	    connectionGroup.setText("Connection");
 		
+	    // Connection profile
+		Label profileLabel = new Label(connectionGroup, SWT.NULL);
+		profileLabel.setText("Profile: ");
+		profileDrop = new Combo(connectionGroup, SWT.DROP_DOWN | SWT.BORDER);
+		profileDrop.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
+		profileDrop.setToolTipText("Name of the connection profile; select a profile to switch to its session");
+		
 	    // Broker address
 		Label brokerAddressLabel = new Label(connectionGroup, SWT.NULL);
 		brokerAddressLabel.setText("Broker Address: ");
 		brokerAddressValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		brokerAddressValue.setLayoutData(new GridData(120,13));
-		brokerAddressValue.setText(connectAddress);
+		brokerAddressValue.setText(defaults.getAddress());
 		brokerAddressValue.setToolTipText("IP address or URL of the broker");
 		
 		// Broker port
@@ -544,7 +1756,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		brokerPortLabel.setText(   "Broker Port:    ");
 		brokerPortValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		brokerPortValue.setLayoutData(new GridData(30,13));
-		brokerPortValue.setText(Integer.toString(connectPort));
+		brokerPortValue.setText(Integer.toString(defaults.getPort()));
 		brokerPortValue.setToolTipText("Port that the broker is listening on");
 		
 		// Client ID
@@ -552,7 +1764,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		clientIdLabel.setText(     "Client ID:      ");
 		clientIdValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		clientIdValue.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
-		clientIdValue.setText(clientId);
+		clientIdValue.setText(defaults.getClientId());
 		clientIdValue.setToolTipText("Client ID to connect with (must be unique)");
 
 		// Username
@@ -560,7 +1772,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		usernameLabel.setText(     "Username:       ");
 		usernameValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		usernameValue.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
-		usernameValue.setText(username);
+		usernameValue.setText(defaults.getUsername());
 		usernameValue.setToolTipText("Username to connect with (optional)");
 		
 		// Password
@@ -568,7 +1780,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		passwordLabel.setText(     "Password:       ");
 		passwordValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		passwordValue.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
-		passwordValue.setText(password);
+		passwordValue.setText(defaults.getPassword());
 		usernameValue.setToolTipText("Password to connect with (optional)");
 		
 		// Keep alive value in seconds
@@ -576,14 +1788,56 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		keepAliveLabel.setText(    "Keep Alive:     ");
 		keepAliveValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		keepAliveValue.setLayoutData(new GridData(30,13));
-		keepAliveValue.setText(Short.toString(keepAlive));
+		keepAliveValue.setText(Short.toString(defaults.getKeepAlive()));
 		keepAliveValue.setToolTipText("Number of seconds between keep alive pings with the broker");
 
+		// Maximum number of reconnect attempts
+		Label reconnectAttemptsLabel = new Label(connectionGroup, SWT.NULL);
+		reconnectAttemptsLabel.setText("Reconnect Attempts: ");
+		reconnectAttemptsValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
+		reconnectAttemptsValue.setLayoutData(new GridData(30,13));
+		reconnectAttemptsValue.setText(Integer.toString(defaults.getReconnectAttempts()));
+		reconnectAttemptsValue.setToolTipText("Number of times to try reconnecting after the connection is lost (0 to keep trying)");
+
+		// Persistence backend for in-flight QoS 1 and 2 messages
+		Label persistenceLabel = new Label(connectionGroup, SWT.NULL);
+		persistenceLabel.setText("Persistence: ");
+		persistenceDrop = new Combo(connectionGroup, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		PersistenceType [] persistenceTypes = PersistenceType.values();
+		for (int i = 0; i < persistenceTypes.length; i++) {
+			persistenceDrop.add(persistenceTypes[i].getLabel());
+		}
+		persistenceDrop.select(defaults.getPersistence().ordinal());
+		persistenceDrop.setToolTipText("Where the client keeps messages in flight: in memory only, a file per message, or a batched append log");
+
+		// Persistence data directory
+		Label dataDirectoryLabel = new Label(connectionGroup, SWT.NULL);
+		dataDirectoryLabel.setText("Data Directory: ");
+		dataDirectoryValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
+		dataDirectoryValue.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
+		dataDirectoryValue.setText(defaults.getDataDirectory());
+		dataDirectoryValue.setToolTipText("Directory the file and append log persistence write to (empty for the working directory)");
+
+		// Append log commit interval
+		Label commitIntervalLabel = new Label(connectionGroup, SWT.NULL);
+		commitIntervalLabel.setText("Commit Interval: ");
+		commitIntervalValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
+		commitIntervalValue.setLayoutData(new GridData(30,13));
+		commitIntervalValue.setText(Integer.toString(defaults.getCommitInterval()));
+		commitIntervalValue.setToolTipText("Milliseconds the append log gathers changes before writing them as one batch");
+
+		// Append log sync
+		Label syncPersistenceLabel = new Label(connectionGroup, SWT.NULL);
+		syncPersistenceLabel.setText("Sync to Disk:  ");
+		syncPersistenceCheckBox = new Button(connectionGroup, SWT.CHECK);
+		syncPersistenceCheckBox.setSelection(defaults.isSyncPersistence());
+		syncPersistenceCheckBox.setToolTipText("Select to have the append log sync each batch to disk before the client continues");
+
 		// Clean start
 		Label cleanStartLabel = new Label(connectionGroup, SWT.NULL);
 		cleanStartLabel.setText("Clean Start:  ");
 		cleanStartCheckBox = new Button(connectionGroup, SWT.CHECK);
-		cleanStartCheckBox.setSelection(cleanStart);
+		cleanStartCheckBox.setSelection(defaults.isCleanStart());
 		cleanStartCheckBox.setToolTipText("Select to enable a clean start");
 		
 		// LWT checkbox
@@ -598,7 +1852,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		willTopicLabel.setText("LWT Topic: ");
 		willTopicValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		willTopicValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
-		willTopicValue.setText(willTopic);
+		willTopicValue.setText(defaults.getWillTopic());
 		willTopicValue.setEnabled(useWill);
 		willTopicValue.setToolTipText("Topic that the LWT message is publish on");
 		
@@ -607,7 +1861,7 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		willMessageLabel.setText("LWT Message: ");
 		willMessageValue = new Text(connectionGroup, SWT.SINGLE | SWT.BORDER);
 		willMessageValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
-		willMessageValue.setText(willMessage);
+		willMessageValue.setText(defaults.getWillMessage());
 		willMessageValue.setEnabled(useWill);
 		willMessageValue.setToolTipText("LWT message to publish");
 		
@@ -639,33 +1893,11 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		disconnectButton.setText("Disconnect");
 		disconnectButton.setToolTipText("Press to disconnect from the broker");
 		
-		// A modify listeners for modifications to textual parameters
-		ModifyListener listener = new ModifyListener() {
-			public void modifyText(ModifyEvent e) {
-				valueChanged((Text) e.widget);
-			}
-		};
-		
-		// A modify listener for modification to the broker address
-		ModifyListener addressListener = new ModifyListener() {
-			public void modifyText(ModifyEvent e) {
-				addressValueChanged((Text) e.widget);
-			}
-		};
-		
 		// Set listeners
-		brokerAddressValue.addModifyListener(addressListener);
-		brokerPortValue.addModifyListener(addressListener);
-		clientIdValue.addModifyListener(listener);
-		usernameValue.addModifyListener(listener);
-		passwordValue.addModifyListener(listener);
-		keepAliveValue.addModifyListener(listener);
-		cleanStartCheckBox.addSelectionListener(selectListener);
+		profileDrop.addSelectionListener(profileListener);
 		connectButton.addSelectionListener(connectListener);
 		disconnectButton.addSelectionListener(connectListener);
 		willCheckBox.addSelectionListener(willListener);
-		willTopicValue.addModifyListener(listener);
-		willMessageValue.addModifyListener(listener);
 		
 		return composite;
 	}
@@ -712,8 +1944,24 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		publishPayloadValue = new Text(publishGroup, SWT.SINGLE | SWT.BORDER);
 		publishPayloadValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
 		publishPayloadValue.setSize(110, 1);
-		
 		tmpNullLabel = new Label(publishGroup, SWT.NULL);
+
+		// Number of copies of the payload to publish, and the window they are pipelined through
+		Label publishCountLabel = new Label(publishGroup, SWT.NULL);
+		publishCountLabel.setText("Count: ");
+		publishCountValue = new Text(publishGroup, SWT.SINGLE | SWT.BORDER);
+		publishCountValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		publishCountValue.setText("1");
+		publishCountValue.setToolTipText("Number of times to publish the payload, pipelined through the window");
+		tmpNullLabel = new Label(publishGroup, SWT.NULL);
+		Label publishWindowLabel = new Label(publishGroup, SWT.NULL);
+		publishWindowLabel.setText("Window: ");
+		publishWindowValue = new Text(publishGroup, SWT.SINGLE | SWT.BORDER);
+		publishWindowValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		publishWindowValue.setText(Integer.toString(ClientConstants.PUBLISH_WINDOW_SIZE));
+		publishWindowValue.setToolTipText("Maximum number of publishes awaiting acknowledgement at once, for batches, files and replays");
+		tmpNullLabel = new Label(publishGroup, SWT.NULL);
+		
 		tmpNullLabel = new Label(publishGroup, SWT.NULL);
 		
 		Button publishPayloadButton = new Button(publishGroup, SWT.PUSH);
@@ -733,6 +1981,18 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		Button browseButton = new Button(publishGroup, SWT.PUSH);
 		browseButton.setText("Browse");
 		
+		// Chunk size, 0 to publish each file as one message
+		Label publishChunkSizeLabel = new Label(publishGroup, SWT.NULL);
+		publishChunkSizeLabel.setText("Chunk Size: ");
+		publishChunkSizeValue = new Text(publishGroup, SWT.SINGLE | SWT.BORDER);
+		publishChunkSizeValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		publishChunkSizeValue.setText("0");
+		publishChunkSizeValue.setToolTipText("Bytes of the file per message, or 0 to publish the whole file as one message");
+
+		// Browse button for selecting a directory, every file in which is published
+		Button browseDirectoryButton = new Button(publishGroup, SWT.PUSH);
+		browseDirectoryButton.setText("Browse Dir");
+		
 		tmpNullLabel = new Label(publishGroup, SWT.NULL);
 
 		// Publish file button
@@ -743,6 +2003,9 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		// Set selection listeners
 		publishPayloadButton.addSelectionListener(publishListener);
 		publishFileButton.addSelectionListener(publishFileListener);
+		
+		createLoadGroup(composite);
+		createReplayGroup(composite);
 		browseButton.addSelectionListener(new SelectionAdapter() {
 			public void widgetSelected(SelectionEvent e) {
 				FileDialog dialog = new FileDialog(new Shell(), SWT.NULL);
@@ -757,10 +2020,90 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 				}
 			}
 		});
+		browseDirectoryButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				DirectoryDialog dialog = new DirectoryDialog(new Shell(), SWT.NULL);
+				String path = dialog.open();
+				if (path != null) {
+					publishFileName.setText(path);
+				}
+			}
+		});
 		
 		return composite;
 	}
 
+	/**
+	 * Creates the load test group of the publish tab
+	 */
+	private void createLoadGroup(Composite composite) {
+		Group loadGroup = new Group(composite, SWT.NONE);
+		loadGroup.setLayout(new GridLayout(4, false));
+		loadGroup.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
+		loadGroup.setText("Load Test");
+		
+		// Topic pattern
+		Label loadTopicLabel = new Label(loadGroup, SWT.NULL);
+		loadTopicLabel.setText("Topic: ");
+		loadTopicValue = new Text(loadGroup, SWT.SINGLE | SWT.BORDER);
+		loadTopicValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		loadTopicValue.setText("load/{n}");
+		loadTopicValue.setToolTipText("Topic to publish on; {n} is replaced by the message number and {t} by the thread number");
+		
+		// Quality of service
+		Label loadQosLabel = new Label(loadGroup, SWT.NULL);
+		loadQosLabel.setText("QoS: ");
+		loadQosDrop = new Combo(loadGroup, SWT.DROP_DOWN | SWT.BORDER);
+		loadQosDrop.add("0");
+		loadQosDrop.add("1");
+		loadQosDrop.add("2");
+		loadQosDrop.select(0);
+		
+		// Rate
+		Label loadRateLabel = new Label(loadGroup, SWT.NULL);
+		loadRateLabel.setText("Rate: ");
+		loadRateValue = new Text(loadGroup, SWT.SINGLE | SWT.BORDER);
+		loadRateValue.setLayoutData(new GridData(60,13));
+		loadRateValue.setText("1000");
+		loadRateValue.setToolTipText("Total messages per second (0 to publish as fast as possible)");
+		
+		// Payload size
+		Label loadPayloadSizeLabel = new Label(loadGroup, SWT.NULL);
+		loadPayloadSizeLabel.setText("Payload Size: ");
+		loadPayloadSizeValue = new Text(loadGroup, SWT.SINGLE | SWT.BORDER);
+		loadPayloadSizeValue.setLayoutData(new GridData(60,13));
+		loadPayloadSizeValue.setText("100");
+		loadPayloadSizeValue.setToolTipText("Size of each payload in bytes");
+		
+		// Duration
+		Label loadDurationLabel = new Label(loadGroup, SWT.NULL);
+		loadDurationLabel.setText("Duration: ");
+		loadDurationValue = new Text(loadGroup, SWT.SINGLE | SWT.BORDER);
+		loadDurationValue.setLayoutData(new GridData(60,13));
+		loadDurationValue.setText("10");
+		loadDurationValue.setToolTipText("Number of seconds to run for");
+		
+		// Publisher threads
+		Label loadThreadsLabel = new Label(loadGroup, SWT.NULL);
+		loadThreadsLabel.setText("Threads: ");
+		loadThreadsValue = new Text(loadGroup, SWT.SINGLE | SWT.BORDER);
+		loadThreadsValue.setLayoutData(new GridData(60,13));
+		loadThreadsValue.setText("1");
+		loadThreadsValue.setToolTipText("Number of publisher threads");
+		
+		// Start and stop buttons
+		Button loadStartButton = new Button(loadGroup, SWT.PUSH);
+		loadStartButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		loadStartButton.setText("Start Load Test");
+		Button loadStopButton = new Button(loadGroup, SWT.PUSH);
+		loadStopButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		loadStopButton.setText("Stop Load Test");
+		
+		// Set selection listeners
+		loadStartButton.addSelectionListener(loadStartListener);
+		loadStopButton.addSelectionListener(loadStopListener);
+	}
+
 	private void displayFiles(String[] files) {
 		for (int i = 0; files != null && i < files.length; i++) {
 			publishFileName.setText(files[i]);
@@ -781,21 +2124,25 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		subscribeGroup.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
 		subscribeGroup.setText("Subscribe");
 		
-		// Subscribe topic
+		// Subscribe topics
 		Label subscribeTopicLabel = new Label(subscribeGroup, SWT.NULL);
-		subscribeTopicLabel.setText("Topic: ");
-		subscribeTopicValue = new Text(subscribeGroup, SWT.SINGLE | SWT.BORDER);
-		subscribeTopicValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
-		subscribeTopicValue.setSize(80, 1);
+		subscribeTopicLabel.setText("Topics: ");
+		subscribeTopicLabel.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		subscribeTopicValue = new Text(subscribeGroup, SWT.MULTI | SWT.BORDER | SWT.V_SCROLL);
+		GridData topicData = new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL);
+		topicData.heightHint = 60;
+		subscribeTopicValue.setLayoutData(topicData);
+		subscribeTopicValue.setToolTipText("Topic filters, one per line, each optionally followed by its QoS, e.g. sensors/+/temp 1");
 		
 		// Subscribe quality of service
 		Label subscribeQosLabel = new Label(subscribeGroup, SWT.NULL);
 		subscribeQosLabel.setText("QoS: ");
-		subscribeQosDrop = new Combo(subscribeGroup, SWT.DROP_DOWN | SWT.BORDER);
+		subscribeQosDrop = new Combo(subscribeGroup, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
 		subscribeQosDrop.add("0");
 		subscribeQosDrop.add("1");
 		subscribeQosDrop.add("2");
 		subscribeQosDrop.select(0);
+		subscribeQosDrop.setToolTipText("QoS of the topic filters that do not give one");
 		
 		// Subscribe button
 		Button subscribeButton = new Button(subscribeGroup, SWT.PUSH);
@@ -806,32 +2153,492 @@ public class MqttClientView extends ViewPart implements MqttCallback {
 		Button unsubscribeButton = new Button(subscribeGroup, SWT.PUSH);
 		unsubscribeButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
 		unsubscribeButton.setText("Unsubscribe");
-		
+
+		// Import button
+		Button importTopicsButton = new Button(subscribeGroup, SWT.PUSH);
+		importTopicsButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		importTopicsButton.setText("Import");
+		importTopicsButton.setToolTipText("Load topic filters from a file, one per line");
+		@SuppressWarnings("unused")
+		Label tmpNullLabel = new Label(subscribeGroup, SWT.NULL);
+
+		// Active subscriptions
+		Label subscriptionsLabel = new Label(subscribeGroup, SWT.NULL);
+		subscriptionsLabel.setText("Subscribed: ");
+		subscriptionsLabel.setLayoutData(new GridData(GridData.VERTICAL_ALIGN_BEGINNING));
+		subscriptionsTable = new Table(subscribeGroup, SWT.BORDER | SWT.V_SCROLL | SWT.VIRTUAL | SWT.MULTI | SWT.FULL_SELECTION);
+		GridData subscriptionsData = new GridData(GridData.FILL_BOTH);
+		subscriptionsData.heightHint = 80;
+		subscriptionsTable.setLayoutData(subscriptionsData);
+		subscriptionsTable.setHeaderVisible(true);
+		TableColumn topicColumn = new TableColumn(subscriptionsTable, SWT.NONE);
+		topicColumn.setText("Topic");
+		topicColumn.setWidth(300);
+		TableColumn qosColumn = new TableColumn(subscriptionsTable, SWT.NONE);
+		qosColumn.setText("QoS");
+		qosColumn.setWidth(50);
+		TableColumn statusColumn = new TableColumn(subscriptionsTable, SWT.NONE);
+		statusColumn.setText("Status");
+		statusColumn.setWidth(90);
+		subscriptionsTable.addListener(SWT.SetData, subscriptionsDataListener);
+		tmpNullLabel = new Label(subscribeGroup, SWT.NULL);
+		Button unsubscribeSelectedButton = new Button(subscribeGroup, SWT.PUSH);
+		unsubscribeSelectedButton.setText("Unsubscribe Selected");
+
 		// Set selection listeners
 		subscribeButton.addSelectionListener(subscribeListener);
 		unsubscribeButton.addSelectionListener(unsubscribeListener);
+		importTopicsButton.addSelectionListener(importTopicsListener);
+		unsubscribeSelectedButton.addSelectionListener(unsubscribeSelectedListener);
 		
+		createProbeGroup(composite);
+		createPayloadGroup(composite);
+		createCaptureGroup(composite);
+		
+		return composite;
+	}
+	
+	/**
+	 * Creates the payload display group of the subscribe tab
+	 */
+	private void createPayloadGroup(Composite composite) {
+		Group payloadGroup = new Group(composite, SWT.NONE);
+		payloadGroup.setLayout(new GridLayout(2, false));
+		payloadGroup.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
+		payloadGroup.setText("Payload Display");
+
+		// Format
+		Label payloadFormatLabel = new Label(payloadGroup, SWT.NULL);
+		payloadFormatLabel.setText("Format: ");
+		payloadFormatDrop = new Combo(payloadGroup, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		PayloadRenderer.Format [] formats = PayloadRenderer.Format.values();
+		for (int i = 0; i < formats.length; i++) {
+			payloadFormatDrop.add(formats[i].getLabel());
+		}
+		payloadFormatDrop.select(payloadFormat.ordinal());
+		payloadFormatDrop.setToolTipText("How payloads are shown in the log; double click a row to see all of it");
+
+		// Preview length
+		Label payloadPreviewLabel = new Label(payloadGroup, SWT.NULL);
+		payloadPreviewLabel.setText("Preview Bytes: ");
+		payloadPreviewValue = new Text(payloadGroup, SWT.SINGLE | SWT.BORDER);
+		payloadPreviewValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		payloadPreviewValue.setText(Integer.toString(payloadPreviewBytes));
+		payloadPreviewValue.setToolTipText("Number of payload bytes shown in each log row; press Enter to apply");
+
+		// Set selection listeners
+		payloadFormatDrop.addSelectionListener(payloadDisplayListener);
+		payloadPreviewValue.addSelectionListener(payloadDisplayListener);
+	}
+
+	/**
+	 * Creates the capture group of the subscribe tab
+	 */
+	private void createCaptureGroup(Composite composite) {
+		Group captureGroup = new Group(composite, SWT.NONE);
+		captureGroup.setLayout(new GridLayout(3, false));
+		captureGroup.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		captureGroup.setText("Capture");
+
+		// Capture directory
+		Label captureDirectoryLabel = new Label(captureGroup, SWT.NULL);
+		captureDirectoryLabel.setText("Directory: ");
+		captureDirectoryValue = new Text(captureGroup, SWT.SINGLE | SWT.BORDER);
+		captureDirectoryValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		captureDirectoryValue.setToolTipText("Directory to record arrived messages to");
+		Button captureBrowseButton = new Button(captureGroup, SWT.PUSH);
+		captureBrowseButton.setText("Browse");
+
+		// Start and stop buttons
+		Button captureStartButton = new Button(captureGroup, SWT.PUSH);
+		captureStartButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		captureStartButton.setText("Start Capture");
+		Button captureStopButton = new Button(captureGroup, SWT.PUSH);
+		captureStopButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		captureStopButton.setText("Stop Capture");
+
+		// Set selection listeners
+		captureStartButton.addSelectionListener(captureStartListener);
+		captureStopButton.addSelectionListener(captureStopListener);
+		captureBrowseButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				DirectoryDialog dialog = new DirectoryDialog(new Shell(), SWT.NULL);
+				String path = dialog.open();
+				if (path != null) {
+					captureDirectoryValue.setText(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates the statistics composite, a table of the traffic on each topic of the active session
+	 */
+	private Control getStatisticsControl(TabFolder tabFolder) {
+		Composite composite = new Composite(tabFolder, SWT.NONE);
+		composite.setLayout(new GridLayout(1, false));
+
+		statisticsTable = new Table(composite, SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL | SWT.VIRTUAL | SWT.FULL_SELECTION);
+		statisticsTable.setLayoutData(new GridData(GridData.FILL_BOTH));
+		statisticsTable.setHeaderVisible(true);
+		statisticsTable.setLinesVisible(true);
+		String [] columns = {"Topic", "Msgs In", "Msgs Out", "Bytes In", "Bytes Out", "Msgs/s", "Last Seen", "QoS 0",
+			"QoS 1", "QoS 2"};
+		int [] widths = {250, 80, 80, 90, 90, 70, 170, 70, 70, 70};
+		for (int i = 0; i < columns.length; i++) {
+			TableColumn column = new TableColumn(statisticsTable, SWT.NONE);
+			column.setText(columns[i]);
+			column.setWidth(widths[i]);
+		}
+		statisticsTable.addListener(SWT.SetData, statisticsDataListener);
+
+		// Reset button
+		Button statisticsResetButton = new Button(composite, SWT.PUSH);
+		statisticsResetButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		statisticsResetButton.setText("Reset");
+		statisticsResetButton.addSelectionListener(statisticsResetListener);
+
+		createDeliveriesGroup(composite);
+		createDiagnosticsGroup(composite);
+
 		return composite;
 	}
+
+	/**
+	 * Creates the group of the statistics tab showing where time goes between an arrived message and the log
+	 */
+	private void createDiagnosticsGroup(Composite composite) {
+		Group diagnosticsGroup = new Group(composite, SWT.NONE);
+		diagnosticsGroup.setLayout(new GridLayout(2, false));
+		diagnosticsGroup.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		diagnosticsGroup.setText("Diagnostics");
+
+		loopDiagnosticsLabel = new Label(diagnosticsGroup, SWT.NULL);
+		loopDiagnosticsLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		// Log sample button
+		Button diagnosticsLogButton = new Button(diagnosticsGroup, SWT.PUSH);
+		GridData buttonData = new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT);
+		buttonData.verticalSpan = 3;
+		buttonData.verticalAlignment = SWT.TOP;
+		diagnosticsLogButton.setLayoutData(buttonData);
+		diagnosticsLogButton.setText("Log Sample");
+		diagnosticsLogButton.setToolTipText("Write the totals since the last reset to the log");
+		diagnosticsLogButton.addSelectionListener(diagnosticsLogListener);
+
+		queueDiagnosticsLabel = new Label(diagnosticsGroup, SWT.NULL);
+		queueDiagnosticsLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		arrivalDiagnosticsLabel = new Label(diagnosticsGroup, SWT.NULL);
+		arrivalDiagnosticsLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+	}
+
+	/**
+	 * Creates the group of the statistics tab showing how quickly publishes are acknowledged
+	 */
+	private void createDeliveriesGroup(Composite composite) {
+		Group deliveriesGroup = new Group(composite, SWT.NONE);
+		deliveriesGroup.setLayout(new GridLayout(2, true));
+		deliveriesGroup.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		deliveriesGroup.setText("Acknowledgements");
+
+		// Outstanding gauge
+		deliveryGaugeLabel = new Label(deliveriesGroup, SWT.NULL);
+		GridData gaugeData = new GridData(GridData.FILL_HORIZONTAL);
+		gaugeData.horizontalSpan = 2;
+		deliveryGaugeLabel.setLayoutData(gaugeData);
+
+		// Persistence throughput
+		persistenceRateLabel = new Label(deliveriesGroup, SWT.NULL);
+		GridData persistenceData = new GridData(GridData.FILL_HORIZONTAL);
+		persistenceData.horizontalSpan = 2;
+		persistenceRateLabel.setLayoutData(persistenceData);
+
+		// Counts and latency percentiles per QoS
+		deliverySummaryTable = new Table(deliveriesGroup, SWT.BORDER | SWT.FULL_SELECTION);
+		deliverySummaryTable.setLayoutData(new GridData(GridData.FILL_BOTH));
+		deliverySummaryTable.setHeaderVisible(true);
+		deliverySummaryTable.setLinesVisible(true);
+		String [] columns = {"QoS", "Sent", "Acked", "Outstanding", "Timed Out", "p50 ms", "p99 ms", "p99.9 ms", "Max ms"};
+		int [] widths = {40, 70, 70, 80, 70, 70, 70, 70, 70};
+		for (int i = 0; i < columns.length; i++) {
+			TableColumn column = new TableColumn(deliverySummaryTable, SWT.NONE);
+			column.setText(columns[i]);
+			column.setWidth(widths[i]);
+		}
+
+		// Latency histogram
+		deliveryHistogramTable = new Table(deliveriesGroup, SWT.BORDER | SWT.FULL_SELECTION);
+		GridData histogramData = new GridData(GridData.FILL_BOTH);
+		histogramData.heightHint = 120;
+		deliveryHistogramTable.setLayoutData(histogramData);
+		deliveryHistogramTable.setHeaderVisible(true);
+		deliveryHistogramTable.setLinesVisible(true);
+		columns = new String [] {"Ack Latency", "QoS 0", "QoS 1", "QoS 2", "Distribution"};
+		widths = new int [] {90, 60, 60, 60, 200};
+		for (int i = 0; i < columns.length; i++) {
+			TableColumn column = new TableColumn(deliveryHistogramTable, SWT.NONE);
+			column.setText(columns[i]);
+			column.setWidth(widths[i]);
+		}
+	}
+
+	/**
+	 * A topic in the statistics table, with its rate sampled when the table was refreshed.  Sorts by rate, then
+	 * by total messages, highest first.
+	 */
+	private static class StatisticsRow implements Comparable<StatisticsRow> {
+
+		private final TopicStats stats;
+		private final double rate;
+		private final long messages;
+
+		private StatisticsRow(TopicStats stats) {
+			this.stats = stats;
+			this.rate = stats.getRate();
+			this.messages = stats.getMessagesIn() + stats.getMessagesOut();
+		}
+
+		public int compareTo(StatisticsRow other) {
+			if (rate != other.rate) {
+				return rate > other.rate ? -1 : 1;
+			}
+			return messages > other.messages ? -1 : messages < other.messages ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Creates the bar of fields that filter the log
+	 */
+	private void createFilterBar(Composite composite) {
+		Composite filterBar = new Composite(composite, SWT.NONE);
+		filterBar.setLayout(new GridLayout(15, false));
+		filterBar.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		// Topic filter
+		Label filterTopicLabel = new Label(filterBar, SWT.NULL);
+		filterTopicLabel.setText("Topic: ");
+		filterTopicValue = new Text(filterBar, SWT.SINGLE | SWT.BORDER);
+		filterTopicValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		filterTopicValue.setToolTipText("Topic filter to match, e.g. sensors/+/temperature or sensors/#");
+
+		// Payload text
+		Label filterPayloadLabel = new Label(filterBar, SWT.NULL);
+		filterPayloadLabel.setText("Payload: ");
+		filterPayloadValue = new Text(filterBar, SWT.SINGLE | SWT.BORDER);
+		filterPayloadValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		filterPayloadValue.setToolTipText("Text the payload must contain");
+		filterRegexCheckBox = new Button(filterBar, SWT.CHECK);
+		filterRegexCheckBox.setText("Regex");
+		filterRegexCheckBox.setToolTipText("Match the payload against a regular expression");
+
+		// QoS
+		Label filterQosLabel = new Label(filterBar, SWT.NULL);
+		filterQosLabel.setText("QoS: ");
+		filterQosDrop = new Combo(filterBar, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		filterQosDrop.add("Any");
+		filterQosDrop.add("0");
+		filterQosDrop.add("1");
+		filterQosDrop.add("2");
+		filterQosDrop.select(0);
+
+		// Time range
+		Label filterFromLabel = new Label(filterBar, SWT.NULL);
+		filterFromLabel.setText("From: ");
+		filterFromValue = new Text(filterBar, SWT.SINGLE | SWT.BORDER);
+		filterFromValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		filterFromValue.setToolTipText("Earliest arrival time, as yyyy/MM/dd HH:mm:ss with optional .SSS");
+		Label filterToLabel = new Label(filterBar, SWT.NULL);
+		filterToLabel.setText("To: ");
+		filterToValue = new Text(filterBar, SWT.SINGLE | SWT.BORDER);
+		filterToValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		filterToValue.setToolTipText("Latest arrival time, as yyyy/MM/dd HH:mm:ss with optional .SSS");
+
+		// Clear button, export format and button, and match count
+		Button filterClearButton = new Button(filterBar, SWT.PUSH);
+		filterClearButton.setText("Clear");
+		exportFormatDrop = new Combo(filterBar, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		LogExporter.Format [] formats = LogExporter.Format.values();
+		for (int i = 0; i < formats.length; i++) {
+			exportFormatDrop.add(formats[i].getLabel());
+		}
+		exportFormatDrop.select(0);
+		exportFormatDrop.setToolTipText("Format to export the messages shown in");
+		Button exportButton = new Button(filterBar, SWT.PUSH);
+		exportButton.setText("Export");
+		exportButton.setToolTipText("Export the arrived messages matching the filter");
+		filterCountLabel = new Label(filterBar, SWT.NULL);
+		GridData countData = new GridData();
+		countData.widthHint = 100;
+		filterCountLabel.setLayoutData(countData);
+
+		// Set listeners
+		Text [] fields = {filterTopicValue, filterPayloadValue, filterFromValue, filterToValue};
+		for (int i = 0; i < fields.length; i++) {
+			fields[i].addModifyListener(filterModifyListener);
+			fields[i].addSelectionListener(filterListener);
+		}
+		filterRegexCheckBox.addSelectionListener(filterListener);
+		filterQosDrop.addSelectionListener(filterListener);
+		filterClearButton.addSelectionListener(filterClearListener);
+		exportButton.addSelectionListener(exportListener);
+	}
+
+	/**
+	 * Creates the capture replay group of the publish tab
+	 */
+	private void createReplayGroup(Composite composite) {
+		Group replayGroup = new Group(composite, SWT.NONE);
+		replayGroup.setLayout(new GridLayout(4, false));
+		replayGroup.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL | GridData.VERTICAL_ALIGN_FILL));
+		replayGroup.setText("Replay Capture");
+
+		// Capture directory
+		Label replayDirectoryLabel = new Label(replayGroup, SWT.NULL);
+		replayDirectoryLabel.setText("Directory: ");
+		replayDirectoryValue = new Text(replayGroup, SWT.SINGLE | SWT.BORDER);
+		replayDirectoryValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		replayDirectoryValue.setToolTipText("Directory of the capture to replay");
+		Button replayBrowseButton = new Button(replayGroup, SWT.PUSH);
+		replayBrowseButton.setText("Browse");
+		@SuppressWarnings("unused")
+		Label tmpNullLabel = new Label(replayGroup, SWT.NULL);
+
+		// Speed
+		Label replaySpeedLabel = new Label(replayGroup, SWT.NULL);
+		replaySpeedLabel.setText("Speed: ");
+		replaySpeedValue = new Text(replayGroup, SWT.SINGLE | SWT.BORDER);
+		replaySpeedValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		replaySpeedValue.setText("1");
+		replaySpeedValue.setToolTipText("Multiple of the captured timing, e.g. 10 for ten times faster, or 0 for as fast as possible");
+
+		// QoS
+		Label replayQosLabel = new Label(replayGroup, SWT.NULL);
+		replayQosLabel.setText("QoS: ");
+		replayQosDrop = new Combo(replayGroup, SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		replayQosDrop.add("Captured");
+		replayQosDrop.add("0");
+		replayQosDrop.add("1");
+		replayQosDrop.add("2");
+		replayQosDrop.select(0);
+
+		// Topic remapping
+		Label replayFromLabel = new Label(replayGroup, SWT.NULL);
+		replayFromLabel.setText("Topic Prefix: ");
+		replayFromValue = new Text(replayGroup, SWT.SINGLE | SWT.BORDER);
+		replayFromValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		replayFromValue.setToolTipText("Prefix of the captured topics to replace");
+		Label replayToLabel = new Label(replayGroup, SWT.NULL);
+		replayToLabel.setText("Replace With: ");
+		replayToValue = new Text(replayGroup, SWT.SINGLE | SWT.BORDER);
+		replayToValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		replayToValue.setToolTipText("Prefix to publish the replaced topics with");
+
+		// Start offset
+		Label replayStartLabel = new Label(replayGroup, SWT.NULL);
+		replayStartLabel.setText("Start At (s): ");
+		replayStartValue = new Text(replayGroup, SWT.SINGLE | SWT.BORDER);
+		replayStartValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		replayStartValue.setText("0");
+		replayStartValue.setToolTipText("Number of seconds into the capture to start replaying from");
+		tmpNullLabel = new Label(replayGroup, SWT.NULL);
+		tmpNullLabel = new Label(replayGroup, SWT.NULL);
+
+		// Start and stop buttons
+		Button replayStartButton = new Button(replayGroup, SWT.PUSH);
+		replayStartButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		replayStartButton.setText("Start Replay");
+		Button replayStopButton = new Button(replayGroup, SWT.PUSH);
+		replayStopButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		replayStopButton.setText("Stop Replay");
+
+		// Set selection listeners
+		replayStartButton.addSelectionListener(replayStartListener);
+		replayStopButton.addSelectionListener(replayStopListener);
+		replayBrowseButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				DirectoryDialog dialog = new DirectoryDialog(new Shell(), SWT.NULL);
+				String path = dialog.open();
+				if (path != null) {
+					replayDirectoryValue.setText(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates the latency probe group of the subscribe tab
+	 */
+	private void createProbeGroup(Composite composite) {
+		Group probeGroup = new Group(composite, SWT.NONE);
+		probeGroup.setLayout(new GridLayout(4, false));
+		probeGroup.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		probeGroup.setText("Latency Probe");
+		
+		// Probe topic
+		Label probeTopicLabel = new Label(probeGroup, SWT.NULL);
+		probeTopicLabel.setText("Topic: ");
+		probeTopicValue = new Text(probeGroup, SWT.SINGLE | SWT.BORDER);
+		probeTopicValue.setLayoutData(new GridData(GridData.FILL_HORIZONTAL | GridData.VERTICAL_ALIGN_FILL));
+		probeTopicValue.setText("probe/latency");
+		probeTopicValue.setToolTipText("Topic to publish probe messages on and subscribe to");
+		
+		// Quality of service levels to probe
+		Label probeQosLabel = new Label(probeGroup, SWT.NULL);
+		probeQosLabel.setText("QoS: ");
+		Composite probeQosComposite = new Composite(probeGroup, SWT.NONE);
+		probeQosComposite.setLayout(new FillLayout(SWT.HORIZONTAL));
+		probeQosCheckBoxes = new Button[3];
+		for (int i = 0; i < probeQosCheckBoxes.length; i++) {
+			probeQosCheckBoxes[i] = new Button(probeQosComposite, SWT.CHECK);
+			probeQosCheckBoxes[i].setText(Integer.toString(i));
+			probeQosCheckBoxes[i].setSelection(true);
+		}
+		
+		// Rate
+		Label probeRateLabel = new Label(probeGroup, SWT.NULL);
+		probeRateLabel.setText("Rate: ");
+		probeRateValue = new Text(probeGroup, SWT.SINGLE | SWT.BORDER);
+		probeRateValue.setLayoutData(new GridData(60,13));
+		probeRateValue.setText("100");
+		probeRateValue.setToolTipText("Probe messages per second, spread across the selected QoS levels");
+		
+		// Duration
+		Label probeDurationLabel = new Label(probeGroup, SWT.NULL);
+		probeDurationLabel.setText("Duration: ");
+		probeDurationValue = new Text(probeGroup, SWT.SINGLE | SWT.BORDER);
+		probeDurationValue.setLayoutData(new GridData(60,13));
+		probeDurationValue.setText("30");
+		probeDurationValue.setToolTipText("Number of seconds to run for");
+		
+		// Payload size
+		Label probePayloadSizeLabel = new Label(probeGroup, SWT.NULL);
+		probePayloadSizeLabel.setText("Payload Size: ");
+		probePayloadSizeValue = new Text(probeGroup, SWT.SINGLE | SWT.BORDER);
+		probePayloadSizeValue.setLayoutData(new GridData(60,13));
+		probePayloadSizeValue.setText("64");
+		probePayloadSizeValue.setToolTipText("Size of each probe payload in bytes (at least 33)");
+		
+		@SuppressWarnings("unused")
+		Label tmpNullLabel = new Label(probeGroup, SWT.NULL);
+		tmpNullLabel = new Label(probeGroup, SWT.NULL);
+		
+		// Start and stop buttons
+		Button probeStartButton = new Button(probeGroup, SWT.PUSH);
+		probeStartButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		probeStartButton.setText("Start Probe");
+		Button probeStopButton = new Button(probeGroup, SWT.PUSH);
+		probeStopButton.setLayoutData(new GridData(ClientConstants.BUTTON_WIDTH, ClientConstants.BUTTON_HEIGHT));
+		probeStopButton.setText("Stop Probe");
+		
+		// Set selection listeners
+		probeStartButton.addSelectionListener(probeStartListener);
+		probeStopButton.addSelectionListener(probeStopListener);
+	}
 	
 	/**
-	 * Return the bytes from a file
+	 * Return the bytes from a file that is small enough to publish as one message
 	 */
 	public static byte[] getBytesFromFile(File file) throws IOException {
-		InputStream is = new FileInputStream(file);
-        long length = file.length();
-        byte[] bytes = new byte[(int)length];
-    
-        // Read in file
-        int offset = 0;
-        int numRead = 0;
-        while ((offset < bytes.length) && (numRead=is.read(bytes, offset, bytes.length-offset)) >= 0) {
-        	offset += numRead;
-        }
-    
-        // Close stream
-        is.close();
-        
-        return bytes;
-    }
+		return FilePublisher.readFile(file);
+	}
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A handle to a client operation (connect, publish, subscribe...) running on a {@link ClientWorker}.  The
+ * handle can be waited on like any future, and listeners can be added to be told when the operation completes.
+ */
+public class OperationHandle<V> extends FutureTask<V> {
+
+	/**
+	 * Notified when an operation completes, successfully or not.  Called on the thread that completed the
+	 * operation, or on the caller's thread if the operation had already completed.
+	 */
+	public interface Listener {
+		void operationComplete(OperationHandle<?> handle);
+	}
+
+	private final String name;
+	private final List<Listener> listeners = new ArrayList<Listener>();
+	private boolean notified = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name a short name for the operation, e.g. CONNECT
+	 * @param operation the operation to run
+	 */
+	public OperationHandle(String name, Callable<V> operation) {
+		super(operation);
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of the operation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Adds a listener to be notified when the operation completes.  If the operation has already completed
+	 * the listener is notified immediately.
+	 */
+	public void addListener(Listener listener) {
+		synchronized (listeners) {
+			if (!notified) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.operationComplete(this);
+	}
+
+	/**
+	 * Returns true if the operation completed without throwing an exception or being cancelled
+	 */
+	public boolean isSucceeded() {
+		return isDone() && !isCancelled() && getError() == null;
+	}
+
+	/**
+	 * Returns the exception thrown by the operation, or null if it has not completed or did not fail
+	 */
+	public Throwable getError() {
+		if (!isDone()) {
+			return null;
+		}
+		try {
+			get();
+			return null;
+		} catch (CancellationException e) {
+			return e;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return e;
+		}
+	}
+
+	/**
+	 * Fails the operation without running it, e.g. because the worker has been shut down
+	 */
+	protected void reject(Throwable cause) {
+		setException(cause);
+	}
+
+	protected void done() {
+		Listener[] toNotify;
+		synchronized (listeners) {
+			notified = true;
+			toNotify = listeners.toArray(new Listener[listeners.size()]);
+			listeners.clear();
+		}
+		for (int i = 0; i < toNotify.length; i++) {
+			toNotify[i].operationComplete(this);
+		}
+	}
+}
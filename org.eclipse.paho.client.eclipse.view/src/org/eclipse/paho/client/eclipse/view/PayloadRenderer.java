@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Renders message payloads as text for display.  Only as many bytes as the caller asks for are decoded, so
+ * showing the start of a large payload costs the same as showing a small one.  Hex is produced from a lookup
+ * table and text is decoded into buffers that are reused from call to call.
+ *
+ * A renderer is not thread safe; each thread that renders payloads needs its own.
+ */
+public class PayloadRenderer {
+
+	/**
+	 * The ways a payload can be rendered
+	 */
+	public enum Format {
+		AUTO("Auto"), UTF8("UTF-8"), HEX("Hex"), HEX_DUMP("Hex Dump"), JSON("JSON");
+
+		private final String label;
+
+		private Format(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * Returns the format with the given label, or AUTO if there is none
+		 */
+		public static Format fromLabel(String label) {
+			Format [] formats = values();
+			for (int i = 0; i < formats.length; i++) {
+				if (formats[i].label.equals(label)) {
+					return formats[i];
+				}
+			}
+			return AUTO;
+		}
+	}
+
+	// The two hex digits of each byte value
+	private static final char [] HEX_PAIRS = new char[512];
+	static {
+		char [] digits = "0123456789abcdef".toCharArray();
+		for (int i = 0; i < 256; i++) {
+			HEX_PAIRS[2 * i] = digits[i >>> 4];
+			HEX_PAIRS[2 * i + 1] = digits[i & 0xf];
+		}
+	}
+
+	// Number of bytes per line of a hex dump
+	private static final int DUMP_WIDTH = 16;
+
+	private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final StringBuilder text = new StringBuilder(256);
+	private CharBuffer chars = CharBuffer.allocate(256);
+
+	/**
+	 * Renders the start of a payload
+	 *
+	 * @param payload the buffer holding the payload
+	 * @param length the number of bytes of the payload in the buffer
+	 * @param total the full length of the payload, which may be more than the buffer holds
+	 * @param format how to render the payload
+	 * @param limit the maximum number of bytes to render, or 0 to render all of them
+	 * @param multiLine whether the text may span lines (hex dumps and indented JSON need it)
+	 */
+	public String render(byte [] payload, int length, int total, Format format, int limit, boolean multiLine) {
+		int count = limit > 0 ? Math.min(length, limit) : length;
+		if (format == Format.AUTO) {
+			format = detect(payload, count);
+			if (format == Format.HEX && multiLine) {
+				format = Format.HEX_DUMP;
+			}
+		}
+		text.setLength(0);
+		switch (format) {
+		case HEX:
+			appendHex(payload, count, true);
+			break;
+		case HEX_DUMP:
+			if (multiLine) {
+				appendHexDump(payload, count);
+			} else {
+				appendHex(payload, count, true);
+			}
+			break;
+		case JSON:
+			appendJson(decode(payload, count), multiLine);
+			break;
+		default:
+			text.append(decode(payload, count));
+			break;
+		}
+		if (count < total) {
+			text.append(multiLine ? "\n" : " ").append("... (").append(total).append(" bytes)");
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Guesses how to render a payload from its first bytes: as JSON if it is text starting with { or [, as text if
+	 * it is otherwise valid UTF-8 without control characters, and as hex if not.  AUTO renders multi-line hex as
+	 * a hex dump.
+	 */
+	public static Format detect(byte [] payload, int length) {
+		int first = -1;
+		int i = 0;
+		while (i < length) {
+			int b = payload[i] & 0xff;
+			int continuation;
+			if (b < 0x80) {
+				if (b < 0x20 && b != '\t' && b != '\r' && b != '\n') {
+					return Format.HEX;
+				}
+				if (first < 0 && b > ' ') {
+					first = b;
+				}
+				continuation = 0;
+			} else if (b >= 0xc2 && b <= 0xdf) {
+				continuation = 1;
+			} else if (b >= 0xe0 && b <= 0xef) {
+				continuation = 2;
+			} else if (b >= 0xf0 && b <= 0xf4) {
+				continuation = 3;
+			} else {
+				return Format.HEX;
+			}
+			for (int j = 1; j <= continuation && i + j < length; j++) {
+				if ((payload[i + j] & 0xc0) != 0x80) {
+					return Format.HEX;
+				}
+			}
+			i += continuation + 1;
+		}
+		return first == '{' || first == '[' ? Format.JSON : Format.UTF8;
+	}
+
+	/**
+	 * Returns the bytes as a string of hex digits, two per byte
+	 */
+	public static String toHex(byte [] bytes) {
+		char [] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xff;
+			hex[2 * i] = HEX_PAIRS[2 * b];
+			hex[2 * i + 1] = HEX_PAIRS[2 * b + 1];
+		}
+		return new String(hex);
+	}
+
+	private void appendHex(byte [] payload, int count, boolean spaced) {
+		for (int i = 0; i < count; i++) {
+			if (spaced && i > 0) {
+				text.append(' ');
+			}
+			int b = payload[i] & 0xff;
+			text.append(HEX_PAIRS[2 * b]).append(HEX_PAIRS[2 * b + 1]);
+		}
+	}
+
+	/**
+	 * Appends lines of an offset, sixteen bytes in hex and the same bytes as ASCII
+	 */
+	private void appendHexDump(byte [] payload, int count) {
+		for (int line = 0; line < count; line += DUMP_WIDTH) {
+			if (line > 0) {
+				text.append('\n');
+			}
+			for (int shift = 28; shift >= 0; shift -= 4) {
+				text.append(HEX_PAIRS[2 * ((line >>> shift) & 0xf) + 1]);
+			}
+			text.append("  ");
+			for (int i = line; i < line + DUMP_WIDTH; i++) {
+				if (i < count) {
+					int b = payload[i] & 0xff;
+					text.append(HEX_PAIRS[2 * b]).append(HEX_PAIRS[2 * b + 1]).append(' ');
+				} else {
+					text.append("   ");
+				}
+			}
+			text.append(" |");
+			for (int i = line; i < line + DUMP_WIDTH && i < count; i++) {
+				int b = payload[i] & 0xff;
+				text.append(b >= 0x20 && b < 0x7f ? (char) b : '.');
+			}
+			text.append('|');
+		}
+	}
+
+	/**
+	 * Re-indents JSON text, one value per line if multi-line.  The text is not validated, so truncated or invalid
+	 * JSON is rendered as well as it can be.
+	 */
+	private void appendJson(CharBuffer json, boolean multiLine) {
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		int length = json.remaining();
+		for (int i = 0; i < length; i++) {
+			char c = json.get(i);
+			if (inString) {
+				text.append(c);
+				if (escaped) {
+					escaped = false;
+				} else if (c == '\\') {
+					escaped = true;
+				} else if (c == '"') {
+					inString = false;
+				}
+				continue;
+			}
+			switch (c) {
+			case '"':
+				inString = true;
+				text.append(c);
+				break;
+			case '{':
+			case '[':
+				text.append(c);
+				int next = i + 1;
+				while (next < length && Character.isWhitespace(json.get(next))) {
+					next++;
+				}
+				if (next < length && (json.get(next) == '}' || json.get(next) == ']')) {
+					// Keep empty objects and arrays on one line
+					text.append(json.get(next));
+					i = next;
+				} else {
+					depth++;
+					newLine(depth, multiLine);
+				}
+				break;
+			case '}':
+			case ']':
+				depth = Math.max(0, depth - 1);
+				newLine(depth, multiLine);
+				text.append(c);
+				break;
+			case ',':
+				text.append(c);
+				if (multiLine) {
+					newLine(depth, true);
+				} else {
+					text.append(' ');
+				}
+				break;
+			case ':':
+				text.append(": ");
+				break;
+			default:
+				if (!Character.isWhitespace(c)) {
+					text.append(c);
+				}
+				break;
+			}
+		}
+	}
+
+	private void newLine(int depth, boolean multiLine) {
+		if (multiLine) {
+			text.append('\n');
+			for (int i = 0; i < depth; i++) {
+				text.append("  ");
+			}
+		}
+	}
+
+	/**
+	 * Decodes the first bytes of a payload as UTF-8 into the reused character buffer.  A character cut off by the
+	 * limit is left out rather than shown as an error.
+	 */
+	private CharBuffer decode(byte [] payload, int count) {
+		int end = count;
+		int start = end;
+		while (start > 0 && start > end - 4 && (payload[start - 1] & 0xc0) == 0x80) {
+			start--;
+		}
+		if (start > 0 && (payload[start - 1] & 0xc0) == 0xc0) {
+			int lead = payload[start - 1] & 0xff;
+			int needed = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : 2;
+			if (end - (start - 1) < needed) {
+				end = start - 1;
+			}
+		}
+		if (chars.capacity() < end) {
+			chars = CharBuffer.allocate(Math.max(end, chars.capacity() * 2));
+		}
+		chars.clear();
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(payload, 0, end), chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * The persistence backends a session's client can keep its in-flight QoS 1 and 2 packets in.  Profiles refer to
+ * the type only; the session creates the backend when it connects, so choosing one loads no client classes.
+ */
+public enum PersistenceType {
+
+	// In memory only; fastest, but in-flight packets do not survive a restart
+	MEMORY("Memory"),
+
+	// The client library's default store, one file per packet
+	FILE("File"),
+
+	// A single append-only log written in batches with group commit
+	APPEND_LOG("Append Log");
+
+	private final String label;
+
+	private PersistenceType(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Returns the type with the given label, or FILE if there is none
+	 */
+	public static PersistenceType fromLabel(String label) {
+		PersistenceType [] types = values();
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].label.equals(label)) {
+				return types[i];
+			}
+		}
+		return FILE;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * Instrumentation of the path from an arrived message to the log table: the time spent in messageArrived, the
+ * time producer threads spend handing flushes to the UI thread, the depth of the log queue, the records and time
+ * of each flush, and how late the UI event loop runs its timers.  Recording is cheap enough to stay on under
+ * load: counters are striped and latencies go to lock-free histograms, so any thread may record or sample at any
+ * time.
+ */
+public class PipelineMetrics {
+
+	private static final int POSTS = 0;
+	private static final int HAND_OFFS = 1;
+	private static final int FLUSHES = 2;
+	private static final int FLUSHED_RECORDS = 3;
+	private static final int DISCARDED = 4;
+	private static final int DROPPED = 5;
+
+	private final StripedCounter counters = new StripedCounter(6);
+	private final LatencyHistogram arrivalTime = new LatencyHistogram();
+	private final LatencyHistogram handOffTime = new LatencyHistogram();
+	private final LatencyHistogram flushTime = new LatencyHistogram();
+	private final LatencyHistogram loopLatency = new LatencyHistogram();
+
+	// Largest queue depth seen by a flush and largest batch flushed.  Written on the UI thread only.
+	private volatile long maxQueueDepth = 0;
+	private volatile int maxBatchSize = 0;
+
+	/**
+	 * Records a log entry posted to the queue
+	 */
+	void recordPost() {
+		counters.add(POSTS, 1);
+	}
+
+	/**
+	 * Records the time a producer thread spent scheduling a flush on the UI thread
+	 */
+	void recordHandOff(long nanos) {
+		counters.add(HAND_OFFS, 1);
+		handOffTime.record(nanos);
+	}
+
+	/**
+	 * Records a flush
+	 *
+	 * @param queueDepth the number of entries queued when the flush started
+	 * @param records the number of entries handed to the sink
+	 * @param nanos the time the sink took
+	 */
+	void recordFlush(long queueDepth, int records, long nanos) {
+		counters.add(FLUSHES, 1);
+		counters.add(FLUSHED_RECORDS, records);
+		flushTime.record(nanos);
+		if (queueDepth > maxQueueDepth) {
+			maxQueueDepth = queueDepth;
+		}
+		if (records > maxBatchSize) {
+			maxBatchSize = records;
+		}
+	}
+
+	/**
+	 * Records queued entries discarded when the pipeline was disposed
+	 */
+	void recordDiscarded(int records) {
+		counters.add(DISCARDED, records);
+	}
+
+	/**
+	 * Records a log entry dropped because the queue was full
+	 */
+	void recordDropped() {
+		counters.add(DROPPED, 1);
+	}
+
+	/**
+	 * Records the time spent in messageArrived for one message
+	 */
+	public void recordMessageArrived(long nanos) {
+		arrivalTime.record(nanos);
+	}
+
+	/**
+	 * Records how much later than scheduled a UI timer ran
+	 */
+	public void recordLoopLatency(long nanos) {
+		loopLatency.record(nanos);
+	}
+
+	/**
+	 * Returns the number of entries posted
+	 */
+	public long getPosts() {
+		return counters.get(POSTS);
+	}
+
+	/**
+	 * Returns the number of flushes scheduled by producer threads
+	 */
+	public long getHandOffs() {
+		return counters.get(HAND_OFFS);
+	}
+
+	public long getFlushes() {
+		return counters.get(FLUSHES);
+	}
+
+	/**
+	 * Returns the number of entries handed to the sink
+	 */
+	public long getFlushedRecords() {
+		return counters.get(FLUSHED_RECORDS);
+	}
+
+	/**
+	 * Returns the number of entries dropped because the queue was full
+	 */
+	public long getDropped() {
+		return counters.get(DROPPED);
+	}
+
+	/**
+	 * Returns the number of entries waiting in the queue
+	 */
+	public long getQueueDepth() {
+		// Read the flushed entries first, so that a post racing the read cannot make the depth negative
+		long removed = counters.get(FLUSHED_RECORDS) + counters.get(DISCARDED);
+		return Math.max(0, counters.get(POSTS) - removed);
+	}
+
+	/**
+	 * Returns the largest number of entries queued when a flush started
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Returns the largest number of entries handed to the sink by one flush
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Returns the time spent in messageArrived per message
+	 */
+	public LatencyHistogram getArrivalTime() {
+		return arrivalTime;
+	}
+
+	/**
+	 * Returns the time producer threads spent scheduling each flush on the UI thread
+	 */
+	public LatencyHistogram getHandOffTime() {
+		return handOffTime;
+	}
+
+	/**
+	 * Returns the time the sink took per flush, during which the UI thread does nothing else
+	 */
+	public LatencyHistogram getFlushTime() {
+		return flushTime;
+	}
+
+	/**
+	 * Returns how much later than scheduled UI timers ran
+	 */
+	public LatencyHistogram getLoopLatency() {
+		return loopLatency;
+	}
+
+	/**
+	 * Clears the counters and histograms.  The queue depth is kept.
+	 */
+	public void reset() {
+		long depth = getQueueDepth();
+		counters.reset();
+		counters.add(POSTS, depth);
+		arrivalTime.reset();
+		handOffTime.reset();
+		flushTime.reset();
+		loopLatency.reset();
+		maxQueueDepth = 0;
+		maxBatchSize = 0;
+	}
+
+	/**
+	 * Returns a one-line summary of the metrics, with latencies in milliseconds
+	 */
+	public String toString() {
+		long flushes = getFlushes();
+		return "Queue: " + getQueueDepth() + " (max " + maxQueueDepth + ")  Posts: " + getPosts() + "  Dropped: " +
+			getDropped() + "  Flushes: " +
+			flushes + "  Records/flush: " + (flushes == 0 ? 0 : getFlushedRecords() / flushes) + " (max " +
+			maxBatchSize + ")  Flush time: " + summarize(flushTime) + "  Hand-off: " + summarize(handOffTime) +
+			"  messageArrived: " + summarize(arrivalTime) + "  Loop latency: " + summarize(loopLatency);
+	}
+
+	private static String summarize(LatencyHistogram histogram) {
+		return "p99 " + LatencyHistogram.millis(histogram.getPercentile(99)) + " max " +
+			LatencyHistogram.millis(histogram.getMax());
+	}
+}
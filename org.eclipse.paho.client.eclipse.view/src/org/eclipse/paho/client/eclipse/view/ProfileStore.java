@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.jface.preference.IPersistentPreferenceStore;
+import org.eclipse.jface.preference.IPreferenceStore;
+
+/**
+ * Saves connection profiles in a preference store, so that the profiles, and which one was used last, are
+ * restored when the view is next opened without creating any sessions.  Each field of a profile is kept under
+ * its own key, "profile.NAME.FIELD".  Passwords are not saved.
+ */
+public class ProfileStore {
+
+	static final String NAMES = "profiles";
+	static final String LAST = "lastProfile";
+	static final String PREFIX = "profile.";
+
+	private final IPreferenceStore store;
+
+	/**
+	 * Constructor
+	 *
+	 * @param store the preference store to keep the profiles in
+	 */
+	public ProfileStore(IPreferenceStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the names of the saved profiles, sorted
+	 */
+	public String [] getNames() {
+		String names = store.getString(NAMES);
+		if (names.length() == 0) {
+			return new String[0];
+		}
+		String [] sorted = names.split("\n");
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Returns the name of the profile saved last, or an empty string if none has been
+	 */
+	public String getLastName() {
+		return store.getString(LAST);
+	}
+
+	/**
+	 * Returns a saved profile, or null if there is none with the name
+	 */
+	public ConnectionProfile load(String name) {
+		if (!Arrays.asList(getNames()).contains(name)) {
+			return null;
+		}
+		String prefix = PREFIX + name + ".";
+		ConnectionProfile profile = new ConnectionProfile();
+		profile.setName(name);
+		profile.setAddress(store.getString(prefix + "address"));
+		profile.setPort(store.getInt(prefix + "port"));
+		profile.setClientId(store.getString(prefix + "clientId"));
+		profile.setKeepAlive((short) store.getInt(prefix + "keepAlive"));
+		profile.setCleanStart(store.getBoolean(prefix + "cleanStart"));
+		profile.setUsername(store.getString(prefix + "username"));
+		profile.setUseWill(store.getBoolean(prefix + "useWill"));
+		profile.setWillTopic(store.getString(prefix + "willTopic"));
+		profile.setWillMessage(store.getString(prefix + "willMessage"));
+		profile.setWillQos(store.getInt(prefix + "willQos"));
+		profile.setWillRetain(store.getBoolean(prefix + "willRetain"));
+		profile.setReconnectAttempts(store.getInt(prefix + "reconnectAttempts"));
+		profile.setPersistence(PersistenceType.fromLabel(store.getString(prefix + "persistence")));
+		profile.setDataDirectory(store.getString(prefix + "dataDirectory"));
+		profile.setCommitInterval(store.getInt(prefix + "commitInterval"));
+		profile.setSyncPersistence(store.getBoolean(prefix + "syncPersistence"));
+		return profile;
+	}
+
+	/**
+	 * Saves a profile, replacing any saved under the same name, and makes it the last profile
+	 *
+	 * @throws IOException if the preference store cannot be written
+	 */
+	public void save(ConnectionProfile profile) throws IOException {
+		String prefix = PREFIX + profile.getName() + ".";
+		store.setValue(prefix + "address", profile.getAddress());
+		store.setValue(prefix + "port", profile.getPort());
+		store.setValue(prefix + "clientId", profile.getClientId());
+		store.setValue(prefix + "keepAlive", profile.getKeepAlive());
+		store.setValue(prefix + "cleanStart", profile.isCleanStart());
+		store.setValue(prefix + "username", profile.getUsername());
+		store.setValue(prefix + "useWill", profile.isUseWill());
+		store.setValue(prefix + "willTopic", profile.getWillTopic());
+		store.setValue(prefix + "willMessage", profile.getWillMessage());
+		store.setValue(prefix + "willQos", profile.getWillQos());
+		store.setValue(prefix + "willRetain", profile.isWillRetain());
+		store.setValue(prefix + "reconnectAttempts", profile.getReconnectAttempts());
+		store.setValue(prefix + "persistence", profile.getPersistence().getLabel());
+		store.setValue(prefix + "dataDirectory", profile.getDataDirectory());
+		store.setValue(prefix + "commitInterval", profile.getCommitInterval());
+		store.setValue(prefix + "syncPersistence", profile.isSyncPersistence());
+
+		Set<String> names = new LinkedHashSet<String>(Arrays.asList(getNames()));
+		names.add(profile.getName());
+		StringBuilder joined = new StringBuilder();
+		for (Iterator<String> i = names.iterator(); i.hasNext();) {
+			joined.append(joined.length() == 0 ? "" : "\n").append(i.next());
+		}
+		store.setValue(NAMES, joined.toString());
+		store.setValue(LAST, profile.getName());
+		if (store.needsSaving() && store instanceof IPersistentPreferenceStore) {
+			((IPersistentPreferenceStore) store).save();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+
+/**
+ * A window of publishes in flight on a session.  A publish sent through the window takes one of a limited number
+ * of slots, waiting while every slot is taken, and gives it back when its deliveryComplete arrives.  Publishing
+ * through a window keeps up to its size of QoS 1 and 2 publishes awaiting acknowledgement at once, so throughput
+ * is bound by the window size divided by the round-trip time rather than by the round-trip time alone.
+ *
+ * The window can be resized while in use.  Slots of publishes still in flight when the connection is lost are
+ * given back, since their deliveryComplete may never arrive.
+ */
+public class PublishWindow {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition slotFreed = lock.newCondition();
+	private final Condition emptied = lock.newCondition();
+
+	// Tokens of the publishes holding a slot
+	private final Set<MqttDeliveryToken> pending =
+		Collections.newSetFromMap(new ConcurrentHashMap<MqttDeliveryToken, Boolean>());
+
+	private int size;
+	private int inFlight = 0;
+	private long completed = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param size the maximum number of publishes in flight
+	 */
+	public PublishWindow(int size) {
+		this.size = Math.max(1, size);
+	}
+
+	/**
+	 * Takes a slot, waiting up to a timeout for one to be given back if the window is full
+	 *
+	 * @param timeout the longest time to wait in milliseconds, or a negative number to wait as long as it takes
+	 * @return true, or false if no slot was given back in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean acquire(long timeout) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (inFlight >= size) {
+				if (timeout < 0) {
+					slotFreed.await();
+				} else if (remaining <= 0) {
+					return false;
+				} else {
+					remaining = slotFreed.awaitNanos(remaining);
+				}
+			}
+			inFlight++;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Holds a taken slot until the publish's deliveryComplete arrives.  Called once the publish has been sent.
+	 */
+	public void track(MqttDeliveryToken token) {
+		pending.add(token);
+		// The token is marked complete before its deliveryComplete is called, so if that has already been and gone
+		// it is seen here, and exactly one of this and complete gives the slot back
+		if (token.isComplete()) {
+			complete(token);
+		}
+	}
+
+	/**
+	 * Gives back a taken slot without tracking a publish, e.g. because sending it failed
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			slotFreed.signal();
+			if (inFlight == 0) {
+				emptied.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives back the slot of a completed publish, if it was sent through the window
+	 */
+	public void complete(MqttDeliveryToken token) {
+		if (pending.remove(token)) {
+			lock.lock();
+			try {
+				completed++;
+			} finally {
+				lock.unlock();
+			}
+			release();
+		}
+	}
+
+	/**
+	 * Gives back the slots of every publish in flight, whose deliveryComplete may never arrive
+	 */
+	public void abandon() {
+		lock.lock();
+		try {
+			// Remove each token singly, so a slot given back by a racing complete is not given back twice
+			Object [] tokens = pending.toArray();
+			for (int i = 0; i < tokens.length; i++) {
+				if (pending.remove(tokens[i])) {
+					inFlight--;
+				}
+			}
+			slotFreed.signalAll();
+			if (inFlight == 0) {
+				emptied.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until no publishes are in flight
+	 *
+	 * @param timeout the longest time to wait in milliseconds
+	 * @return true, or false if publishes were still in flight when the timeout passed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitEmpty(long timeout) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (inFlight > 0) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = emptied.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of publishes in flight.  Shrinking the window lets the publishes already in flight
+	 * complete.
+	 */
+	public void setSize(int size) {
+		lock.lock();
+		try {
+			this.size = Math.max(1, size);
+			slotFreed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of publishes in flight
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of publishes sent through the window that have completed
+	 */
+	public long getCompleted() {
+		lock.lock();
+		try {
+			return completed;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
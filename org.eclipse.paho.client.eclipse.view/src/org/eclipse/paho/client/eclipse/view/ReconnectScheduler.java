@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores a lost connection in the background.  Reconnect attempts run on the scheduler's own thread, never on
+ * the thread that reported the lost connection, and are spaced out by a capped exponential backoff with jitter
+ * so that many clients disconnected at the same moment do not all retry at the same moment.
+ *
+ * The delay before attempt n (counting from 0) is chosen at random between half and all of
+ * min(maxDelay, initialDelay * 2^n).
+ */
+public class ReconnectScheduler {
+
+	/**
+	 * Makes the actual connection for the scheduler
+	 */
+	public interface Reconnector {
+
+		/**
+		 * Attempts to connect, throwing an exception if the attempt fails
+		 */
+		void connect() throws Exception;
+
+		/**
+		 * Called when an attempt succeeded after the scheduler had been cancelled, so that the unwanted
+		 * connection can be closed
+		 */
+		void disconnect();
+	}
+
+	/**
+	 * Notified of the progress of reconnect attempts.  Called on the scheduler thread.
+	 */
+	public interface Listener {
+		void reconnectAttempt(int attempt);
+		void reconnectFailed(int attempt, Throwable cause, long nextDelay);
+		void reconnectAbandoned(int attempts);
+		void reconnected(int attempts, long timeToReconnect);
+	}
+
+	private final ScheduledExecutorService timer;
+	private final Reconnector reconnector;
+	private final Listener listener;
+	private final ReconnectStats stats = new ReconnectStats();
+	private final Random random = new Random();
+
+	// Backoff parameters
+	private volatile long initialDelay = ClientConstants.RECONNECT_INITIAL_DELAY;
+	private volatile long maxDelay = ClientConstants.RECONNECT_MAX_DELAY;
+	private volatile int maxAttempts = ClientConstants.RECONNECT_MAX_ATTEMPTS;
+
+	// Reconnect state, guarded by this.  The generation changes whenever the scheduler starts or stops so that
+	// attempts belonging to an earlier outage can tell they are stale.
+	private boolean running = false;
+	private int generation = 0;
+	private int attempt = 0;
+	private long lostTime = 0;
+	private ScheduledFuture<?> pending = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param threadName the name of the scheduler thread
+	 * @param reconnector makes the connection attempts
+	 * @param listener notified of the progress of the attempts
+	 */
+	public ReconnectScheduler(final String threadName, Reconnector reconnector, Listener listener) {
+		this.reconnector = reconnector;
+		this.listener = listener;
+		timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts reconnecting, unless the scheduler is already running.  Returns immediately.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		generation++;
+		attempt = 0;
+		lostTime = System.nanoTime();
+		scheduleNext(generation);
+	}
+
+	/**
+	 * Stops reconnecting.  An attempt already in progress is allowed to finish, but its connection is closed.
+	 */
+	public synchronized void cancel() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		generation++;
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Returns true if the scheduler is trying to reconnect
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stops reconnecting and releases the scheduler thread
+	 */
+	public void shutdown() {
+		cancel();
+		timer.shutdownNow();
+	}
+
+	public ReconnectStats getStats() {
+		return stats;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Sets the base delay, in milliseconds, before the first reconnect attempt
+	 */
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = Math.max(1, initialDelay);
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Sets the cap, in milliseconds, on the delay between reconnect attempts
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = Math.max(1, maxDelay);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets the number of attempts to make before giving up, or 0 to keep trying forever
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = Math.max(0, maxAttempts);
+	}
+
+	/**
+	 * Returns the delay, in milliseconds, before the given attempt (counting from 0)
+	 */
+	long getDelay(int attempt) {
+		long cap = maxDelay;
+		long backoff = initialDelay << Math.min(attempt, 30);
+		if (backoff <= 0 || backoff > cap) {
+			backoff = cap;
+		}
+		long half = backoff / 2;
+		return half + (long) (random.nextDouble() * (backoff - half));
+	}
+
+	/**
+	 * Schedules the next attempt and returns its delay.  Must hold the lock.
+	 */
+	private long scheduleNext(final int attemptGeneration) {
+		long delay = getDelay(attempt);
+		try {
+			pending = timer.schedule(new Runnable() {
+				public void run() {
+					attempt(attemptGeneration);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// The scheduler has been shut down
+			running = false;
+			pending = null;
+		}
+		return delay;
+	}
+
+	/**
+	 * Makes one reconnect attempt
+	 */
+	private void attempt(int attemptGeneration) {
+		int number;
+		synchronized (this) {
+			if (!running || attemptGeneration != generation) {
+				return;
+			}
+			number = ++attempt;
+			pending = null;
+		}
+		stats.attemptStarted();
+		listener.reconnectAttempt(number);
+		try {
+			reconnector.connect();
+		} catch (Exception e) {
+			stats.attemptFailed();
+			long nextDelay = -1;
+			synchronized (this) {
+				if (attemptGeneration != generation) {
+					return;
+				}
+				if (maxAttempts > 0 && number >= maxAttempts) {
+					running = false;
+					generation++;
+				} else {
+					nextDelay = scheduleNext(attemptGeneration);
+				}
+			}
+			if (nextDelay < 0) {
+				stats.reconnectAbandoned();
+				listener.reconnectAbandoned(number);
+			} else {
+				listener.reconnectFailed(number, e, nextDelay);
+			}
+			return;
+		}
+		long timeToReconnect = -1;
+		synchronized (this) {
+			if (attemptGeneration == generation) {
+				running = false;
+				generation++;
+				timeToReconnect = (System.nanoTime() - lostTime) / 1000000;
+			}
+		}
+		if (timeToReconnect < 0) {
+			// Cancelled while this attempt was connecting
+			reconnector.disconnect();
+			return;
+		}
+		stats.reconnected(timeToReconnect);
+		listener.reconnected(number, timeToReconnect);
+	}
+}
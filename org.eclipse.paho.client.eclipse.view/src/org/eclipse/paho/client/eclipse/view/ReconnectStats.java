@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the reconnect behaviour of a client: how many attempts were made, how many succeeded,
+ * and how long it took from losing the connection to restoring it.
+ */
+public class ReconnectStats {
+
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong reconnects = new AtomicLong();
+	private final AtomicLong abandoned = new AtomicLong();
+	private final AtomicLong lastTimeToReconnect = new AtomicLong();
+	private final AtomicLong maxTimeToReconnect = new AtomicLong();
+	private final AtomicLong totalTimeToReconnect = new AtomicLong();
+
+	void attemptStarted() {
+		attempts.incrementAndGet();
+	}
+
+	void attemptFailed() {
+		failures.incrementAndGet();
+	}
+
+	void reconnectAbandoned() {
+		abandoned.incrementAndGet();
+	}
+
+	void reconnected(long timeToReconnect) {
+		reconnects.incrementAndGet();
+		lastTimeToReconnect.set(timeToReconnect);
+		totalTimeToReconnect.addAndGet(timeToReconnect);
+		long max = maxTimeToReconnect.get();
+		while (timeToReconnect > max && !maxTimeToReconnect.compareAndSet(max, timeToReconnect)) {
+			max = maxTimeToReconnect.get();
+		}
+	}
+
+	/**
+	 * Returns the total number of reconnect attempts made
+	 */
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	/**
+	 * Returns the number of reconnect attempts that failed
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Returns the number of times a lost connection was restored
+	 */
+	public long getReconnects() {
+		return reconnects.get();
+	}
+
+	/**
+	 * Returns the number of times reconnecting was given up after the maximum number of attempts
+	 */
+	public long getAbandoned() {
+		return abandoned.get();
+	}
+
+	/**
+	 * Returns the time, in milliseconds, from losing the connection to restoring it, for the last reconnect
+	 */
+	public long getLastTimeToReconnect() {
+		return lastTimeToReconnect.get();
+	}
+
+	/**
+	 * Returns the longest time to reconnect, in milliseconds
+	 */
+	public long getMaxTimeToReconnect() {
+		return maxTimeToReconnect.get();
+	}
+
+	/**
+	 * Returns the average time to reconnect, in milliseconds
+	 */
+	public long getAverageTimeToReconnect() {
+		long count = reconnects.get();
+		return count == 0 ? 0 : totalTimeToReconnect.get() / count;
+	}
+
+	public String toString() {
+		return "Attempts: " + getAttempts() + "  Failures: " + getFailures() + "  Reconnects: " + getReconnects() +
+			"  Abandoned: " + getAbandoned() + "  Last: " + getLastTimeToReconnect() + " ms  Avg: " +
+			getAverageTimeToReconnect() + " ms  Max: " + getMaxTimeToReconnect() + " ms";
+	}
+}
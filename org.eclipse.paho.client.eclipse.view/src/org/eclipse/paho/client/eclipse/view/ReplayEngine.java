@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Publishes the messages of a capture written by {@link CaptureWriter} on a session.  Messages are published
+ * with their original spacing, with the spacing divided by a speed multiplier, or as fast as possible.  The
+ * capture is read one record at a time, so a capture of any size replays in constant memory.  Publishes are
+ * pipelined through the session's publish window: the engine does not wait for one to be acknowledged before
+ * sending the next, but holds back while the window is full.
+ *
+ * Topics can be remapped by replacing a prefix, e.g. prod/ with staging/.  Messages keep their captured QoS and
+ * retained flag unless a QoS is given.
+ */
+public class ReplayEngine {
+
+	private final Session session;
+	private final File directory;
+	private final double speed;
+	private final String fromPrefix;
+	private final String toPrefix;
+	private final int qos;
+	private final int startOffset;
+
+	private long messages = 0;
+	private long bytes = 0;
+	private long errors = 0;
+
+	private volatile boolean running = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param session the session to publish on
+	 * @param directory the directory holding the capture
+	 * @param speed how many times faster than captured to replay, e.g. 1 for the original timing, or 0 to replay
+	 * as fast as possible
+	 * @param fromPrefix the topic prefix to replace, or an empty string to add the new prefix to every topic
+	 * @param toPrefix the prefix to replace it with
+	 * @param qos the QoS to publish with, or -1 to publish with each message's captured QoS
+	 * @param startOffset the number of seconds into the capture to start from
+	 */
+	public ReplayEngine(Session session, File directory, double speed, String fromPrefix, String toPrefix, int qos,
+			int startOffset) {
+		this.session = session;
+		this.directory = directory;
+		this.speed = Math.max(0, speed);
+		this.fromPrefix = fromPrefix;
+		this.toPrefix = toPrefix;
+		this.qos = qos;
+		this.startOffset = Math.max(0, startOffset);
+	}
+
+	/**
+	 * Starts replaying in the background
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				replay();
+			}
+		}, "MQTT Replay [" + session.getName() + "]");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops replaying.  The final report is logged once the replay thread has stopped.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Replays the capture until it ends or the replay is stopped, reporting progress every second
+	 */
+	private void replay() {
+		session.log("REPLAY STARTED", "Directory: \"" + directory + "\"  Speed: " + (speed == 0 ? "max" : speed + "x") +
+			"  QoS: " + (qos < 0 ? "captured" : Integer.toString(qos)) +
+			(fromPrefix.length() > 0 || toPrefix.length() > 0 ?
+				"  Topic prefix: \"" + fromPrefix + "\" to \"" + toPrefix + "\"" : ""));
+		long start = System.nanoTime();
+		long lastReport = start;
+		long lastMessages = 0;
+		long behind = 0;
+		CaptureReader reader = null;
+		try {
+			reader = new CaptureReader(directory);
+			CaptureRecord record = new CaptureRecord();
+			if (startOffset > 0) {
+				if (!reader.next(record)) {
+					running = false;
+				} else {
+					reader.seek(record.getTime() + startOffset * 1000000000L);
+				}
+			}
+
+			// The capture time of the first message replayed, and when it was replayed
+			long firstTime = 0;
+			long firstReplayed = 0;
+			boolean first = true;
+			while (running && reader.next(record)) {
+				long now = System.nanoTime();
+				if (first) {
+					firstTime = record.getTime();
+					firstReplayed = now;
+					first = false;
+				}
+				if (speed > 0) {
+					long due = firstReplayed + (long) ((record.getTime() - firstTime) / speed);
+					while (running && due - now > 0) {
+						// Wait in slices of at most a second, so progress is reported and stop is noticed
+						LockSupport.parkNanos(Math.min(due - now, 1000000000L));
+						now = System.nanoTime();
+						if (now - lastReport >= 1000000000L) {
+							report("REPLAY", messages - lastMessages, now - lastReport, 0);
+							lastMessages = messages;
+							lastReport = now;
+						}
+					}
+					behind = Math.max(0, now - due);
+				}
+				publish(record);
+				if (now - lastReport >= 1000000000L) {
+					report("REPLAY", messages - lastMessages, now - lastReport, behind);
+					lastMessages = messages;
+					lastReport = now;
+				}
+			}
+		} catch (IOException e) {
+			session.log("REPLAY FAILED", e.getMessage());
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+			running = false;
+		}
+		report("REPLAY COMPLETE", messages, System.nanoTime() - start, behind);
+	}
+
+	/**
+	 * Publishes a captured message with its topic remapped
+	 */
+	private void publish(CaptureRecord record) {
+		String topic = record.getTopic();
+		if (topic.startsWith(fromPrefix)) {
+			topic = toPrefix + topic.substring(fromPrefix.length());
+		}
+		try {
+			// Wait for a slot in the window in slices of a second, so stop is noticed
+			MqttDeliveryToken token = null;
+			while (running && token == null) {
+				token = session.sendWindowed(topic, record.getPayload(), qos < 0 ? record.getQos() : qos,
+					record.isRetained(), 1000);
+			}
+			if (token == null) {
+				return;
+			}
+			messages++;
+			bytes += record.getPayload().length;
+		} catch (InterruptedException e) {
+			running = false;
+		} catch (MqttException e) {
+			if (++errors == 1) {
+				session.log("REPLAY ERROR", e.getMessage());
+			}
+			LockSupport.parkNanos(10000000L);
+		}
+	}
+
+	/**
+	 * Logs the number of messages replayed over an interval, and how far behind the captured timing the replay is
+	 */
+	private void report(String event, long count, long elapsedNanos, long behindNanos) {
+		double seconds = Math.max(elapsedNanos, 1) / 1e9;
+		session.log(event, "Messages: " + count + "  Msgs/s: " + (long) (count / seconds) + "  Total: " + messages +
+			"  Bytes: " + bytes + "  Errors: " + errors + (speed > 0 ? "  Behind: " + behindNanos / 1000000 + " ms" : ""));
+	}
+}
@@ -0,0 +1,716 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttDefaultFilePersistence;
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttTopic;
+
+/**
+ * A connection to one broker.  Each session has its own MQTT client, connection options, subscriptions,
+ * statistics, client worker and reconnect scheduler, so sessions never share state.  Events and arrived messages
+ * are passed to the listeners of the registry that owns the session.
+ */
+public class Session implements MqttCallback {
+
+	// Renders payload previews for the log, one renderer per thread that logs a publish
+	private static final ThreadLocal<PayloadRenderer> previewRenderers = new ThreadLocal<PayloadRenderer>() {
+		protected PayloadRenderer initialValue() {
+			return new PayloadRenderer();
+		}
+	};
+
+	private final String name;
+	private final SessionRegistry registry;
+
+	// Runs the session's blocking client operations, and restores its connection when lost
+	private final ClientWorker worker;
+	private final ReconnectScheduler reconnectScheduler;
+
+	// Runs the session's batch publishes one after another, so they never hold up its other operations
+	private final ClientWorker batchWorker;
+
+	// Topic filters currently subscribed to, and their QoS.  While a persistent session is not connected its
+	// filters are kept but unconfirmed, since the broker may have dropped them.
+	private final Map<String, Integer> subscriptions = new ConcurrentHashMap<String, Integer>();
+	private volatile boolean subscriptionsConfirmed = true;
+
+	// The subscriptions of a clean session whose connection was lost, sent again once it reconnects
+	private volatile Map<String, Integer> lostSubscriptions = null;
+
+	private final SessionStats stats = new SessionStats();
+
+	// Tracks every publish until it is acknowledged
+	private final DeliveryTracker deliveries = new DeliveryTracker();
+
+	// Limits the publishes in flight of the tools that pipeline them
+	private final PublishWindow publishWindow = new PublishWindow(ClientConstants.PUBLISH_WINDOW_SIZE);
+
+	// Connection state.  Written on the worker, reconnect and callback threads.
+	private volatile ConnectionProfile profile = null;
+	private volatile MqttClient client = null;
+	private volatile MeteredPersistence persistence = null;
+	private volatile MqttConnectOptions options = null;
+	private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+
+	// When the current connection was made (0 if not connected), and the last error with when it happened
+	private volatile long connectedTime = 0;
+	private volatile String lastError = null;
+	private volatile long lastErrorTime = 0;
+
+	// Exports the session's metrics over JMX
+	private final SessionMonitor monitor = new SessionMonitor(this);
+
+	/**
+	 * Constructor
+	 *
+	 * @param name the name of the session
+	 * @param registry the registry whose listeners receive the session's events
+	 */
+	Session(String name, SessionRegistry registry) {
+		this.name = name;
+		this.registry = registry;
+		worker = new ClientWorker("MQTT Client Worker [" + name + "]");
+		batchWorker = new ClientWorker("MQTT Batch Publisher [" + name + "]");
+		reconnectScheduler = new ReconnectScheduler("MQTT Reconnect [" + name + "]", reconnector, reconnectListener);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the registry that owns the session
+	 */
+	public SessionRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns the profile the session was last connected with, or null if it has never connected
+	 */
+	public ConnectionProfile getProfile() {
+		return profile;
+	}
+
+	public ConnectionState getState() {
+		return state;
+	}
+
+	public SessionStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Returns the tracker of the session's publishes and their acknowledgement latency
+	 */
+	public DeliveryTracker getDeliveryTracker() {
+		return deliveries;
+	}
+
+	/**
+	 * Returns the window limiting the publishes in flight sent with {@link #sendWindowed}
+	 */
+	public PublishWindow getPublishWindow() {
+		return publishWindow;
+	}
+
+	public ReconnectStats getReconnectStats() {
+		return reconnectScheduler.getStats();
+	}
+
+	/**
+	 * Returns when the current connection was made (milliseconds since the epoch), or 0 if not connected
+	 */
+	public long getConnectedTime() {
+		return connectedTime;
+	}
+
+	/**
+	 * Returns the last error of a client operation or the connection, or null if there has been none
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Returns when the last error happened (milliseconds since the epoch), or 0 if there has been none
+	 */
+	public long getLastErrorTime() {
+		return lastErrorTime;
+	}
+
+	/**
+	 * Returns the JMX export of the session's metrics
+	 */
+	public SessionMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Returns the topic filters currently subscribed to, mapped to their QoS
+	 */
+	public Map<String, Integer> getSubscriptions() {
+		return subscriptions;
+	}
+
+	/**
+	 * Returns whether the broker is known to hold the subscriptions.  False while a persistent session is not
+	 * connected.
+	 */
+	public boolean isSubscriptionsConfirmed() {
+		return subscriptionsConfirmed;
+	}
+
+	/**
+	 * Connects to the broker described by the profile.  The client is reused if the broker, client ID and
+	 * persistence settings are unchanged since the last connect.
+	 */
+	public OperationHandle<Void> connect(final ConnectionProfile newProfile) {
+		reconnectScheduler.setMaxAttempts(newProfile.getReconnectAttempts());
+		return submit("CONNECT", new Callable<Void>() {
+			public Void call() throws MqttException {
+				// Check if the client is currently connected
+				if (state != ConnectionState.DISCONNECTED) {
+					log("Error connecting:  Client is currently connected.", null);
+					return null;
+				}
+				state = ConnectionState.CONNECTING;
+				boolean connected = false;
+				try {
+					// Instantiate client
+					String connectString = newProfile.getServerURI();
+					if (client == null || !connectString.equals(profile.getServerURI()) ||
+							!newProfile.getClientId().equals(profile.getClientId()) ||
+							!newProfile.hasSamePersistence(profile)) {
+						// Subscriptions belong to the broker session of the old client
+						if (profile != null && (!connectString.equals(profile.getServerURI()) ||
+								!newProfile.getClientId().equals(profile.getClientId()))) {
+							subscriptions.clear();
+						}
+						closePersistence();
+						client = null;
+						persistence = createPersistence(newProfile);
+						client = new MqttClient(connectString, newProfile.getClientId(), persistence);
+						client.setCallback(Session.this);
+					}
+					profile = newProfile;
+					
+					// Set connection options
+					MqttConnectOptions connOpts = new MqttConnectOptions();
+					connOpts.setCleanSession(newProfile.isCleanStart());
+					connOpts.setConnectionTimeout(30);
+					connOpts.setKeepAliveInterval(newProfile.getKeepAlive());
+					if (newProfile.getUsername().length() > 0 && newProfile.getPassword().length() > 0) {
+						connOpts.setPassword(newProfile.getPassword().toCharArray());
+						connOpts.setUserName(newProfile.getUsername());
+					}
+					if (newProfile.isUseWill()) {
+						connOpts.setWill(client.getTopic(newProfile.getWillTopic()), newProfile.getWillMessage().getBytes(),
+							newProfile.getWillQos(), newProfile.isWillRetain());
+					}
+					options = connOpts;
+					
+					// Attempt to connect
+					log("Attempting to connect to broker:  " + connectString, null);
+					client.connect(connOpts);
+					connected = true;
+				} finally {
+					// Any failure, including a bad URI, client ID, option or data directory, leaves the session free
+					// to connect again
+					if (!connected) {
+						state = ConnectionState.DISCONNECTED;
+					}
+				}
+				// A clean session starts without subscriptions; a persistent one has its subscriptions back
+				lostSubscriptions = null;
+				if (newProfile.isCleanStart()) {
+					subscriptions.clear();
+				}
+				subscriptionsConfirmed = true;
+				state = ConnectionState.CONNECTED;
+				connectedTime = System.currentTimeMillis();
+				log("CONNECTED", "Client ID: " + newProfile.getClientId());
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Disconnects from the broker
+	 */
+	public OperationHandle<Void> disconnect() {
+		return submit("DISCONNECT", new Callable<Void>() {
+			public Void call() throws MqttException {
+				// Stop any reconnect attempts first so that they cannot restore the connection
+				reconnectScheduler.cancel();
+				if (state == ConnectionState.DISCONNECTED) {
+					log("Error disconnecting:  Client was not connected.", null);
+					return null;
+				}
+				try {
+					if (client.isConnected()) {
+						client.disconnect();
+					}
+					log("DISCONNECTED", null);
+					log("PERSISTENCE", persistence.toString());
+				} finally {
+					state = ConnectionState.DISCONNECTED;
+					connectedTime = 0;
+					lostSubscriptions = null;
+					forgetSubscriptions();
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Publishes a message
+	 */
+	public OperationHandle<MqttDeliveryToken> publish(final String topicName, final byte [] payload, final int qos,
+			final boolean retained) {
+		return submit("PUBLISH", new Callable<MqttDeliveryToken>() {
+			public MqttDeliveryToken call() throws MqttException {
+				if (client == null) {
+					log("Error publishing:  Client is not connected.", null);
+					return null;
+				}
+				MqttDeliveryToken token = send(topicName, payload, qos, retained, true);
+				log("PUBLISH", "Topic: \"" + topicName + "\"  QoS: " + qos + "  Retain: " + retained +
+				    "  Size: " + payload.length + " bytes  Payload: \"" + preview(payload) + "\"");
+				return token;
+			}
+		});
+	}
+
+	/**
+	 * Publishes a message on the calling thread, without logging it.  Used by tools that publish many messages
+	 * from their own threads, such as the load generator.
+	 *
+	 * @return the token of the publish
+	 * @throws MqttException if the session has never connected or the publish fails
+	 */
+	public MqttDeliveryToken send(String topicName, byte [] payload, int qos, boolean retained) throws MqttException {
+		return send(topicName, payload, qos, retained, false);
+	}
+
+	/**
+	 * Publishes a message on the calling thread and tracks it until it is acknowledged
+	 *
+	 * @param logged whether the publish is logged, so its completion is logged too
+	 */
+	private MqttDeliveryToken send(String topicName, byte [] payload, int qos, boolean retained, boolean logged)
+			throws MqttException {
+		MqttClient mqttClient = client;
+		if (mqttClient == null) {
+			throw new MqttException(MqttException.REASON_CODE_CLIENT_EXCEPTION);
+		}
+		MqttTopic topic = mqttClient.getTopic(topicName);
+		MqttDeliveryToken token = topic.publish(payload, qos, retained);
+		stats.messageOut(topicName, payload.length, qos);
+		deliveries.sent(token, topicName, qos, logged);
+		return token;
+	}
+
+	/**
+	 * Publishes a message on the calling thread through the publish window, without logging it.  Waits for a slot
+	 * in the window if it is full, which holds back callers that publish faster than the broker acknowledges.
+	 *
+	 * @param timeout the longest time to wait for a slot in milliseconds, or a negative number to wait as long as
+	 * it takes
+	 * @return the token of the publish, or null if no slot was free in time
+	 * @throws MqttException if the session has never connected or the publish fails
+	 * @throws InterruptedException if interrupted while waiting for a slot
+	 */
+	public MqttDeliveryToken sendWindowed(String topicName, byte [] payload, int qos, boolean retained, long timeout)
+			throws MqttException, InterruptedException {
+		if (!publishWindow.acquire(timeout)) {
+			return null;
+		}
+		MqttDeliveryToken token;
+		try {
+			token = send(topicName, payload, qos, retained);
+		} catch (MqttException e) {
+			publishWindow.release();
+			throw e;
+		} catch (RuntimeException e) {
+			publishWindow.release();
+			throw e;
+		}
+		publishWindow.track(token);
+		return token;
+	}
+
+	/**
+	 * Publishes a batch of messages in the background through the publish window, then waits for them to be
+	 * acknowledged and logs the rate they were published at.  Batches run one at a time, and closing the session
+	 * stops them.
+	 *
+	 * @param topicName the topic to publish on
+	 * @param payloads the payloads of the messages
+	 */
+	public OperationHandle<Void> publishBatch(final String topicName, final byte [][] payloads, final int qos,
+			final boolean retained) {
+		OperationHandle<Void> handle = batchWorker.submit("PUBLISH BATCH", new Callable<Void>() {
+			public Void call() throws MqttException, InterruptedException {
+				long start = System.nanoTime();
+				long bytes = 0;
+				for (int i = 0; i < payloads.length; i++) {
+					sendWindowed(topicName, payloads[i], qos, retained, -1);
+					bytes += payloads[i].length;
+				}
+				boolean acknowledged = publishWindow.awaitEmpty(ClientConstants.PUBLISH_BATCH_TIMEOUT);
+				double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+				log("PUBLISH BATCH", "Topic: \"" + topicName + "\"  QoS: " + qos + "  Messages: " + payloads.length +
+					"  Bytes: " + bytes + "  Msgs/s: " + (long) (payloads.length / seconds) + "  Window: " +
+					publishWindow.getSize() + (acknowledged ? "" : "  Still in flight: " + publishWindow.getInFlight()));
+				return null;
+			}
+		});
+		handle.addListener(operationListener);
+		return handle;
+	}
+
+	/**
+	 * Returns the start of a payload as UTF-8 text for the log, decoded from at most
+	 * {@link ClientConstants#LOG_PREVIEW_LENGTH} bytes.  A character cut off at the end is left out.
+	 */
+	static String preview(byte [] payload) {
+		if (payload == null) {
+			return "";
+		}
+		return previewRenderers.get().render(payload, payload.length, payload.length, PayloadRenderer.Format.UTF8,
+			ClientConstants.LOG_PREVIEW_LENGTH, false);
+	}
+
+	/**
+	 * Subscribes on a set of topic filters, sending as few SUBSCRIBE packets as the batch limit allows.  If a
+	 * batch fails, the batches before it stay subscribed.
+	 */
+	public OperationHandle<Void> subscribe(final String [] topics, final int [] qos) {
+		return submit("SUBSCRIBE", new Callable<Void>() {
+			public Void call() throws MqttException {
+				MqttClient mqttClient = client;
+				if (mqttClient == null) {
+					log("Error subscribing:  Client is not connected.", null);
+					return null;
+				}
+				for (int start = 0; start < topics.length; start += ClientConstants.SUBSCRIBE_BATCH_SIZE) {
+					int end = Math.min(topics.length, start + ClientConstants.SUBSCRIBE_BATCH_SIZE);
+					String [] batchTopics = new String[end - start];
+					int [] batchQos = new int[end - start];
+					System.arraycopy(topics, start, batchTopics, 0, batchTopics.length);
+					System.arraycopy(qos, start, batchQos, 0, batchQos.length);
+					mqttClient.subscribe(batchTopics, batchQos);
+					for (int i = 0; i < batchTopics.length; i++) {
+						subscriptions.put(batchTopics[i], Integer.valueOf(batchQos[i]));
+					}
+					if (batchTopics.length == 1) {
+						log("SUBSCRIBE", "Topic: \"" + batchTopics[0] + "\"  QoS: " + batchQos[0]);
+					} else {
+						log("SUBSCRIBE", describeTopics(batchTopics));
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Unsubscribes from a set of topic filters, sending as few UNSUBSCRIBE packets as the batch limit allows
+	 */
+	public OperationHandle<Void> unsubscribe(final String [] topics) {
+		return submit("UNSUBSCRIBE", new Callable<Void>() {
+			public Void call() throws MqttException {
+				MqttClient mqttClient = client;
+				if (mqttClient == null) {
+					log("Error unsubscribing:  Client is not connected.", null);
+					return null;
+				}
+				for (int start = 0; start < topics.length; start += ClientConstants.SUBSCRIBE_BATCH_SIZE) {
+					int end = Math.min(topics.length, start + ClientConstants.SUBSCRIBE_BATCH_SIZE);
+					String [] batchTopics = new String[end - start];
+					System.arraycopy(topics, start, batchTopics, 0, batchTopics.length);
+					mqttClient.unsubscribe(batchTopics);
+					for (int i = 0; i < batchTopics.length; i++) {
+						subscriptions.remove(batchTopics[i]);
+					}
+					if (batchTopics.length == 1) {
+						log("UNSUBSCRIBE", "Topic: \"" + batchTopics[0] + "\"");
+					} else {
+						log("UNSUBSCRIBE", describeTopics(batchTopics));
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Describes a batch of topic filters for the log by their number and first few filters
+	 */
+	private static String describeTopics(String [] topics) {
+		StringBuilder detail = new StringBuilder();
+		detail.append("Topics: ").append(topics.length);
+		for (int i = 0; i < topics.length && i < 3; i++) {
+			detail.append(i == 0 ? "  \"" : ", \"").append(topics[i]).append('"');
+		}
+		if (topics.length > 3) {
+			detail.append(", ...");
+		}
+		return detail.toString();
+	}
+
+	/**
+	 * Disconnects if connected and releases the session's threads.  The session cannot be used afterwards.
+	 */
+	void close() {
+		monitor.unregister();
+		reconnectScheduler.shutdown();
+		batchWorker.shutdownNow();
+		if (state != ConnectionState.DISCONNECTED) {
+			disconnect();
+		}
+		submit("CLOSE", new Callable<Void>() {
+			public Void call() {
+				closePersistence();
+				return null;
+			}
+		});
+		worker.shutdown();
+	}
+
+	/**
+	 * Returns the metered persistence backend of the session's client, or null if it has never connected
+	 */
+	public MeteredPersistence getPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Creates the persistence backend chosen by a profile, metered for reports
+	 */
+	private static MeteredPersistence createPersistence(ConnectionProfile profile) {
+		String directory = profile.getDataDirectory();
+		MqttClientPersistence backend;
+		switch (profile.getPersistence()) {
+		case MEMORY:
+			backend = new MemoryPersistence();
+			break;
+		case APPEND_LOG:
+			backend = new AppendLogPersistence(new File(directory.length() > 0 ? directory : System.getProperty("user.dir")),
+				profile.getCommitInterval(), profile.isSyncPersistence());
+			break;
+		default:
+			backend = directory.length() > 0 ? new MqttDefaultFilePersistence(directory) :
+				new MqttDefaultFilePersistence();
+		}
+		return new MeteredPersistence(backend, profile.getPersistence());
+	}
+
+	/**
+	 * Closes the persistence backend of the current client, if any, before it is replaced or the session closes
+	 */
+	private void closePersistence() {
+		MeteredPersistence current = persistence;
+		if (current != null) {
+			persistence = null;
+			try {
+				current.close();
+			} catch (MqttException e) {
+				log("Error closing persistence:  " + e.getMessage(), null);
+			}
+		}
+	}
+
+	/**
+	 * Logs that the broker connection has been lost and starts reconnecting in the background.
+	 */
+	public void connectionLost(Throwable cause) {
+		state = ConnectionState.RECONNECTING;
+		connectedTime = 0;
+		ConnectionProfile current = profile;
+		if (current != null && current.isCleanStart() && !subscriptions.isEmpty()) {
+			lostSubscriptions = new HashMap<String, Integer>(subscriptions);
+		}
+		forgetSubscriptions();
+		recordError("Connection lost: " + describe(cause));
+		publishWindow.abandon();
+		log("CONNECTION LOST!", cause != null ? cause.getMessage() : null);
+		reconnectScheduler.start();
+	}
+
+	/**
+	 * Passes an arrived message to the registry's listeners
+	 */
+	public void messageArrived(MqttTopic topic, MqttMessage message) throws Exception {
+		byte [] payload = message.getPayload();
+		String topicName = topic.getName();
+		stats.messageIn(topicName, payload.length, message.getQos());
+		registry.fireMessageArrived(this, topicName, message, payload);
+	}
+
+	/**
+	 * Passes a completed delivery to the registry's listeners
+	 */
+	public void deliveryComplete(MqttDeliveryToken token) {
+		publishWindow.complete(token);
+		DeliveryTracker.Delivery delivery = deliveries.completed(token);
+		if (delivery != null && delivery.isLogged()) {
+			log("PUBLISH COMPLETE", "Topic: \"" + delivery.getTopic() + "\"  QoS: " + delivery.getQos() + "  Latency: " +
+				LatencyHistogram.millis(System.nanoTime() - delivery.getSendTime()) + " ms");
+		}
+		registry.fireDeliveryComplete(this, token);
+	}
+
+	/**
+	 * Expires the publishes that have gone unacknowledged for longer than the delivery timeout, logging the oldest.
+	 * Called periodically by the registry.
+	 */
+	void expireDeliveries() {
+		DeliveryTracker.Delivery oldest = deliveries.expire(ClientConstants.DELIVERY_TIMEOUT * 1000000L);
+		if (oldest != null) {
+			long timedOut = deliveries.getTimedOut(0) + deliveries.getTimedOut(1) + deliveries.getTimedOut(2);
+			log("PUBLISH TIMEOUT", "No acknowledgement after " + ClientConstants.DELIVERY_TIMEOUT / 1000 + " s  Topic: \"" +
+				oldest.getTopic() + "\"  QoS: " + oldest.getQos() + "  Timed out: " + timedOut);
+		}
+	}
+
+	/**
+	 * Sends the subscriptions of a clean session again after it has reconnected, since the broker dropped them
+	 * with the old connection
+	 */
+	private void resubscribe() {
+		Map<String, Integer> lost = lostSubscriptions;
+		lostSubscriptions = null;
+		if (lost == null || lost.isEmpty()) {
+			return;
+		}
+		String [] topics = lost.keySet().toArray(new String[0]);
+		int [] qos = new int[topics.length];
+		for (int i = 0; i < topics.length; i++) {
+			qos[i] = lost.get(topics[i]).intValue();
+		}
+		subscribe(topics, qos);
+	}
+
+	/**
+	 * Drops the subscriptions of a clean session when its connection ends, as the broker does.  A persistent
+	 * session keeps them, unconfirmed until it connects again.
+	 */
+	private void forgetSubscriptions() {
+		ConnectionProfile current = profile;
+		if (current == null || current.isCleanStart()) {
+			subscriptions.clear();
+		} else {
+			subscriptionsConfirmed = false;
+		}
+	}
+
+	/**
+	 * Records an error for {@link #getLastError}
+	 */
+	private void recordError(String error) {
+		lastError = error;
+		lastErrorTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the message of an error, or its class if it has none
+	 */
+	private static String describe(Throwable error) {
+		if (error == null) {
+			return "unknown cause";
+		}
+		return error.getMessage() != null ? error.getMessage() : error.toString();
+	}
+
+	/**
+	 * Passes an event to the registry's listeners
+	 */
+	void log(String event, String detail) {
+		registry.fireSessionEvent(this, event, detail);
+	}
+
+	/**
+	 * Runs an operation on the session's worker, logging it if it fails
+	 */
+	private <V> OperationHandle<V> submit(String operationName, Callable<V> operation) {
+		OperationHandle<V> handle = worker.submit(operationName, operation);
+		handle.addListener(operationListener);
+		return handle;
+	}
+
+	// Listener that logs client operations that fail
+	private final OperationHandle.Listener operationListener = new OperationHandle.Listener() {
+		public void operationComplete(OperationHandle<?> handle) {
+			Throwable error = handle.getError();
+			if (error != null) {
+				String detail = describe(error);
+				recordError(handle.getName() + " failed: " + detail);
+				log(handle.getName() + " FAILED", detail);
+			}
+		}
+	};
+
+	// Makes the reconnect scheduler's connection attempts
+	private final ReconnectScheduler.Reconnector reconnector = new ReconnectScheduler.Reconnector() {
+		public void connect() throws Exception {
+			client.connect(options);
+		}
+		public void disconnect() {
+			try {
+				client.disconnect();
+			} catch (MqttException e) {
+			}
+		}
+	};
+
+	// Logs the progress of the reconnect scheduler and tracks the resulting connection state
+	private final ReconnectScheduler.Listener reconnectListener = new ReconnectScheduler.Listener() {
+		public void reconnectAttempt(int attempt) {
+			log("Attempting to reconnect to broker:  " + profile.getServerURI(), "Attempt " + attempt);
+		}
+		public void reconnectFailed(int attempt, Throwable cause, long nextDelay) {
+			recordError("Reconnect attempt " + attempt + " failed: " + describe(cause));
+			log("RECONNECT FAILED", "Attempt " + attempt + ": " + cause.getMessage() + "  Retrying in " + nextDelay + " ms");
+		}
+		public void reconnectAbandoned(int attempts) {
+			state = ConnectionState.DISCONNECTED;
+			lostSubscriptions = null;
+			recordError("Gave up reconnecting after " + attempts + " attempts");
+			log("DISCONNECTED", "Gave up reconnecting after " + attempts + " attempts");
+		}
+		public void reconnected(int attempts, long timeToReconnect) {
+			subscriptionsConfirmed = true;
+			state = ConnectionState.CONNECTED;
+			connectedTime = System.currentTimeMillis();
+			log("CONNECTED", "Client ID: " + profile.getClientId() + "  Reconnected after " + attempts +
+				" attempts in " + timeToReconnect + " ms");
+			resubscribe();
+		}
+	};
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * An implementation of {@link SessionListener} that does nothing, to be extended by listeners that are only
+ * interested in some of the events.
+ */
+public abstract class SessionAdapter implements SessionListener {
+
+	public void sessionAdded(Session session) {
+	}
+
+	public void sessionEvent(Session session, String event, String detail) {
+	}
+
+	public void messageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+	}
+
+	public void deliveryComplete(Session session, MqttDeliveryToken token) {
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Receives the events of every session in a {@link SessionRegistry}.  Methods are called on the thread that
+ * produced the event (a client worker, reconnect or Paho callback thread) and must not block.
+ */
+public interface SessionListener {
+
+	/**
+	 * A session has been added to the registry
+	 */
+	void sessionAdded(Session session);
+
+	/**
+	 * A session has logged an event, e.g. CONNECTED
+	 */
+	void sessionEvent(Session session, String event, String detail);
+
+	/**
+	 * A message has arrived for a session
+	 *
+	 * @param session the session the message arrived on
+	 * @param topic the name of the topic the message was published on
+	 * @param message the message
+	 * @param payload the message payload
+	 */
+	void messageArrived(Session session, String topic, MqttMessage message, byte [] payload);
+
+	/**
+	 * A publish made by a session has completed
+	 */
+	void deliveryComplete(Session session, MqttDeliveryToken token);
+}
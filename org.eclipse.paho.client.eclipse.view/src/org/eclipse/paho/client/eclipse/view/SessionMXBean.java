@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * The JMX view of a session, registered as org.eclipse.paho.client.eclipse.view:type=Session,name="NAME" for tools
+ * such as jconsole.  Latencies are in milliseconds and times in milliseconds since the epoch.
+ */
+public interface SessionMXBean {
+
+	/**
+	 * Returns the name of the session's profile
+	 */
+	String getName();
+
+	/**
+	 * Returns the URI of the broker last connected to, or an empty string if the session has never connected
+	 */
+	String getServerURI();
+
+	/**
+	 * Returns the connection state: DISCONNECTED, CONNECTING, CONNECTED or RECONNECTING
+	 */
+	String getState();
+
+	boolean isConnected();
+
+	/**
+	 * Returns the milliseconds since the current connection was made, or 0 if not connected
+	 */
+	long getUptime();
+
+	/**
+	 * Returns the number of times the connection was restored after being lost
+	 */
+	long getReconnectCount();
+
+	/**
+	 * Returns the number of reconnect attempts that failed
+	 */
+	long getReconnectFailures();
+
+	long getMessagesIn();
+
+	long getMessagesOut();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	/**
+	 * Returns the number of QoS 1 publishes awaiting acknowledgement
+	 */
+	long getInFlightQos1();
+
+	/**
+	 * Returns the number of QoS 2 publishes awaiting completion
+	 */
+	long getInFlightQos2();
+
+	/**
+	 * Returns the number of publishes that were not acknowledged within the delivery timeout
+	 */
+	long getTimedOut();
+
+	/**
+	 * Returns the last error of a client operation or the connection, or an empty string if there has been none
+	 */
+	String getLastError();
+
+	/**
+	 * Returns when the last error happened, or 0 if there has been none
+	 */
+	long getLastErrorTime();
+
+	double getAckLatencyQos1P50();
+
+	double getAckLatencyQos1P99();
+
+	double getAckLatencyQos1P999();
+
+	double getAckLatencyQos1Max();
+
+	double getAckLatencyQos2P50();
+
+	double getAckLatencyQos2P99();
+
+	double getAckLatencyQos2P999();
+
+	double getAckLatencyQos2Max();
+}
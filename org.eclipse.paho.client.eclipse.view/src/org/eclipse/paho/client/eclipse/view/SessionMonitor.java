@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exports the metrics of a session over JMX as a {@link SessionMXBean}.  Every attribute is read from the
+ * session's own counters when it is requested, so the export costs nothing until a monitoring tool polls it.
+ */
+public class SessionMonitor implements SessionMXBean {
+
+	/**
+	 * The domain of the session MBeans
+	 */
+	public static final String DOMAIN = "org.eclipse.paho.client.eclipse.view";
+
+	private final Session session;
+	private ObjectName objectName = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param session the session to export
+	 */
+	SessionMonitor(Session session) {
+		this.session = session;
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server.  A failure is logged by the session, which works on
+	 * without the MBean.
+	 */
+	synchronized void register() {
+		if (objectName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Session,name=" + ObjectName.quote(session.getName()));
+			getServer().registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			session.log("Error registering MBean:  " + e.getMessage(), null);
+		} catch (SecurityException e) {
+			session.log("Error registering MBean:  " + e.getMessage(), null);
+		}
+	}
+
+	/**
+	 * Removes the MBean from the platform MBean server, if registered
+	 */
+	synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			getServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// Already unregistered
+		}
+		objectName = null;
+	}
+
+	/**
+	 * Returns the name the MBean is registered under, or null if it is not registered
+	 */
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	public String getName() {
+		return session.getName();
+	}
+
+	public String getServerURI() {
+		ConnectionProfile profile = session.getProfile();
+		return profile != null ? profile.getServerURI() : "";
+	}
+
+	public String getState() {
+		return session.getState().name();
+	}
+
+	public boolean isConnected() {
+		return session.getState() == ConnectionState.CONNECTED;
+	}
+
+	public long getUptime() {
+		long connected = session.getConnectedTime();
+		return connected == 0 ? 0 : Math.max(0, System.currentTimeMillis() - connected);
+	}
+
+	public long getReconnectCount() {
+		return session.getReconnectStats().getReconnects();
+	}
+
+	public long getReconnectFailures() {
+		return session.getReconnectStats().getFailures();
+	}
+
+	public long getMessagesIn() {
+		return session.getStats().getMessagesIn();
+	}
+
+	public long getMessagesOut() {
+		return session.getStats().getMessagesOut();
+	}
+
+	public long getBytesIn() {
+		return session.getStats().getBytesIn();
+	}
+
+	public long getBytesOut() {
+		return session.getStats().getBytesOut();
+	}
+
+	public long getInFlightQos1() {
+		return session.getDeliveryTracker().getOutstanding(1);
+	}
+
+	public long getInFlightQos2() {
+		return session.getDeliveryTracker().getOutstanding(2);
+	}
+
+	public long getTimedOut() {
+		DeliveryTracker tracker = session.getDeliveryTracker();
+		return tracker.getTimedOut(0) + tracker.getTimedOut(1) + tracker.getTimedOut(2);
+	}
+
+	public String getLastError() {
+		String error = session.getLastError();
+		return error != null ? error : "";
+	}
+
+	public long getLastErrorTime() {
+		return session.getLastErrorTime();
+	}
+
+	public double getAckLatencyQos1P50() {
+		return getLatency(1, 50);
+	}
+
+	public double getAckLatencyQos1P99() {
+		return getLatency(1, 99);
+	}
+
+	public double getAckLatencyQos1P999() {
+		return getLatency(1, 99.9);
+	}
+
+	public double getAckLatencyQos1Max() {
+		return session.getDeliveryTracker().getLatency(1).getMax() / 1e6;
+	}
+
+	public double getAckLatencyQos2P50() {
+		return getLatency(2, 50);
+	}
+
+	public double getAckLatencyQos2P99() {
+		return getLatency(2, 99);
+	}
+
+	public double getAckLatencyQos2P999() {
+		return getLatency(2, 99.9);
+	}
+
+	public double getAckLatencyQos2Max() {
+		return session.getDeliveryTracker().getLatency(2).getMax() / 1e6;
+	}
+
+	/**
+	 * Returns a percentile of the acknowledgement latency of a QoS in milliseconds
+	 */
+	private double getLatency(int qos, double percentile) {
+		return session.getDeliveryTracker().getLatency(qos).getPercentile(percentile) / 1e6;
+	}
+
+	private static MBeanServer getServer() {
+		return ManagementFactory.getPlatformMBeanServer();
+	}
+}
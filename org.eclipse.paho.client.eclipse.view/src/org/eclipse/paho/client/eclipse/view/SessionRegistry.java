@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Holds the sessions of the plug-in, keyed by profile name.  The registry is shared by every open client view,
+ * so views can show and switch between the same set of sessions.  Events and arrived messages from every session
+ * flow through the registry to its listeners; dispatch takes no locks, so sessions never wait on each other.
+ * Arrived messages are also routed to the handlers registered for the topic filters they match.
+ */
+public class SessionRegistry {
+
+	// The shared instance
+	private static final SessionRegistry instance = new SessionRegistry();
+
+	private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private final List<SessionListener> listeners = new CopyOnWriteArrayList<SessionListener>();
+	private final TopicTrie<TopicHandler> topicHandlers = new TopicTrie<TopicHandler>();
+
+	// The handlers matched for the message being dispatched, reused by each MQTT client thread
+	private final ThreadLocal<List<TopicHandler>> matches = new ThreadLocal<List<TopicHandler>>() {
+		protected List<TopicHandler> initialValue() {
+			return new ArrayList<TopicHandler>();
+		}
+	};
+
+	// Expires the unacknowledged publishes of every session, once the first session has been added
+	private final ScheduledExecutorService deliveryTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MQTT Delivery Timeout");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private boolean deliveryTimerStarted = false;
+
+	/**
+	 * Starts expiring unacknowledged publishes.  Called when the first session is added, so a registry without
+	 * sessions starts no threads.
+	 */
+	private synchronized void startDeliveryTimer() {
+		if (deliveryTimerStarted || deliveryTimer.isShutdown()) {
+			return;
+		}
+		deliveryTimerStarted = true;
+		deliveryTimer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				for (Iterator<Session> i = sessions.values().iterator(); i.hasNext();) {
+					i.next().expireDeliveries();
+				}
+			}
+		}, ClientConstants.DELIVERY_SWEEP_INTERVAL, ClientConstants.DELIVERY_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the shared instance
+	 */
+	public static SessionRegistry getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Returns the session with the given name, or null if there is none
+	 */
+	public Session getSession(String name) {
+		return sessions.get(name);
+	}
+
+	/**
+	 * Returns the session with the given name, creating it if there is none
+	 */
+	public Session getOrCreateSession(String name) {
+		Session session = sessions.get(name);
+		if (session != null) {
+			return session;
+		}
+		Session created = new Session(name, this);
+		session = sessions.putIfAbsent(name, created);
+		if (session != null) {
+			// Another thread created the session first
+			created.close();
+			return session;
+		}
+		startDeliveryTimer();
+		created.getMonitor().register();
+		for (Iterator<SessionListener> i = listeners.iterator(); i.hasNext();) {
+			i.next().sessionAdded(created);
+		}
+		return created;
+	}
+
+	/**
+	 * Returns the names of all sessions, sorted
+	 */
+	public String [] getSessionNames() {
+		String [] names = sessions.keySet().toArray(new String[0]);
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Closes all sessions, disconnecting them from their brokers
+	 */
+	public void shutdown() {
+		for (Iterator<Session> i = sessions.values().iterator(); i.hasNext();) {
+			i.next().close();
+			i.remove();
+		}
+		synchronized (this) {
+			deliveryTimer.shutdown();
+		}
+	}
+
+	public void addListener(SessionListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(SessionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Adds a handler for the messages arriving on any session whose topics match a topic filter
+	 *
+	 * @throws IllegalArgumentException if the filter is not a valid MQTT topic filter
+	 */
+	public void addTopicHandler(String filter, TopicHandler handler) {
+		topicHandlers.add(filter, handler);
+	}
+
+	/**
+	 * Removes a handler from a topic filter
+	 *
+	 * @return true if the handler was registered for the filter
+	 */
+	public boolean removeTopicHandler(String filter, TopicHandler handler) {
+		return topicHandlers.remove(filter, handler);
+	}
+
+	void fireSessionEvent(Session session, String event, String detail) {
+		for (Iterator<SessionListener> i = listeners.iterator(); i.hasNext();) {
+			i.next().sessionEvent(session, event, detail);
+		}
+	}
+
+	void fireMessageArrived(Session session, String topic, MqttMessage message, byte [] payload) {
+		for (Iterator<SessionListener> i = listeners.iterator(); i.hasNext();) {
+			i.next().messageArrived(session, topic, message, payload);
+		}
+		List<TopicHandler> handlers = matches.get();
+		topicHandlers.match(topic, handlers);
+		try {
+			for (int i = 0; i < handlers.size(); i++) {
+				handlers.get(i).messageArrived(session, topic, message, payload);
+			}
+		} finally {
+			handlers.clear();
+		}
+	}
+
+	void fireDeliveryComplete(Session session, MqttDeliveryToken token) {
+		for (Iterator<SessionListener> i = listeners.iterator(); i.hasNext();) {
+			i.next().deliveryComplete(session, token);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Traffic counters for a session, in total and per topic.  Counters are striped, so the MQTT client thread and
+ * publishing threads can update them without contending.  Once {@link ClientConstants#STATS_MAX_TOPICS} topics are
+ * being counted, further topics are counted together under {@link #OTHER_TOPICS}.
+ */
+public class SessionStats {
+
+	/**
+	 * The name under which topics beyond the limit are counted
+	 */
+	public static final String OTHER_TOPICS = "(other topics)";
+
+	private static final int MESSAGES_IN = 0;
+	private static final int MESSAGES_OUT = 1;
+	private static final int BYTES_IN = 2;
+	private static final int BYTES_OUT = 3;
+
+	private final StripedCounter counters = new StripedCounter(4);
+	private final ConcurrentMap<String, TopicStats> topics = new ConcurrentHashMap<String, TopicStats>();
+
+	void messageIn(String topic, int bytes, int qos) {
+		counters.add(MESSAGES_IN, 1);
+		counters.add(BYTES_IN, bytes);
+		getTopic(topic).messageIn(bytes, qos, System.currentTimeMillis());
+	}
+
+	void messageOut(String topic, int bytes, int qos) {
+		counters.add(MESSAGES_OUT, 1);
+		counters.add(BYTES_OUT, bytes);
+		getTopic(topic).messageOut(bytes, qos, System.currentTimeMillis());
+	}
+
+	public long getMessagesIn() {
+		return counters.get(MESSAGES_IN);
+	}
+
+	public long getMessagesOut() {
+		return counters.get(MESSAGES_OUT);
+	}
+
+	public long getBytesIn() {
+		return counters.get(BYTES_IN);
+	}
+
+	public long getBytesOut() {
+		return counters.get(BYTES_OUT);
+	}
+
+	/**
+	 * Returns the counters of every topic seen
+	 */
+	public Collection<TopicStats> getTopics() {
+		return topics.values();
+	}
+
+	/**
+	 * Sets every counter to 0 and forgets the topics seen
+	 */
+	public void reset() {
+		counters.reset();
+		for (Iterator<TopicStats> i = topics.values().iterator(); i.hasNext();) {
+			i.next().reset();
+			i.remove();
+		}
+	}
+
+	/**
+	 * Returns the counters of a topic, creating them if the topic has not been seen
+	 */
+	private TopicStats getTopic(String topic) {
+		TopicStats stats = topics.get(topic);
+		if (stats == null) {
+			if (topics.size() >= ClientConstants.STATS_MAX_TOPICS) {
+				topic = OTHER_TOPICS;
+				stats = topics.get(topic);
+			}
+			if (stats == null) {
+				TopicStats created = new TopicStats(topic);
+				stats = topics.putIfAbsent(topic, created);
+				if (stats == null) {
+					stats = created;
+				}
+			}
+		}
+		return stats;
+	}
+
+	public String toString() {
+		return "Messages in: " + getMessagesIn() + "  Bytes in: " + getBytesIn() + "  Messages out: " +
+			getMessagesOut() + "  Bytes out: " + getBytesOut();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+/**
+ * A copy of the header and payload of a persisted MQTT packet, held by the persistence backends that keep their
+ * entries in memory.  The client may reuse the buffers of the packets it persists, so they are always copied.
+ */
+class StoredPersistable implements MqttPersistable {
+
+	private final byte [] header;
+	private final byte [] payload;
+
+	StoredPersistable(byte [] header, byte [] payload) {
+		this.header = header;
+		this.payload = payload;
+	}
+
+	/**
+	 * Copies the header and payload of a packet
+	 */
+	static StoredPersistable copyOf(MqttPersistable persistable) throws MqttPersistenceException {
+		byte [] header = copy(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength());
+		byte [] payload = copy(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+			persistable.getPayloadLength());
+		return new StoredPersistable(header, payload);
+	}
+
+	private static byte [] copy(byte [] bytes, int offset, int length) {
+		byte [] copy = new byte[bytes == null ? 0 : length];
+		if (bytes != null) {
+			System.arraycopy(bytes, offset, copy, 0, length);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the number of bytes held
+	 */
+	int getSize() {
+		return header.length + payload.length;
+	}
+
+	public byte [] getHeaderBytes() {
+		return header;
+	}
+
+	public int getHeaderLength() {
+		return header.length;
+	}
+
+	public int getHeaderOffset() {
+		return 0;
+	}
+
+	public byte [] getPayloadBytes() {
+		return payload;
+	}
+
+	public int getPayloadLength() {
+		return payload.length;
+	}
+
+	public int getPayloadOffset() {
+		return 0;
+	}
+}
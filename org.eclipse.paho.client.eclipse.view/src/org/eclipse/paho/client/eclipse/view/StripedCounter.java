@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of counters that many threads can add to without contending.  Each counter is split into stripes, and a
+ * thread adds to the stripe picked by its id.  The counters of a stripe share a cache line, and stripes are a cache
+ * line apart, so threads on different stripes never write to the same line.  Reading a counter sums its stripes.
+ */
+public class StripedCounter {
+
+	// Number of longs in a cache line
+	private static final int LINE = 8;
+
+	// Number of stripes: the number of processors rounded up to a power of two, at most 8
+	private static final int STRIPES;
+	static {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 8) {
+			stripes <<= 1;
+		}
+		STRIPES = stripes;
+	}
+
+	private final AtomicLongArray cells;
+	private final int counters;
+	private final int stride;
+
+	/**
+	 * Constructor
+	 *
+	 * @param counters the number of counters in the set
+	 */
+	public StripedCounter(int counters) {
+		this.counters = counters;
+		this.stride = (counters + LINE - 1) / LINE * LINE;
+		// One line of padding before the first stripe, and one after the last
+		cells = new AtomicLongArray(LINE + STRIPES * stride + LINE);
+	}
+
+	/**
+	 * Adds to a counter
+	 */
+	public void add(int counter, long delta) {
+		long id = Thread.currentThread().getId();
+		int stripe = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+		cells.getAndAdd(LINE + stripe * stride + counter, delta);
+	}
+
+	/**
+	 * Returns the value of a counter
+	 */
+	public long get(int counter) {
+		long sum = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			sum += cells.get(LINE + stripe * stride + counter);
+		}
+		return sum;
+	}
+
+	/**
+	 * Sets every counter to 0.  Additions made while resetting may be lost.
+	 */
+	public void reset() {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			for (int counter = 0; counter < counters; counter++) {
+				cells.set(LINE + stripe * stride + counter, 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A list of topic filters to subscribe or unsubscribe on, each with a QoS, parsed from text with one filter per
+ * line.  A line may give the filter's QoS after it, separated by a space, tab or comma, e.g. "sensors/+/temp 1";
+ * filters without one get the default QoS.  Blank lines are skipped, and a filter listed twice keeps its last QoS.
+ */
+public class SubscriptionList {
+
+	private final String [] topics;
+	private final int [] qos;
+
+	private SubscriptionList(Map<String, Integer> entries) {
+		topics = new String[entries.size()];
+		qos = new int[entries.size()];
+		int i = 0;
+		for (Iterator<Map.Entry<String, Integer>> entry = entries.entrySet().iterator(); entry.hasNext(); i++) {
+			Map.Entry<String, Integer> next = entry.next();
+			topics[i] = next.getKey();
+			qos[i] = next.getValue().intValue();
+		}
+	}
+
+	/**
+	 * Parses a list of topic filters
+	 *
+	 * @param text the filters, one per line
+	 * @param defaultQos the QoS of filters that do not give one
+	 * @throws IllegalArgumentException if a line holds an invalid filter or QoS
+	 */
+	public static SubscriptionList parse(String text, int defaultQos) {
+		Map<String, Integer> entries = new LinkedHashMap<String, Integer>();
+		String [] lines = text.split("\\r?\\n|\\r");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.length() == 0) {
+				continue;
+			}
+			String topic = line;
+			int lineQos = defaultQos;
+			int separator = lastSeparator(line);
+			if (separator > 0) {
+				String suffix = line.substring(separator + 1).trim();
+				if (suffix.length() == 1 && suffix.charAt(0) >= '0' && suffix.charAt(0) <= '2') {
+					topic = line.substring(0, separator).trim();
+					lineQos = suffix.charAt(0) - '0';
+				}
+			}
+			try {
+				TopicTrie.split(topic);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+			}
+			entries.remove(topic);
+			entries.put(topic, Integer.valueOf(lineQos));
+		}
+		return new SubscriptionList(entries);
+	}
+
+	/**
+	 * Returns the index of the last space, tab or comma in a line, or -1 if there is none
+	 */
+	private static int lastSeparator(String line) {
+		for (int i = line.length() - 1; i >= 0; i--) {
+			char c = line.charAt(i);
+			if (c == ' ' || c == '\t' || c == ',') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public String [] getTopics() {
+		return topics;
+	}
+
+	public int [] getQos() {
+		return qos;
+	}
+
+	public int size() {
+		return topics.length;
+	}
+}
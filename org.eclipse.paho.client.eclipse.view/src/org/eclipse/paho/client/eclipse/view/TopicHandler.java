@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Handles the arrived messages whose topics match a topic filter.  Handlers are registered per filter with
+ * {@link SessionRegistry#addTopicHandler(String, TopicHandler)}.  Called on the MQTT client thread that received
+ * the message, so implementations must be thread safe and return quickly.
+ */
+public interface TopicHandler {
+
+	/**
+	 * Called when a message arrives on a topic that matches the handler's filter
+	 */
+	void messageArrived(Session session, String topic, MqttMessage message, byte [] payload);
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+/**
+ * Traffic counters for one topic of a session: messages and bytes in each direction, messages per QoS level, the
+ * time a message was last seen and the recent message rate.
+ */
+public class TopicStats {
+
+	private static final int MESSAGES_IN = 0;
+	private static final int MESSAGES_OUT = 1;
+	private static final int BYTES_IN = 2;
+	private static final int BYTES_OUT = 3;
+	private static final int QOS = 4;
+
+	// Minimum time between samples of the message rate
+	private static final long RATE_INTERVAL = 1000000000L;
+
+	private final String topic;
+	private final StripedCounter counters = new StripedCounter(QOS + 3);
+	private volatile long lastSeen = 0;
+
+	// The message count and time of the last rate sample, and the rate it gave
+	private long sampledMessages = 0;
+	private long sampledTime = System.nanoTime();
+	private double rate = 0;
+
+	TopicStats(String topic) {
+		this.topic = topic;
+	}
+
+	void messageIn(int bytes, int qos, long time) {
+		counters.add(MESSAGES_IN, 1);
+		counters.add(BYTES_IN, bytes);
+		counters.add(QOS + qos, 1);
+		lastSeen = time;
+	}
+
+	void messageOut(int bytes, int qos, long time) {
+		counters.add(MESSAGES_OUT, 1);
+		counters.add(BYTES_OUT, bytes);
+		counters.add(QOS + qos, 1);
+		lastSeen = time;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public long getMessagesIn() {
+		return counters.get(MESSAGES_IN);
+	}
+
+	public long getMessagesOut() {
+		return counters.get(MESSAGES_OUT);
+	}
+
+	public long getBytesIn() {
+		return counters.get(BYTES_IN);
+	}
+
+	public long getBytesOut() {
+		return counters.get(BYTES_OUT);
+	}
+
+	/**
+	 * Returns the number of messages in and out at a QoS level
+	 */
+	public long getMessages(int qos) {
+		return counters.get(QOS + qos);
+	}
+
+	/**
+	 * Returns the time a message was last published or received on the topic, in milliseconds since the epoch,
+	 * or 0 if none has been
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * Returns the number of messages per second in and out, measured over the time since the previous sample.
+	 * A new sample is taken at most once a second; calls in between return the last rate.
+	 */
+	public synchronized double getRate() {
+		long now = System.nanoTime();
+		if (now - sampledTime >= RATE_INTERVAL) {
+			long messages = getMessagesIn() + getMessagesOut();
+			rate = Math.max(0, messages - sampledMessages) * 1e9 / (now - sampledTime);
+			sampledMessages = messages;
+			sampledTime = now;
+		}
+		return rate;
+	}
+
+	/**
+	 * Sets every counter to 0
+	 */
+	synchronized void reset() {
+		counters.reset();
+		lastSeen = 0;
+		sampledMessages = 0;
+		sampledTime = System.nanoTime();
+		rate = 0;
+	}
+}
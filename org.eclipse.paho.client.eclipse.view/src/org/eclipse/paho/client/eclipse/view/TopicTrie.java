@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2012 Eurotech Inc. All rights reserved.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Chad Kienle
+ */
+
+package org.eclipse.paho.client.eclipse.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A trie of MQTT topic filters, each with a set of handlers.  Filters are split into levels at "/", and may use
+ * the "+" (one level) and "#" (this level and all below) wildcards.  Finding the handlers for a topic walks the trie
+ * one level at a time, so its cost depends on the depth of the topic rather than on the number of filters.  Levels
+ * are looked up in place in the topic string, so matching allocates nothing.
+ *
+ * As in MQTT, wildcards at the first level do not match topics starting with "$".  A handler registered on several
+ * filters that match the same topic is returned once per filter.
+ *
+ * The trie is thread safe.  Any number of threads may match at once; adding and removing filters excludes them.
+ */
+public class TopicTrie<H> {
+
+	/**
+	 * A level of the trie.  Exact children are held in an open addressing table keyed by level name.
+	 */
+	private static class Node {
+
+		private String [] keys = new String[4];
+		private int [] hashes = new int[4];
+		private Node [] children = new Node[4];
+		private int childCount = 0;
+
+		// Children for the wildcard levels
+		private Node plus;
+		private Node hash;
+
+		// Handlers of the filter ending at this node
+		private Object [] handlers = new Object[0];
+
+		private Node find(String topic, int start, int end) {
+			int hash = hash(topic, start, end);
+			int mask = keys.length - 1;
+			int length = end - start;
+			for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+				if (hashes[i] == hash && keys[i].length() == length && topic.regionMatches(start, keys[i], 0, length)) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node findOrAdd(String level) {
+			if (level.equals("+")) {
+				return plus != null ? plus : (plus = new Node());
+			}
+			if (level.equals("#")) {
+				return hash != null ? hash : (hash = new Node());
+			}
+			Node child = find(level, 0, level.length());
+			if (child == null) {
+				if ((childCount + 1) * 2 > keys.length) {
+					resize(keys.length * 2);
+				}
+				child = new Node();
+				put(level, child);
+			}
+			return child;
+		}
+
+		private void removeChild(String level) {
+			if (level.equals("+")) {
+				plus = null;
+			} else if (level.equals("#")) {
+				hash = null;
+			} else {
+				// Rebuild the table without the child, since open addressing cannot simply clear a slot
+				String [] oldKeys = keys;
+				Node [] oldChildren = children;
+				keys = new String[oldKeys.length];
+				hashes = new int[oldKeys.length];
+				children = new Node[oldKeys.length];
+				childCount = 0;
+				for (int i = 0; i < oldKeys.length; i++) {
+					if (oldKeys[i] != null && !oldKeys[i].equals(level)) {
+						put(oldKeys[i], oldChildren[i]);
+					}
+				}
+			}
+		}
+
+		private void put(String level, Node child) {
+			int hash = hash(level, 0, level.length());
+			int mask = keys.length - 1;
+			int i = hash & mask;
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = level;
+			hashes[i] = hash;
+			children[i] = child;
+			childCount++;
+		}
+
+		private void resize(int capacity) {
+			String [] oldKeys = keys;
+			Node [] oldChildren = children;
+			keys = new String[capacity];
+			hashes = new int[capacity];
+			children = new Node[capacity];
+			childCount = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					put(oldKeys[i], oldChildren[i]);
+				}
+			}
+		}
+
+		private boolean isEmpty() {
+			return handlers.length == 0 && childCount == 0 && plus == null && hash == null;
+		}
+
+		private static int hash(String s, int start, int end) {
+			int h = 0;
+			for (int i = start; i < end; i++) {
+				h = 31 * h + s.charAt(i);
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+
+	private final Node root = new Node();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Level names shared between filters
+	private final Map<String, String> levels = new HashMap<String, String>();
+
+	// Number of handler registrations
+	private int size = 0;
+
+	/**
+	 * Adds a handler for a topic filter
+	 *
+	 * @throws IllegalArgumentException if the filter is not a valid MQTT topic filter
+	 */
+	public void add(String filter, H handler) {
+		String [] path = split(filter);
+		lock.writeLock().lock();
+		try {
+			Node node = root;
+			for (int i = 0; i < path.length; i++) {
+				node = node.findOrAdd(intern(path[i]));
+			}
+			Object [] handlers = new Object[node.handlers.length + 1];
+			System.arraycopy(node.handlers, 0, handlers, 0, node.handlers.length);
+			handlers[node.handlers.length] = handler;
+			node.handlers = handlers;
+			size++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a handler from a topic filter, pruning levels of the trie that are left empty
+	 *
+	 * @return true if the handler was registered for the filter
+	 */
+	public boolean remove(String filter, H handler) {
+		String [] path = split(filter);
+		lock.writeLock().lock();
+		try {
+			Node [] nodes = new Node[path.length + 1];
+			nodes[0] = root;
+			for (int i = 0; i < path.length; i++) {
+				Node parent = nodes[i];
+				String level = path[i];
+				nodes[i + 1] = level.equals("+") ? parent.plus : level.equals("#") ? parent.hash :
+					parent.find(level, 0, level.length());
+				if (nodes[i + 1] == null) {
+					return false;
+				}
+			}
+			Node node = nodes[path.length];
+			int index = -1;
+			for (int i = 0; i < node.handlers.length && index < 0; i++) {
+				if (node.handlers[i].equals(handler)) {
+					index = i;
+				}
+			}
+			if (index < 0) {
+				return false;
+			}
+			Object [] handlers = new Object[node.handlers.length - 1];
+			System.arraycopy(node.handlers, 0, handlers, 0, index);
+			System.arraycopy(node.handlers, index + 1, handlers, index, handlers.length - index);
+			node.handlers = handlers;
+			size--;
+			for (int i = path.length; i > 0 && nodes[i].isEmpty(); i--) {
+				nodes[i - 1].removeChild(path[i - 1]);
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the handlers of every filter matching a topic to a list
+	 *
+	 * @return the number of handlers added
+	 */
+	@SuppressWarnings("unchecked")
+	public int match(String topic, List<? super H> matches) {
+		int before = matches.size();
+		lock.readLock().lock();
+		try {
+			match(root, topic, 0, !topic.startsWith("$"), (List<Object>) matches);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return matches.size() - before;
+	}
+
+	/**
+	 * Returns the number of handler registrations
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Matches the levels of a topic from the given index against a node's children
+	 */
+	private void match(Node node, String topic, int start, boolean wildcards, List<Object> matches) {
+		if (node.hash != null && wildcards) {
+			addAll(node.hash.handlers, matches);
+		}
+		if (start > topic.length()) {
+			addAll(node.handlers, matches);
+			return;
+		}
+		int end = topic.indexOf('/', start);
+		if (end < 0) {
+			end = topic.length();
+		}
+		Node child = node.find(topic, start, end);
+		if (child != null) {
+			match(child, topic, end + 1, true, matches);
+		}
+		if (node.plus != null && wildcards) {
+			match(node.plus, topic, end + 1, true, matches);
+		}
+	}
+
+	private static void addAll(Object [] handlers, List<Object> matches) {
+		for (int i = 0; i < handlers.length; i++) {
+			matches.add(handlers[i]);
+		}
+	}
+
+	private String intern(String level) {
+		String interned = levels.get(level);
+		if (interned == null) {
+			levels.put(level, level);
+			interned = level;
+		}
+		return interned;
+	}
+
+	/**
+	 * Splits a filter into levels, checking that wildcards stand alone and that "#" comes last.  Also used to check
+	 * filters before subscribing on them.
+	 */
+	static String [] split(String filter) {
+		List<String> path = new ArrayList<String>();
+		int start = 0;
+		while (true) {
+			int end = filter.indexOf('/', start);
+			String level = filter.substring(start, end < 0 ? filter.length() : end);
+			if ((level.indexOf('+') >= 0 || level.indexOf('#') >= 0) && level.length() > 1) {
+				throw new IllegalArgumentException("Invalid topic filter: \"" + filter + "\"");
+			}
+			if (level.equals("#") && end >= 0) {
+				throw new IllegalArgumentException("Invalid topic filter: \"" + filter + "\"");
+			}
+			path.add(level);
+			if (end < 0) {
+				break;
+			}
+			start = end + 1;
+		}
+		return path.toArray(new String[path.size()]);
+	}
+}